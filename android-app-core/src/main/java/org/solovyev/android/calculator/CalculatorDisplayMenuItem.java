@@ -23,15 +23,23 @@
 package org.solovyev.android.calculator;
 
 import android.content.Context;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import jscl.NumeralBase;
 import jscl.math.Generic;
 
 import javax.annotation.Nonnull;
 
+import org.solovyev.android.App;
 import org.solovyev.android.calculator.core.R;
 import org.solovyev.android.calculator.jscl.JsclOperation;
 import org.solovyev.android.calculator.plot.CalculatorPlotter;
 import org.solovyev.android.calculator.view.NumeralBaseConverterDialog;
 import org.solovyev.android.menu.LabeledMenuItem;
+import org.solovyev.common.text.Strings;
+
+import java.math.MathContext;
 
 /**
  * User: Solovyev_S
@@ -47,6 +55,35 @@ public enum CalculatorDisplayMenuItem implements LabeledMenuItem<CalculatorDispl
 		}
 	},
 
+	copy_exact(R.string.c_copy_exact) {
+		@Override
+		public void onClick(@Nonnull CalculatorDisplayViewState data, @Nonnull Context context) {
+			// plain decimal arithmetic is evaluated again without rounding errors of double arithmetic
+			final String expression = Locator.getInstance().getEditor().getViewState().getText();
+			final ListenableFuture<CalculatorOutput> future = Locator.getInstance().getCalculator().evaluateAsync(JsclOperation.numeric, expression, MathContext.DECIMAL128);
+			Futures.addCallback(future, new FutureCallback<CalculatorOutput>() {
+				@Override
+				public void onSuccess(CalculatorOutput output) {
+					final String result = output.getStringResult();
+					if (!Strings.isEmpty(result)) {
+						Locator.getInstance().getClipboard().setText(result);
+						Locator.getInstance().getNotifier().showMessage(CalculatorMessage.newInfoMessage(CalculatorMessages.result_copied));
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					// error is already shown in the display
+				}
+			}, App.getUiThreadExecutor());
+		}
+
+		@Override
+		protected boolean isItemVisibleFor(@Nonnull Generic generic, @Nonnull JsclOperation operation) {
+			return operation == JsclOperation.numeric && Locator.getInstance().getEngine().getNumeralBase() == NumeralBase.dec;
+		}
+	},
+
 	convert_to_bin(R.string.convert_to_bin) {
 		@Override
 		public void onClick(@Nonnull CalculatorDisplayViewState data, @Nonnull Context context) {
@@ -45,6 +45,7 @@ import org.solovyev.common.text.EnumMapper;
 import org.solovyev.common.text.NumberMapper;
 import org.solovyev.common.text.Strings;
 
+import java.io.File;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -128,8 +129,8 @@ public class AndroidCalculatorEngine implements CalculatorEngine, SharedPreferen
 
 		final JsclMathEngine engine = JsclMathEngine.getInstance();
 		this.calculatorEngine = new CalculatorEngineImpl(engine,
-				new CalculatorVarsRegistry(engine.getConstantsRegistry(), new AndroidMathEntityDao<Var>("org.solovyev.android.calculator.CalculatorModel_vars", application, Vars.class)),
-				new CalculatorFunctionsMathRegistry(engine.getFunctionsRegistry(), new AndroidMathEntityDao<AFunction>("org.solovyev.android.calculator.CalculatorModel_functions", application, Functions.class)),
+				new CalculatorVarsRegistry(engine.getConstantsRegistry(), new BinaryMathEntityDao<Var>(new File(application.getFilesDir(), "vars.bin"), VarCodec.instance, new AndroidMathEntityDao<Var>("org.solovyev.android.calculator.CalculatorModel_vars", application, Vars.class))),
+				new CalculatorFunctionsMathRegistry(engine.getFunctionsRegistry(), new BinaryMathEntityDao<AFunction>(new File(application.getFilesDir(), "functions.bin"), FunctionCodec.instance, new AndroidMathEntityDao<AFunction>("org.solovyev.android.calculator.CalculatorModel_functions", application, Functions.class))),
 				new CalculatorOperatorsMathRegistry(engine.getOperatorsRegistry(), new AndroidMathEntityDao<MathPersistenceEntity>(null, application, null)),
 				new CalculatorPostfixFunctionsRegistry(engine.getPostfixFunctionsRegistry(), new AndroidMathEntityDao<MathPersistenceEntity>(null, application, null)),
 				this.lock);
@@ -171,6 +172,18 @@ public class AndroidCalculatorEngine implements CalculatorEngine, SharedPreferen
 		return calculatorEngine.getMathEngine0();
 	}
 
+	@Nonnull
+	@Override
+	public CalculatorEvaluationContext newEvaluationContext() {
+		return calculatorEngine.newEvaluationContext();
+	}
+
+	@Nonnull
+	@Override
+	public CalculatorEngineSettings getSettings() {
+		return calculatorEngine.getSettings();
+	}
+
 	@Nonnull
 	@Override
 	public NumeralBase getNumeralBase() {
@@ -179,9 +192,7 @@ public class AndroidCalculatorEngine implements CalculatorEngine, SharedPreferen
 
 	@Override
 	public void init() {
-		synchronized (lock) {
-			reset();
-		}
+		reset();
 	}
 
 	@Override
@@ -190,9 +201,15 @@ public class AndroidCalculatorEngine implements CalculatorEngine, SharedPreferen
 			final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
 
 			softReset(preferences);
-
-			calculatorEngine.reset();
 		}
+
+		// NOTE: outside of the lock as reset waits for previous loading of the registries
+		calculatorEngine.reset();
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return calculatorEngine.isLoaded();
 	}
 
 	@Override
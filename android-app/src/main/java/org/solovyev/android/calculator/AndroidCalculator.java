@@ -27,6 +27,7 @@ import android.app.Application;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import com.google.common.util.concurrent.ListenableFuture;
 import jscl.NumeralBase;
 import jscl.math.Generic;
 import org.solovyev.android.calculator.history.CalculatorHistoryState;
@@ -36,6 +37,7 @@ import org.solovyev.common.msg.Message;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.MathContext;
 import java.util.List;
 
 /**
@@ -104,6 +106,18 @@ public class AndroidCalculator implements Calculator, CalculatorEventListener, S
 		return calculator.evaluate(operation, expression, sequenceId);
 	}
 
+	@Override
+	@Nonnull
+	public ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull JsclOperation operation, @Nonnull String expression) {
+		return calculator.evaluateAsync(operation, expression);
+	}
+
+	@Override
+	@Nonnull
+	public ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull JsclOperation operation, @Nonnull String expression, @Nullable MathContext mc) {
+		return calculator.evaluateAsync(operation, expression, mc);
+	}
+
 	@Override
 	public boolean isConversionPossible(@Nonnull Generic generic, @Nonnull NumeralBase from, @Nonnull NumeralBase to) {
 		return calculator.isConversionPossible(generic, from, to);
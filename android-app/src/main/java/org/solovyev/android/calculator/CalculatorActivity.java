@@ -230,6 +230,15 @@ public class CalculatorActivity extends SherlockFragmentActivity implements Shar
 	protected void onPause() {
 		this.activityHelper.onPause(this);
 
+		final CalculatorEngine engine = Locator.getInstance().getEngine();
+		// NOTE: registries which are still being loaded have nothing to flush => main thread must not wait for them
+		if (engine.isLoaded()) {
+			engine.getVarsRegistry().flush();
+			engine.getFunctionsRegistry().flush();
+		}
+
+		CalculatorApplication.getInstance().saveStateSnapshot();
+
 		super.onPause();
 	}
 
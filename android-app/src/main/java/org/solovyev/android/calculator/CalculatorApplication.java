@@ -39,6 +39,7 @@ import org.solovyev.android.App;
 import org.solovyev.android.ServiceLocator;
 import org.solovyev.android.ads.AdsController;
 import org.solovyev.android.calculator.history.AndroidCalculatorHistory;
+import org.solovyev.android.calculator.history.CalculatorStateSnapshot;
 import org.solovyev.android.calculator.model.AndroidCalculatorEngine;
 import org.solovyev.android.calculator.onscreen.CalculatorOnscreenStartActivity;
 import org.solovyev.android.calculator.plot.AndroidCalculatorPlotter;
@@ -47,8 +48,12 @@ import org.solovyev.android.calculator.view.EditorTextProcessor;
 import org.solovyev.common.msg.MessageType;
 
 import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * User: serso
@@ -78,6 +83,8 @@ public class CalculatorApplication extends android.app.Application implements Sh
 
 	public static final String ADMOB_USER_ID = "a14f02cf9c80cbc";
 
+	private static final String STATE_SNAPSHOT_FILE_NAME = "state.bin";
+
 	@Nonnull
 	private static CalculatorApplication instance;
 
@@ -98,6 +105,10 @@ public class CalculatorApplication extends android.app.Application implements Sh
 	@Nonnull
 	private final CalculatorBroadcaster broadcaster = new CalculatorBroadcaster(this);
 
+	// one thread => snapshots are written one by one
+	@Nonnull
+	private final Executor snapshotExecutor = Executors.newSingleThreadExecutor();
+
 	/*
 	**********************************************************************
 	*
@@ -160,6 +171,8 @@ public class CalculatorApplication extends android.app.Application implements Sh
 
 		Locator.getInstance().getCalculator().init();
 
+		restoreStateSnapshot();
+
 		BillingDB.init(CalculatorApplication.this);
 
 		AdsController.getInstance().init(ADMOB_USER_ID, AD_FREE_PRODUCT_ID, new BillingController.IConfiguration() {
@@ -229,6 +242,39 @@ public class CalculatorApplication extends android.app.Application implements Sh
 		return uiHandler;
 	}
 
+	private void restoreStateSnapshot() {
+		try {
+			final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.read(getStateSnapshotFile());
+			if (snapshot != null) {
+				snapshot.restore(Locator.getInstance().getCalculator(), Locator.getInstance().getHistory());
+			}
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Captures current state of the calculator and writes it in background, state is restored on next start
+	 */
+	public void saveStateSnapshot() {
+		final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.capture(Locator.getInstance().getCalculator(), Locator.getInstance().getHistory());
+		snapshotExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					snapshot.write(getStateSnapshotFile());
+				} catch (IOException e) {
+					Log.e(TAG, e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+	@Nonnull
+	private File getStateSnapshotFile() {
+		return new File(getFilesDir(), STATE_SNAPSHOT_FILE_NAME);
+	}
+
 	/*
 	**********************************************************************
 	*
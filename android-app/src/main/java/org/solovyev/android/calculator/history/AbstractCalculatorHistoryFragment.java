@@ -32,6 +32,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
@@ -48,7 +49,6 @@ import org.solovyev.android.menu.*;
 import org.solovyev.android.sherlock.menu.SherlockMenuHelper;
 import org.solovyev.common.JPredicate;
 import org.solovyev.common.collections.Collections;
-import org.solovyev.common.equals.Equalizer;
 import org.solovyev.common.filter.Filter;
 import org.solovyev.common.filter.FilterRulesChain;
 import org.solovyev.common.text.Strings;
@@ -195,6 +195,22 @@ public abstract class AbstractCalculatorHistoryFragment extends SherlockListFrag
 				return true;
 			}
 		});
+
+		lv.setOnScrollListener(new AbsListView.OnScrollListener() {
+			@Override
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+			}
+
+			@Override
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+				if (totalItemCount > 0 && firstVisibleItem + visibleItemCount >= totalItemCount) {
+					// end of the list is reached => show more items if possible
+					if (loadMoreItems()) {
+						updateAdapter();
+					}
+				}
+			}
+		});
 	}
 
 	@Override
@@ -247,24 +263,7 @@ public abstract class AbstractCalculatorHistoryFragment extends SherlockListFrag
 	public static boolean isAlreadySaved(@Nonnull CalculatorHistoryState historyState) {
 		assert !historyState.isSaved();
 
-		boolean result = false;
-		try {
-			historyState.setSaved(true);
-			if (Collections.contains(historyState, Locator.getInstance().getHistory().getSavedHistory(), new Equalizer<CalculatorHistoryState>() {
-				@Override
-				public boolean areEqual(@Nullable CalculatorHistoryState first, @Nullable CalculatorHistoryState second) {
-					return first != null && second != null &&
-							first.getTime() == second.getTime() &&
-							first.getDisplayState().equals(second.getDisplayState()) &&
-							first.getEditorState().equals(second.getEditorState());
-				}
-			})) {
-				result = true;
-			}
-		} finally {
-			historyState.setSaved(false);
-		}
-		return result;
+		return Locator.getInstance().getHistory().containsSavedState(historyState);
 	}
 
 	public static void useHistoryItem(@Nonnull final CalculatorHistoryState historyState) {
@@ -293,6 +292,15 @@ public abstract class AbstractCalculatorHistoryFragment extends SherlockListFrag
 	@Nonnull
 	protected abstract List<CalculatorHistoryState> getHistoryItems();
 
+	/**
+	 * Method is called when user scrolls to the end of the list
+	 *
+	 * @return true if {@link #getHistoryItems()} will return more items than before
+	 */
+	protected boolean loadMoreItems() {
+		return false;
+	}
+
 	@Nonnull
 	public static String getHistoryText(@Nonnull CalculatorHistoryState state) {
 		final StringBuilder result = new StringBuilder();
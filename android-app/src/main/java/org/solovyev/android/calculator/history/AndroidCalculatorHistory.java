@@ -1,176 +1,307 @@
-/*
- * Copyright 2013 serso aka se.solovyev
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *    http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- *
- * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
- * Contact details
- *
- * Email: se.solovyev@gmail.com
- * Site:  http://se.solovyev.org
- */
-
-package org.solovyev.android.calculator.history;
-
-import android.app.Application;
-import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
-
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-
-import org.solovyev.android.calculator.Calculator;
-import org.solovyev.android.calculator.CalculatorEventData;
-import org.solovyev.android.calculator.CalculatorEventType;
-import org.solovyev.android.calculator.R;
-import org.solovyev.common.history.HistoryAction;
-
-import java.util.List;
-
-/**
- * User: serso
- * Date: 10/9/11
- * Time: 6:35 PM
- */
-public class AndroidCalculatorHistory implements CalculatorHistory {
-
-	@Nonnull
-	private final CalculatorHistoryImpl calculatorHistory;
-
-	@Nonnull
-	private final Context context;
-
-	public AndroidCalculatorHistory(@Nonnull Application application, @Nonnull Calculator calculator) {
-		this.context = application;
-		calculatorHistory = new CalculatorHistoryImpl(calculator);
-	}
-
-	@Override
-	public void load() {
-		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-		if (preferences != null) {
-			final String value = preferences.getString(context.getString(R.string.p_calc_history), null);
-			if (value != null) {
-				calculatorHistory.fromXml(value);
-			}
-		}
-	}
-
-	public void save() {
-		final SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
-		final SharedPreferences.Editor editor = settings.edit();
-
-		editor.putString(context.getString(R.string.p_calc_history), calculatorHistory.toXml());
-
-		editor.commit();
-	}
-
-	public void clearSavedHistory() {
-		calculatorHistory.clearSavedHistory();
-		save();
-	}
-
-	public void removeSavedHistory(@Nonnull CalculatorHistoryState historyState) {
-		historyState.setSaved(false);
-		calculatorHistory.removeSavedHistory(historyState);
-		save();
-	}
-
-	@Override
-	public boolean isEmpty() {
-		return calculatorHistory.isEmpty();
-	}
-
-	@Override
-	public CalculatorHistoryState getLastHistoryState() {
-		return calculatorHistory.getLastHistoryState();
-	}
-
-	@Override
-	public boolean isUndoAvailable() {
-		return calculatorHistory.isUndoAvailable();
-	}
-
-	@Override
-	public CalculatorHistoryState undo(@Nullable CalculatorHistoryState currentState) {
-		return calculatorHistory.undo(currentState);
-	}
-
-	@Override
-	public boolean isRedoAvailable() {
-		return calculatorHistory.isRedoAvailable();
-	}
-
-	@Override
-	public CalculatorHistoryState redo(@Nullable CalculatorHistoryState currentState) {
-		return calculatorHistory.redo(currentState);
-	}
-
-	@Override
-	public boolean isActionAvailable(@Nonnull HistoryAction historyAction) {
-		return calculatorHistory.isActionAvailable(historyAction);
-	}
-
-	@Override
-	public CalculatorHistoryState doAction(@Nonnull HistoryAction historyAction, @Nullable CalculatorHistoryState currentState) {
-		return calculatorHistory.doAction(historyAction, currentState);
-	}
-
-	@Override
-	public void addState(@Nullable CalculatorHistoryState currentState) {
-		calculatorHistory.addState(currentState);
-	}
-
-	@Nonnull
-	@Override
-	public List<CalculatorHistoryState> getStates() {
-		return calculatorHistory.getStates();
-	}
-
-	@Nonnull
-	@Override
-	public List<CalculatorHistoryState> getStates(boolean includeIntermediateStates) {
-		return calculatorHistory.getStates(includeIntermediateStates);
-	}
-
-	@Override
-	public void clear() {
-		calculatorHistory.clear();
-	}
-
-	@Nonnull
-	public List<CalculatorHistoryState> getSavedHistory() {
-		return calculatorHistory.getSavedHistory();
-	}
-
-	@Nonnull
-	public CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState) {
-		return calculatorHistory.addSavedState(historyState);
-	}
-
-	@Override
-	public void fromXml(@Nonnull String xml) {
-		calculatorHistory.fromXml(xml);
-	}
-
-	@Override
-	public String toXml() {
-		return calculatorHistory.toXml();
-	}
-
-	@Override
-	public void onCalculatorEvent(@Nonnull CalculatorEventData calculatorEventData, @Nonnull CalculatorEventType calculatorEventType, @Nullable Object data) {
-		calculatorHistory.onCalculatorEvent(calculatorEventData, calculatorEventType, data);
-	}
-}
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.history;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.Calculator;
+import org.solovyev.android.calculator.CalculatorEventData;
+import org.solovyev.android.calculator.CalculatorEventType;
+import org.solovyev.android.calculator.Locator;
+import org.solovyev.android.calculator.R;
+import org.solovyev.common.history.HistoryAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * User: serso
+ * Date: 10/9/11
+ * Time: 6:35 PM
+ */
+public class AndroidCalculatorHistory implements CalculatorHistory {
+
+	private static final String TAG = AndroidCalculatorHistory.class.getSimpleName();
+
+	private static final String HISTORY_FILE_NAME = "history.log";
+
+	// number of imported states written to the log at once
+	private static final int IMPORT_BATCH_SIZE = 50;
+
+	@Nonnull
+	private final CalculatorHistoryImpl calculatorHistory;
+
+	@Nonnull
+	private final Context context;
+
+	@Nonnull
+	private final CalculatorHistoryLog historyLog;
+
+	// saved states which have not been written to the log yet
+	@Nonnull
+	private final List<CalculatorHistoryState> newSavedStates = Collections.synchronizedList(new ArrayList<CalculatorHistoryState>());
+
+	public AndroidCalculatorHistory(@Nonnull Application application, @Nonnull Calculator calculator) {
+		this.context = application;
+		calculatorHistory = new CalculatorHistoryImpl(calculator);
+		historyLog = new CalculatorHistoryLog(new File(application.getFilesDir(), HISTORY_FILE_NAME));
+	}
+
+	@Override
+	public void load() {
+		try {
+			if (historyLog.exists()) {
+				calculatorHistory.loadSavedHistory(historyLog.load());
+			} else {
+				migrateFromPreferences();
+			}
+		} catch (IOException e) {
+			Locator.getInstance().getLogger().error(TAG, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Before history log saved history was stored as XML in preferences => move it to the log
+	 */
+	private void migrateFromPreferences() throws IOException {
+		final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+		final String key = context.getString(R.string.p_calc_history);
+		final String value = preferences.getString(key, null);
+		if (value != null) {
+			calculatorHistory.fromXml(value);
+			historyLog.reset(calculatorHistory.getSavedHistory());
+
+			final SharedPreferences.Editor editor = preferences.edit();
+			editor.remove(key);
+			editor.commit();
+		} else {
+			historyLog.reset(Collections.<CalculatorHistoryState>emptyList());
+		}
+	}
+
+	public void save() {
+		try {
+			synchronized (newSavedStates) {
+				for (CalculatorHistoryState newSavedState : newSavedStates) {
+					historyLog.append(newSavedState);
+				}
+				newSavedStates.clear();
+			}
+			historyLog.saveModified();
+		} catch (IOException e) {
+			Locator.getInstance().getLogger().error(TAG, e.getMessage(), e);
+		}
+	}
+
+	public void clearSavedHistory() {
+		calculatorHistory.clearSavedHistory();
+		newSavedStates.clear();
+		try {
+			historyLog.reset(Collections.<CalculatorHistoryState>emptyList());
+		} catch (IOException e) {
+			Locator.getInstance().getLogger().error(TAG, e.getMessage(), e);
+		}
+	}
+
+	public void removeSavedHistory(@Nonnull CalculatorHistoryState historyState) {
+		historyState.setSaved(false);
+		calculatorHistory.removeSavedHistory(historyState);
+		if (!newSavedStates.remove(historyState)) {
+			try {
+				historyLog.remove(historyState);
+			} catch (IOException e) {
+				Locator.getInstance().getLogger().error(TAG, e.getMessage(), e);
+			}
+		}
+		save();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return calculatorHistory.isEmpty();
+	}
+
+	@Override
+	public CalculatorHistoryState getLastHistoryState() {
+		return calculatorHistory.getLastHistoryState();
+	}
+
+	@Override
+	public boolean isUndoAvailable() {
+		return calculatorHistory.isUndoAvailable();
+	}
+
+	@Override
+	public CalculatorHistoryState undo(@Nullable CalculatorHistoryState currentState) {
+		return calculatorHistory.undo(currentState);
+	}
+
+	@Override
+	public boolean isRedoAvailable() {
+		return calculatorHistory.isRedoAvailable();
+	}
+
+	@Override
+	public CalculatorHistoryState redo(@Nullable CalculatorHistoryState currentState) {
+		return calculatorHistory.redo(currentState);
+	}
+
+	@Override
+	public boolean isActionAvailable(@Nonnull HistoryAction historyAction) {
+		return calculatorHistory.isActionAvailable(historyAction);
+	}
+
+	@Override
+	public CalculatorHistoryState doAction(@Nonnull HistoryAction historyAction, @Nullable CalculatorHistoryState currentState) {
+		return calculatorHistory.doAction(historyAction, currentState);
+	}
+
+	@Override
+	public void addState(@Nullable CalculatorHistoryState currentState) {
+		calculatorHistory.addState(currentState);
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> getStates() {
+		return calculatorHistory.getStates();
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> getStates(boolean includeIntermediateStates) {
+		return calculatorHistory.getStates(includeIntermediateStates);
+	}
+
+	@Override
+	public void clear() {
+		calculatorHistory.clear();
+	}
+
+	@Nonnull
+	public List<CalculatorHistoryState> getSavedHistory() {
+		return calculatorHistory.getSavedHistory();
+	}
+
+	@Nonnull
+	public CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState) {
+		final CalculatorHistoryState savedState = calculatorHistory.addSavedState(historyState);
+		if (savedState != historyState) {
+			newSavedStates.add(savedState);
+		}
+		return savedState;
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> searchSavedHistory(@Nonnull String query) {
+		return calculatorHistory.searchSavedHistory(query);
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> searchSavedHistory(double minResult, double maxResult) {
+		return calculatorHistory.searchSavedHistory(minResult, maxResult);
+	}
+
+	@Override
+	public boolean containsSavedState(@Nonnull CalculatorHistoryState historyState) {
+		return calculatorHistory.containsSavedState(historyState);
+	}
+
+	@Override
+	public void fromXml(@Nonnull String xml) {
+		calculatorHistory.fromXml(xml);
+	}
+
+	@Override
+	public String toXml() {
+		return calculatorHistory.toXml();
+	}
+
+	@Override
+	public void exportSavedHistory(@Nonnull Writer writer) throws IOException {
+		save();
+		historyLog.export(HistoryStreams.newXmlWriter(writer));
+	}
+
+	@Override
+	public void importSavedHistory(@Nonnull Reader reader) throws IOException {
+		importSavedHistory(HistoryStreams.newXmlReader(reader));
+	}
+
+	@Override
+	public void exportSavedHistory(@Nonnull OutputStream out) throws IOException {
+		save();
+		historyLog.export(HistoryStreams.newBinaryWriter(out));
+	}
+
+	@Override
+	public void importSavedHistory(@Nonnull InputStream in) throws IOException {
+		importSavedHistory(HistoryStreams.newBinaryReader(in));
+	}
+
+	/**
+	 * Imported states are written directly to the log (batch by batch) and are not kept in memory: saved history is
+	 * reloaded from the log afterwards and decodes them lazily
+	 */
+	private void importSavedHistory(@Nonnull HistoryStreams.StateReader reader) throws IOException {
+		save();
+
+		final List<CalculatorHistoryState> batch = new ArrayList<CalculatorHistoryState>(IMPORT_BATCH_SIZE);
+		try {
+			for (CalculatorHistoryState state = reader.read(); state != null; state = reader.read()) {
+				batch.add(state);
+				if (batch.size() == IMPORT_BATCH_SIZE) {
+					historyLog.appendAll(batch);
+					batch.clear();
+				}
+			}
+		} finally {
+			// states read before failure are kept
+			try {
+				historyLog.appendAll(batch);
+			} finally {
+				calculatorHistory.loadSavedHistory(historyLog.load());
+			}
+		}
+	}
+
+	@Override
+	public void onCalculatorEvent(@Nonnull CalculatorEventData calculatorEventData, @Nonnull CalculatorEventType calculatorEventType, @Nullable Object data) {
+		calculatorHistory.onCalculatorEvent(calculatorEventData, calculatorEventType, data);
+	}
+}
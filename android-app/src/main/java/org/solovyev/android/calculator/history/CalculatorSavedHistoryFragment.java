@@ -38,6 +38,11 @@ import java.util.List;
  */
 public class CalculatorSavedHistoryFragment extends AbstractCalculatorHistoryFragment {
 
+	private static final int PAGE_SIZE = 50;
+
+	// number of the latest saved states shown to the user, older states are shown on scroll
+	private int itemsCount = PAGE_SIZE;
+
 	public CalculatorSavedHistoryFragment() {
 		super(CalculatorFragmentType.saved_history);
 	}
@@ -50,7 +55,20 @@ public class CalculatorSavedHistoryFragment extends AbstractCalculatorHistoryFra
 	@Nonnull
 	@Override
 	protected List<CalculatorHistoryState> getHistoryItems() {
-		return new ArrayList<CalculatorHistoryState>(Locator.getInstance().getHistory().getSavedHistory());
+		// saved history may be loaded lazily => request only needed states (the latest are at the end)
+		final List<CalculatorHistoryState> savedHistory = Locator.getInstance().getHistory().getSavedHistory();
+		final int size = savedHistory.size();
+		return new ArrayList<CalculatorHistoryState>(savedHistory.subList(Math.max(0, size - itemsCount), size));
+	}
+
+	@Override
+	protected boolean loadMoreItems() {
+		if (itemsCount < Locator.getInstance().getHistory().getSavedHistory().size()) {
+			itemsCount += PAGE_SIZE;
+			return true;
+		} else {
+			return false;
+		}
 	}
 
 	@Override
@@ -271,6 +271,18 @@ class Graph3d {
 			z = (float) function.eval();
 		}
 
+		// function is evaluated in batches: whole column for 1 variable, row by row for 2 variables
+		final double[] rowY = new double[1];
+		final double[] arguments = new double[n];
+		final double[] values = new double[n];
+		if (arity == 1) {
+			float argument = y;
+			for (int i = 0; i < n; i++, argument += Δy) {
+				arguments[i] = argument;
+			}
+			function.eval(arguments, values);
+		}
+
 		int k = 0;
 		for (int i = 0; i < n; i++, y += Δy) {
 			float xinc = (i & 1) == 0 ? Δx : -Δx;
@@ -278,13 +290,20 @@ class Graph3d {
 			x += xinc;
 
 			if (arity == 1) {
-				z = (float) function.eval(y);
+				z = (float) values[i];
+			} else if (arity == 2) {
+				float argument = x;
+				for (int j = 0; j < n; j++, argument += xinc) {
+					arguments[j] = argument;
+				}
+				rowY[0] = y;
+				function.eval(rowY, arguments, values);
 			}
 
 			for (int j = 0; j < n; j++, x += xinc, k += VERTICES_COUNT) {
 
 				if (arity == 2) {
-					z = (float) function.eval(y, x);
+					z = (float) values[j];
 				}
 
 				vertices[k] = x;
@@ -31,6 +31,8 @@ import javax.annotation.Nonnull;
  */
 public class GraphCalculatorImpl extends AbstractGraphCalculator {
 
+	private static final int MAX_SWEEP_POINTS = 10000;
+
 	@Override
 	protected void compute(@Nonnull XyFunction f,
 						   float xMin,
@@ -39,13 +41,19 @@ public class GraphCalculatorImpl extends AbstractGraphCalculator {
 						   float yMax,
 						   @Nonnull GraphData graph,
 						   @Nonnull Graph2dDimensions dimensions) {
-		graph.push(xMin, (float) f.eval(xMin));
-
 		final float xScale = dimensions.getXGraphToViewScale();
 		final float yScale = dimensions.getYGraphToViewScale();
 		final float maxStep = 15.8976f * xScale;
 		final float minStep = .05f * xScale;
 
+		// points with max step are always evaluated => evaluate them in one batch
+		final double[] sweepXs = newSweep(xMin, xMax, maxStep);
+		final double[] sweepYs = new double[sweepXs.length];
+		f.eval(sweepXs, sweepYs);
+		int sweepPosition = 1;
+
+		graph.push(xMin, (float) sweepYs[0]);
+
 		float yTheta = yScale;
 		yTheta = yTheta * yTheta;
 
@@ -66,7 +74,11 @@ public class GraphCalculatorImpl extends AbstractGraphCalculator {
 
 			if (next.empty()) {
 				float x = leftX + maxStep;
-				next.push(x, (float) f.eval(x));
+				if (sweepPosition < sweepXs.length && (float) sweepXs[sweepPosition] == x) {
+					next.push(x, (float) sweepYs[sweepPosition++]);
+				} else {
+					next.push(x, (float) f.eval(x));
+				}
 			}
 
 			rightX = next.getLastX();
@@ -113,6 +125,33 @@ public class GraphCalculatorImpl extends AbstractGraphCalculator {
 		}
 	}
 
+	/**
+	 * @return points from <var>xMin</var> with <var>step</var> (computed exactly as in {@link #compute}) up to the
+	 * first point after <var>xMax</var>
+	 */
+	@Nonnull
+	private static double[] newSweep(float xMin, float xMax, float step) {
+		final float points = (xMax - xMin) / step + 2;
+		if (!(step > 0) || !(points < MAX_SWEEP_POINTS)) {
+			return new double[]{xMin};
+		}
+
+		final double[] result = new double[(int) points + 1];
+		int count = 0;
+
+		float x = xMin;
+		result[count++] = x;
+		while (x <= xMax && count < result.length) {
+			x = x + step;
+			result[count++] = x;
+		}
+
+		// NOTE: Arrays.copyOf is not available on old Android versions
+		final double[] sweep = new double[count];
+		System.arraycopy(result, 0, sweep, 0, count);
+		return sweep;
+	}
+
 	// distance as above when x==(x1+x2)/2.
 	private float distance2(float x1, float y1, float x2, float y2, float y) {
 		final float dx = x2 - x1;
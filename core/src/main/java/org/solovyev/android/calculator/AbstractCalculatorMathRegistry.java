@@ -30,8 +30,17 @@ import org.solovyev.common.math.MathEntity;
 import org.solovyev.common.math.MathRegistry;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * User: serso
@@ -40,6 +49,22 @@ import java.util.Map;
  */
 public abstract class AbstractCalculatorMathRegistry<T extends MathEntity, P extends MathPersistenceEntity> implements CalculatorMathRegistry<T> {
 
+	/**
+	 * Changes made within this period after {@link #save()} are written together
+	 */
+	private static final long SAVE_DELAY = 500;
+
+	// one thread for all registries => writes are never done concurrently
+	@Nonnull
+	private static final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor();
+
+	@Nonnull
+	private static final Runnable noOpTask = new Runnable() {
+		@Override
+		public void run() {
+		}
+	};
+
 	@Nonnull
 	private final MathRegistry<T> mathRegistry;
 
@@ -49,6 +74,46 @@ public abstract class AbstractCalculatorMathRegistry<T extends MathEntity, P ext
 	@Nonnull
 	private final MathEntityDao<P> mathEntityDao;
 
+	// guarded by this
+	private long version = 0;
+
+	// NOTE: null means that snapshot must be rebuilt (writers only invalidate snapshot, it is rebuilt lazily by first reader)
+	@Nullable
+	private volatile MathRegistrySnapshot<T> snapshot;
+
+	// guarded by this: NOTE: before first load registry contains only system entities => nothing must be written
+	private boolean loaded = false;
+
+	// guarded by this: true if registry has been changed since last write
+	private boolean dirty = false;
+
+	// guarded by this: names of entities added/changed/removed since last write
+	@Nonnull
+	private final Set<String> changedNames = new HashSet<String>();
+
+	// guarded by this: persistence entities of last write, reused for not changed entities
+	@Nonnull
+	private Map<String, P> persistenceEntities = new HashMap<String, P>();
+
+	// guarded by this
+	@Nullable
+	private ScheduledFuture<?> scheduledSave;
+
+	@Nonnull
+	private final Runnable saveTask = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				final MathEntityPersistenceContainer<P> container = createPersistenceContainerIfDirty();
+				if (container != null) {
+					mathEntityDao.save(container);
+				}
+			} catch (RuntimeException e) {
+				Locator.getInstance().getLogger().error(null, e.getLocalizedMessage(), e);
+			}
+		}
+	};
+
 	protected AbstractCalculatorMathRegistry(@Nonnull MathRegistry<T> mathRegistry,
 											 @Nonnull String prefix,
 											 @Nonnull MathEntityDao<P> mathEntityDao) {
@@ -77,7 +142,31 @@ public abstract class AbstractCalculatorMathRegistry<T extends MathEntity, P ext
 		return mathEntityDao.getDescription(stringName);
 	}
 
-	public synchronized void load() {
+	public void load() {
+		final boolean reload;
+		synchronized (this) {
+			reload = loaded;
+		}
+
+		if (reload) {
+			// changes made after previous load must be written before reload, otherwise they are lost
+			// NOTE: must wait outside of the lock as write task acquires it
+			try {
+				scheduleWrite().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				Locator.getInstance().getLogger().error(null, e.getLocalizedMessage(), e);
+			}
+		}
+
+		synchronized (this) {
+			loadEntities();
+			loaded = true;
+		}
+	}
+
+	private void loadEntities() {
 		final MathEntityPersistenceContainer<P> persistenceContainer = mathEntityDao.load();
 
 		final List<P> notCreatedEntities = new ArrayList<P>();
@@ -109,25 +198,81 @@ public abstract class AbstractCalculatorMathRegistry<T extends MathEntity, P ext
 			// just in case
 			Locator.getInstance().getLogger().error(null, e.getLocalizedMessage(), e);
 		}
+
+		// loaded entities are already persisted
+		dirty = false;
+		changedNames.clear();
 	}
 
 	@Nonnull
 	protected abstract JBuilder<? extends T> createBuilder(@Nonnull P entity);
 
+	/**
+	 * Schedules write of the changed registry in background. Changes made before the write starts are written
+	 * together, nothing is written if registry has not been changed since last write.
+	 */
 	@Override
 	public synchronized void save() {
+		if (dirty && scheduledSave == null) {
+			scheduledSave = saveExecutor.schedule(saveTask, SAVE_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void flush() {
+		// NOTE: save executor finishes the write => caller (e.g. UI thread) doesn't wait for disk I/O
+		scheduleWrite();
+	}
+
+	/**
+	 * @return future of the write of pending changes (or of the write which has already started)
+	 */
+	@Nonnull
+	private synchronized Future<?> scheduleWrite() {
+		if (dirty) {
+			if (scheduledSave != null) {
+				scheduledSave.cancel(false);
+			}
+			// NOTE: write is still done by save executor => it is never done concurrently with another write
+			scheduledSave = saveExecutor.schedule(saveTask, 0, TimeUnit.MILLISECONDS);
+			return scheduledSave;
+		} else {
+			// write which has already started must be finished too
+			return saveExecutor.submit(noOpTask);
+		}
+	}
+
+	@Nullable
+	private synchronized MathEntityPersistenceContainer<P> createPersistenceContainerIfDirty() {
+		scheduledSave = null;
+		if (!dirty) {
+			return null;
+		}
+
 		final MathEntityPersistenceContainer<P> container = createPersistenceContainer();
+		final Map<String, P> newPersistenceEntities = new HashMap<String, P>();
 
 		for (T entity : this.getEntities()) {
 			if (!entity.isSystem()) {
-				final P persistenceEntity = transform(entity);
+				final String name = entity.getName();
+
+				P persistenceEntity = changedNames.contains(name) ? null : persistenceEntities.get(name);
+				if (persistenceEntity == null) {
+					persistenceEntity = transform(entity);
+				}
+
 				if (persistenceEntity != null) {
 					container.getEntities().add(persistenceEntity);
+					newPersistenceEntities.put(name, persistenceEntity);
 				}
 			}
 		}
 
-		this.mathEntityDao.save(container);
+		persistenceEntities = newPersistenceEntities;
+		changedNames.clear();
+		dirty = false;
+
+		return container;
 	}
 
 	@Nullable
@@ -136,46 +281,83 @@ public abstract class AbstractCalculatorMathRegistry<T extends MathEntity, P ext
 	@Nonnull
 	protected abstract MathEntityPersistenceContainer<P> createPersistenceContainer();
 
+	@Nonnull
+	@Override
+	public MathRegistrySnapshot<T> getSnapshot() {
+		MathRegistrySnapshot<T> result = snapshot;
+		if (result == null) {
+			synchronized (this) {
+				result = snapshot;
+				if (result == null) {
+					result = MathRegistrySnapshot.newInstance(version, mathRegistry.getNames(), mathRegistry.getEntities(), mathRegistry.getSystemEntities());
+					snapshot = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	// must be called under lock
+	private void onChanged(@Nullable T entity) {
+		version++;
+		snapshot = null;
+
+		dirty = true;
+		if (entity != null) {
+			changedNames.add(entity.getName());
+		}
+	}
+
 	@Nonnull
 	@Override
 	public List<T> getEntities() {
-		return mathRegistry.getEntities();
+		return getSnapshot().getEntities();
 	}
 
 	@Nonnull
 	@Override
 	public List<T> getSystemEntities() {
-		return mathRegistry.getSystemEntities();
+		return getSnapshot().getSystemEntities();
 	}
 
 	@Override
-	public T add(@Nonnull JBuilder<? extends T> JBuilder) {
-		return mathRegistry.add(JBuilder);
+	public synchronized T add(@Nonnull JBuilder<? extends T> JBuilder) {
+		T result = null;
+		try {
+			result = mathRegistry.add(JBuilder);
+			return result;
+		} finally {
+			onChanged(result);
+		}
 	}
 
 	@Override
-	public void remove(@Nonnull T var) {
-		mathRegistry.remove(var);
+	public synchronized void remove(@Nonnull T var) {
+		try {
+			mathRegistry.remove(var);
+		} finally {
+			onChanged(var);
+		}
 	}
 
 	@Nonnull
 	@Override
 	public List<String> getNames() {
-		return mathRegistry.getNames();
+		return getSnapshot().getNames();
 	}
 
 	@Override
 	public boolean contains(@Nonnull String name) {
-		return mathRegistry.contains(name);
+		return getSnapshot().contains(name);
 	}
 
 	@Override
 	public T get(@Nonnull String name) {
-		return mathRegistry.get(name);
+		return getSnapshot().get(name);
 	}
 
 	@Override
 	public T getById(@Nonnull Integer id) {
-		return mathRegistry.getById(id);
+		return getSnapshot().getById(id);
 	}
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Math entity DAO which stores entities in a file in compact binary format:
+ * <pre>
+ * int magic
+ * int version
+ * int number of entities
+ * entities encoded by {@link MathEntityCodec}
+ * </pre>
+ * If file doesn't exist yet entities are loaded from the legacy DAO (e.g. XML one) and are immediately written to the
+ * file, so migration happens only once. Unreadable file is moved aside and entities are loaded from the legacy DAO
+ * again. Descriptions are provided by the legacy DAO.
+ */
+public class BinaryMathEntityDao<T extends MathPersistenceEntity> implements MathEntityDao<T> {
+
+	private static final int MAGIC = 0x434D4544;
+
+	private static final int VERSION = 1;
+
+	@Nonnull
+	private final File file;
+
+	@Nonnull
+	private final MathEntityCodec<T> codec;
+
+	@Nonnull
+	private final MathEntityDao<T> legacyDao;
+
+	// true if file could not be loaded and could not be moved aside
+	private boolean unreadable = false;
+
+	public BinaryMathEntityDao(@Nonnull File file,
+							   @Nonnull MathEntityCodec<T> codec,
+							   @Nonnull MathEntityDao<T> legacyDao) {
+		this.file = file;
+		this.codec = codec;
+		this.legacyDao = legacyDao;
+	}
+
+	@Override
+	public synchronized void save(@Nonnull MathEntityPersistenceContainer<T> container) {
+		if (unreadable) {
+			// user's entities are still in the file => it must not be overwritten
+			throw new IllegalStateException("File could not be loaded and is not overwritten: " + file);
+		}
+
+		try {
+			write(container.getEntities());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Nullable
+	@Override
+	public synchronized MathEntityPersistenceContainer<T> load() {
+		try {
+			if (file.exists()) {
+				try {
+					return codec.newContainer(read());
+				} catch (IOException e) {
+					onUnreadableFile(e);
+				} catch (RuntimeException e) {
+					onUnreadableFile(e);
+				}
+			}
+
+			final MathEntityPersistenceContainer<T> result = legacyDao.load();
+			if (result != null) {
+				// migration
+				write(result.getEntities());
+			}
+			return result;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Method moves unreadable file aside (to {@link #getUnreadableFile()}) => it is not overwritten by the next save and
+	 * entities are loaded from the legacy DAO
+	 */
+	private void onUnreadableFile(@Nonnull Exception e) throws IOException {
+		Locator.getInstance().getLogger().error(null, "Unable to read " + file + ": " + e.getMessage(), e);
+
+		final File unreadableFile = getUnreadableFile();
+		if (unreadableFile.exists()) {
+			unreadableFile.delete();
+		}
+		if (!file.renameTo(unreadableFile)) {
+			unreadable = true;
+			throw new IOException("Unable to move aside unreadable file: " + file);
+		}
+	}
+
+	@Nonnull
+	File getUnreadableFile() {
+		return new File(file.getPath() + ".bad");
+	}
+
+	@Nullable
+	@Override
+	public String getDescription(@Nonnull String descriptionId) {
+		return legacyDao.getDescription(descriptionId);
+	}
+
+	@Nonnull
+	private List<T> read() throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Unsupported file: " + file);
+			}
+
+			final int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of file: " + file);
+			}
+
+			final int count = in.readInt();
+			final List<T> result = new ArrayList<T>(count);
+			for (int i = 0; i < count; i++) {
+				result.add(codec.read(in));
+			}
+			return result;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void write(@Nonnull List<T> entities) throws IOException {
+		// write to temporary file first => old content is not lost if writing fails
+		final File tmpFile = new File(file.getPath() + ".tmp");
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entities.size());
+			for (T entity : entities) {
+				codec.write(out, entity);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Unable to replace " + file);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Strings in binary formats (math entities, history): length-prefixed UTF-8, <code>null</code> is written as length -1.
+ * Unlike {@link DataOutput#writeUTF(String)} length of the string is not limited.
+ */
+public final class BinaryStrings {
+
+	private static final String CHARSET = "UTF-8";
+
+	// not intended for instantiation
+	private BinaryStrings() {
+		throw new AssertionError();
+	}
+
+	public static void write(@Nonnull DataOutput out, @Nullable String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			final byte[] bytes = s.getBytes(CHARSET);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	@Nullable
+	public static String read(@Nonnull DataInput in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		} else {
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, CHARSET);
+		}
+	}
+}
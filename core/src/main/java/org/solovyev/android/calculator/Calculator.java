@@ -22,6 +22,8 @@
 
 package org.solovyev.android.calculator;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import jscl.NumeralBase;
 import jscl.math.Generic;
 
@@ -32,6 +34,8 @@ import org.solovyev.android.calculator.history.CalculatorHistoryState;
 import org.solovyev.android.calculator.jscl.JsclOperation;
 import org.solovyev.common.history.HistoryControl;
 
+import java.math.MathContext;
+
 /**
  * User: Solovyev_S
  * Date: 20.09.12
@@ -64,6 +68,34 @@ public interface Calculator extends CalculatorEventContainer, HistoryControl<Cal
 								 @Nonnull String expression,
 								 @Nonnull Long sequenceId);
 
+	/**
+	 * Evaluates expression on the calculation thread without firing any calculator event.
+	 * Returned future is completed directly by the calculation thread: with {@link CalculatorOutput} on success or
+	 * with {@link CalculatorParseException}/{@link CalculatorEvalException} on failure.
+	 * Cancelling the future with interruption stops the calculation.
+	 *
+	 * @param operation  operation to be done
+	 * @param expression expression to be evaluated
+	 * @return future result of the evaluation
+	 */
+	@Nonnull
+	ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull JsclOperation operation,
+													 @Nonnull String expression);
+
+	/**
+	 * Same as {@link #evaluateAsync(JsclOperation, String)} but plain decimal arithmetic (see {@link DecimalEvaluator})
+	 * is evaluated exactly with given precision instead of double arithmetic. Other expressions are evaluated as usual.
+	 *
+	 * @param operation  operation to be done
+	 * @param expression expression to be evaluated
+	 * @param mc         precision and rounding of decimal arithmetic, null for double arithmetic
+	 * @return future result of the evaluation
+	 */
+	@Nonnull
+	ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull JsclOperation operation,
+													 @Nonnull String expression,
+													 @Nullable MathContext mc);
+
 	/*
 	**********************************************************************
 	*
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import jscl.NumeralBase;
+import jscl.math.Generic;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.math.MathType;
+import org.solovyev.android.calculator.units.CalculatorNumeralBase;
+import org.solovyev.common.units.ConversionException;
+import org.solovyev.common.units.Conversions;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Numeral base conversions of the calculation results:
+ * 1. results of the conversions (both successful and failed) are cached per (value, from, to)
+ * 2. {@link #isConversionPossible(Generic, NumeralBase, NumeralBase)} is answered from the cache or by simple check of
+ * the value's characters, full conversion is done only if neither of them gives the answer
+ * 3. concurrent requests for the same conversion share one task
+ */
+final class CalculatorConversionService {
+
+	private static final int CACHE_SIZE = 32;
+
+	@Nonnull
+	private final Map<Key, Conversion> cache = new LinkedHashMap<Key, Conversion>(CACHE_SIZE, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Conversion> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	@Nonnull
+	private final ConcurrentMap<Key, ListenableFuture<String>> conversionsInProgress = new ConcurrentHashMap<Key, ListenableFuture<String>>();
+
+	public boolean isConversionPossible(@Nonnull Generic value, @Nonnull NumeralBase from, @Nonnull NumeralBase to) {
+		if (from == to) {
+			return true;
+		}
+
+		final String valueString = value.toString();
+		final Key key = new Key(valueString, from, to);
+
+		final Conversion cached = getCached(key);
+		if (cached != null) {
+			return cached.isSuccessful();
+		}
+
+		if (isInteger(valueString, from)) {
+			// integer in source numeral base can always be converted
+			return true;
+		}
+
+		return convert(key).isSuccessful();
+	}
+
+	/**
+	 * @return future result of the conversion, future fails with {@link ConversionException} if conversion is not possible
+	 */
+	@Nonnull
+	public ListenableFuture<String> convert(@Nonnull Generic value, @Nonnull NumeralBase from, @Nonnull NumeralBase to, @Nonnull Executor executor) {
+		final Key key = new Key(value.toString(), from, to);
+
+		ListenableFuture<String> result = conversionsInProgress.get(key);
+		if (result == null) {
+			final ListenableFutureTask<String> task = ListenableFutureTask.create(new Callable<String>() {
+				@Override
+				public String call() throws ConversionException {
+					try {
+						return convert(key).getResult();
+					} finally {
+						conversionsInProgress.remove(key);
+					}
+				}
+			});
+
+			result = conversionsInProgress.putIfAbsent(key, task);
+			if (result == null) {
+				result = task;
+				executor.execute(task);
+			}
+		}
+
+		return result;
+	}
+
+	@Nonnull
+	private Conversion convert(@Nonnull Key key) {
+		Conversion result = getCached(key);
+		if (result == null) {
+			try {
+				result = Conversion.newSuccess(doConversion(key.value, key.from, key.to));
+			} catch (ConversionException e) {
+				result = Conversion.newFailure(e);
+			}
+
+			synchronized (cache) {
+				cache.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	@Nullable
+	private Conversion getCached(@Nonnull Key key) {
+		synchronized (cache) {
+			return cache.get(key);
+		}
+	}
+
+	/**
+	 * Method checks if value is a plain integer in the specified numeral base (grouping separators are allowed)
+	 */
+	private static boolean isInteger(@Nonnull String value, @Nonnull NumeralBase nb) {
+		final List<String> groupingSeparators = MathType.grouping_separator.getTokens();
+
+		boolean digits = false;
+		for (int i = 0; i < value.length(); i++) {
+			final char ch = value.charAt(i);
+			if (nb.getAcceptableCharacters().contains(ch)) {
+				digits = true;
+			} else if (!groupingSeparators.contains(String.valueOf(ch))) {
+				return false;
+			}
+		}
+
+		return digits;
+	}
+
+	@Nonnull
+	private static String doConversion(@Nonnull String value,
+									   @Nonnull NumeralBase from,
+									   @Nonnull NumeralBase to) throws ConversionException {
+		if (from != to) {
+			// value is a formatted number (possibly with grouping separators) which converter accepts as is
+			return Conversions.doConversion(CalculatorNumeralBase.getConverter(), value, CalculatorNumeralBase.valueOf(from), CalculatorNumeralBase.valueOf(to));
+		} else {
+			return value;
+		}
+	}
+
+	private static final class Key {
+
+		@Nonnull
+		private final String value;
+
+		@Nonnull
+		private final NumeralBase from;
+
+		@Nonnull
+		private final NumeralBase to;
+
+		private Key(@Nonnull String value, @Nonnull NumeralBase from, @Nonnull NumeralBase to) {
+			this.value = value;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+
+			final Key that = (Key) o;
+
+			if (from != that.from) return false;
+			if (to != that.to) return false;
+			if (!value.equals(that.value)) return false;
+
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = value.hashCode();
+			result = 31 * result + from.hashCode();
+			result = 31 * result + to.hashCode();
+			return result;
+		}
+	}
+
+	private static final class Conversion {
+
+		@Nullable
+		private final String result;
+
+		@Nullable
+		private final ConversionException exception;
+
+		private Conversion(@Nullable String result, @Nullable ConversionException exception) {
+			this.result = result;
+			this.exception = exception;
+		}
+
+		@Nonnull
+		private static Conversion newSuccess(@Nonnull String result) {
+			return new Conversion(result, null);
+		}
+
+		@Nonnull
+		private static Conversion newFailure(@Nonnull ConversionException exception) {
+			return new Conversion(null, exception);
+		}
+
+		private boolean isSuccessful() {
+			return exception == null;
+		}
+
+		@Nonnull
+		private String getResult() throws ConversionException {
+			if (exception != null) {
+				throw exception;
+			}
+			assert result != null;
+			return result;
+		}
+	}
+}
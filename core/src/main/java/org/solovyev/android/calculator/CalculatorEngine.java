@@ -48,10 +48,21 @@ public interface CalculatorEngine {
 	**********************************************************************
 	*/
 
+	/**
+	 * Starts loading of the registries, see {@link #reset()}
+	 */
 	void init();
 
+	/**
+	 * Loads registries in background. Registry getters block until corresponding registry is loaded.
+	 */
 	void reset();
 
+	/**
+	 * @return true if all registries are loaded, i.e. registry getters return without waiting
+	 */
+	boolean isLoaded();
+
 	void softReset();
 
 	/*
@@ -81,6 +92,12 @@ public interface CalculatorEngine {
 	@Nonnull
 	MathEngine getMathEngine0();
 
+	/**
+	 * @return new context to be used for one evaluation (contains snapshot of current settings and own message registry)
+	 */
+	@Nonnull
+	CalculatorEvaluationContext newEvaluationContext();
+
 	/*
 	**********************************************************************
 	*
@@ -89,6 +106,12 @@ public interface CalculatorEngine {
 	**********************************************************************
 	*/
 
+	/**
+	 * @return immutable snapshot of current engine preferences
+	 */
+	@Nonnull
+	CalculatorEngineSettings getSettings();
+
 	@Nonnull
 	String getMultiplicationSign();
 
@@ -22,6 +22,8 @@
 
 package org.solovyev.android.calculator;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import jscl.AngleUnit;
 import jscl.JsclMathEngine;
 import jscl.MathEngine;
@@ -36,6 +38,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import java.text.DecimalFormatSymbols;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * User: serso
@@ -56,6 +61,8 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 
 	private static final String MAX_CALCULATION_TIME_DEFAULT = "5";
 
+	private static final int PRECISION_DEFAULT = 5;
+
 	/*
 	**********************************************************************
 	*
@@ -84,6 +91,38 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	@Nonnull
 	private final Object lock;
 
+	/*
+	**********************************************************************
+	*
+	*                           LOADING
+	*
+	**********************************************************************
+	*/
+
+	// true for threads loading registries: they must not wait for other registries (see RegistryLoading#await())
+	@Nonnull
+	private static final ThreadLocal<Boolean> loadingThread = new ThreadLocal<Boolean>();
+
+	@Nonnull
+	private final Executor loadingExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("registry-loading-%d").setDaemon(true).build());
+
+	// serializes resets (engine lock is not used as reset waits for previous loading and setters must not wait for it)
+	@Nonnull
+	private final Object loadingLock = new Object();
+
+	// NOTE: null if registries have not been loaded yet (nothing to wait for)
+	@Nullable
+	private volatile RegistryLoading varsLoading;
+
+	@Nullable
+	private volatile RegistryLoading functionsLoading;
+
+	@Nullable
+	private volatile RegistryLoading operatorsLoading;
+
+	@Nullable
+	private volatile RegistryLoading postfixFunctionsLoading;
+
 	/*
 	**********************************************************************
 	*
@@ -93,10 +132,12 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	*/
 
 
-	private int timeout = Integer.valueOf(MAX_CALCULATION_TIME_DEFAULT);
+	// NOTE: readers take the snapshot without locking, writers (which are serialized by lock) publish new instance on every change
+	@Nonnull
+	private volatile CalculatorEngineSettings settings;
 
 	@Nonnull
-	private String multiplicationSign = MULTIPLICATION_SIGN_DEFAULT;
+	private final ThreadLocalMessageRegistry messageRegistry = new ThreadLocalMessageRegistry();
 
 	public CalculatorEngineImpl(@Nonnull JsclMathEngine engine,
 								@Nonnull CalculatorMathRegistry<IConstant> varsRegistry,
@@ -110,6 +151,17 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 
 		this.engine.setRoundResult(true);
 		this.engine.setUseGroupingSeparator(true);
+		this.engine.setPrecision(PRECISION_DEFAULT);
+		this.engine.setMessageRegistry(messageRegistry);
+
+		this.settings = CalculatorEngineSettings.newInstance(engine.getAngleUnits(),
+				engine.getNumeralBase(),
+				MULTIPLICATION_SIGN_DEFAULT,
+				PRECISION_DEFAULT,
+				true,
+				false,
+				JsclMathEngine.GROUPING_SEPARATOR_DEFAULT.charAt(0),
+				Integer.valueOf(MAX_CALCULATION_TIME_DEFAULT));
 
 		this.varsRegistry = varsRegistry;
 		this.functionsRegistry = functionsRegistry;
@@ -128,24 +180,28 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	@Nonnull
 	@Override
 	public CalculatorMathRegistry<IConstant> getVarsRegistry() {
+		await(varsLoading);
 		return this.varsRegistry;
 	}
 
 	@Nonnull
 	@Override
 	public CalculatorMathRegistry<Function> getFunctionsRegistry() {
+		await(functionsLoading);
 		return this.functionsRegistry;
 	}
 
 	@Nonnull
 	@Override
 	public CalculatorMathRegistry<Operator> getOperatorsRegistry() {
+		await(operatorsLoading);
 		return this.operatorsRegistry;
 	}
 
 	@Nonnull
 	@Override
 	public CalculatorMathRegistry<Operator> getPostfixFunctionsRegistry() {
+		await(postfixFunctionsLoading);
 		return this.postfixFunctionsRegistry;
 	}
 
@@ -161,6 +217,12 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 		return this.engine;
 	}
 
+	@Nonnull
+	@Override
+	public CalculatorEvaluationContext newEvaluationContext() {
+		return new CalculatorEvaluationContext(settings, messageRegistry);
+	}
+
 	/*
 	**********************************************************************
 	*
@@ -171,22 +233,56 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 
 	@Override
 	public void init() {
-		synchronized (lock) {
-			reset();
-		}
+		reset();
 	}
 
+	/**
+	 * Starts loading of the registries in background and returns immediately. Each registry is available as soon as it
+	 * is loaded: registry getters block until then.
+	 */
 	@Override
 	public void reset() {
-		synchronized (lock) {
-			safeLoadRegistry(varsRegistry);
-			safeLoadRegistry(functionsRegistry);
-			safeLoadRegistry(operatorsRegistry);
-			safeLoadRegistry(postfixFunctionsRegistry);
+		synchronized (loadingLock) {
+			// previous loading must be finished before registries are loaded again
+			await(varsLoading);
+			await(functionsLoading);
+			await(operatorsLoading);
+			await(postfixFunctionsLoading);
+
+			final RegistryLoading varsLoading = new RegistryLoading("vars", varsRegistry, null);
+			// bodies of functions might use variables
+			final RegistryLoading functionsLoading = new RegistryLoading("functions", functionsRegistry, varsLoading);
+			final RegistryLoading operatorsLoading = new RegistryLoading("operators", operatorsRegistry, null);
+			final RegistryLoading postfixFunctionsLoading = new RegistryLoading("postfix functions", postfixFunctionsRegistry, null);
+
+			this.varsLoading = varsLoading;
+			this.functionsLoading = functionsLoading;
+			this.operatorsLoading = operatorsLoading;
+			this.postfixFunctionsLoading = postfixFunctionsLoading;
+
+			loadingExecutor.execute(varsLoading);
+			loadingExecutor.execute(functionsLoading);
+			loadingExecutor.execute(operatorsLoading);
+			loadingExecutor.execute(postfixFunctionsLoading);
+		}
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return isLoaded(varsLoading) && isLoaded(functionsLoading) && isLoaded(operatorsLoading) && isLoaded(postfixFunctionsLoading);
+	}
+
+	private static boolean isLoaded(@Nullable RegistryLoading loading) {
+		return loading == null || loading.loaded.getCount() == 0;
+	}
+
+	private static void await(@Nullable RegistryLoading loading) {
+		if (loading != null) {
+			loading.await();
 		}
 	}
 
-	private void safeLoadRegistry(@Nonnull CalculatorMathRegistry<?> registry) {
+	private static void safeLoadRegistry(@Nonnull CalculatorMathRegistry<?> registry) {
 		try {
 			registry.load();
 		} catch (Exception e) {
@@ -194,7 +290,7 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 		}
 	}
 
-	private void logException(@Nonnull Exception e) {
+	private static void logException(@Nonnull Exception e) {
 		final CalculatorLogger logger = Locator.getInstance().getLogger();
 		logger.error("Engine", e.getMessage(), e);
 	}
@@ -212,10 +308,16 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	**********************************************************************
 	*/
 
+	@Nonnull
+	@Override
+	public CalculatorEngineSettings getSettings() {
+		return this.settings;
+	}
+
 	@Nonnull
 	@Override
 	public String getMultiplicationSign() {
-		return this.multiplicationSign;
+		return this.settings.getMultiplicationSign();
 	}
 
 	@Override
@@ -229,6 +331,7 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	public void setGroupingSeparator(char groupingSeparator) {
 		synchronized (lock) {
 			this.engine.setGroupingSeparator(groupingSeparator);
+			this.settings = this.settings.withGroupingSeparator(groupingSeparator);
 		}
 	}
 
@@ -236,6 +339,7 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	public void setPrecision(@Nonnull Integer precision) {
 		synchronized (lock) {
 			this.engine.setPrecision(precision);
+			this.settings = this.settings.withPrecision(precision);
 		}
 	}
 
@@ -243,60 +347,65 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	public void setRoundResult(@Nonnull Boolean round) {
 		synchronized (lock) {
 			this.engine.setRoundResult(round);
+			this.settings = this.settings.withRoundResult(round);
 		}
 	}
 
 	@Nonnull
 	@Override
 	public AngleUnit getAngleUnits() {
-		synchronized (lock) {
-			return this.engine.getAngleUnits();
-		}
+		return this.settings.getAngleUnits();
 	}
 
 	@Override
 	public void setAngleUnits(@Nonnull AngleUnit angleUnits) {
 		synchronized (lock) {
 			this.engine.setAngleUnits(angleUnits);
+			this.settings = this.settings.withAngleUnits(angleUnits);
 		}
 	}
 
 	@Nonnull
 	@Override
 	public NumeralBase getNumeralBase() {
-		synchronized (lock) {
-			return this.engine.getNumeralBase();
-		}
+		return this.settings.getNumeralBase();
 	}
 
 	@Override
 	public void setNumeralBase(@Nonnull NumeralBase numeralBase) {
 		synchronized (lock) {
 			this.engine.setNumeralBase(numeralBase);
+			this.settings = this.settings.withNumeralBase(numeralBase);
 		}
 	}
 
 	@Override
 	public void setMultiplicationSign(@Nonnull String multiplicationSign) {
-		this.multiplicationSign = multiplicationSign;
+		synchronized (lock) {
+			this.settings = this.settings.withMultiplicationSign(multiplicationSign);
+		}
 	}
 
 	@Override
 	public void setScienceNotation(@Nonnull Boolean scienceNotation) {
 		synchronized (lock) {
 			this.engine.setScienceNotation(scienceNotation);
+			this.settings = this.settings.withScienceNotation(scienceNotation);
 		}
 	}
 
 	@Override
 	public void setTimeout(@Nonnull Integer timeout) {
-		this.timeout = timeout;
+		synchronized (lock) {
+			this.settings = this.settings.withTimeout(timeout);
+		}
 	}
 
 	@Override
 	public void setDecimalGroupSymbols(@Nonnull DecimalFormatSymbols decimalGroupSymbols) {
 		synchronized (lock) {
 			this.engine.setDecimalGroupSymbols(decimalGroupSymbols);
+			this.settings = this.settings.withGroupingSeparator(decimalGroupSymbols.getGroupingSeparator());
 		}
 	}
 
@@ -308,6 +417,69 @@ public class CalculatorEngineImpl implements CalculatorEngine {
 	**********************************************************************
 	*/
 
+	private static final class RegistryLoading implements Runnable {
+
+		@Nonnull
+		private final String name;
+
+		@Nonnull
+		private final CalculatorMathRegistry<?> registry;
+
+		@Nullable
+		private final RegistryLoading dependency;
+
+		@Nonnull
+		private final CountDownLatch loaded = new CountDownLatch(1);
+
+		private RegistryLoading(@Nonnull String name,
+								@Nonnull CalculatorMathRegistry<?> registry,
+								@Nullable RegistryLoading dependency) {
+			this.name = name;
+			this.registry = registry;
+			this.dependency = dependency;
+		}
+
+		@Override
+		public void run() {
+			loadingThread.set(true);
+			try {
+				if (dependency != null) {
+					dependency.loaded.await();
+				}
+
+				final long start = System.currentTimeMillis();
+				safeLoadRegistry(registry);
+				Locator.getInstance().getLogger().debug("Engine", "Registry of " + name + " loaded in " + (System.currentTimeMillis() - start) + " ms");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				loadingThread.remove();
+				loaded.countDown();
+			}
+		}
+
+		private void await() {
+			if (loaded.getCount() == 0 || loadingThread.get() != null) {
+				// loading threads use registries of each other in any state (as if registries were loaded sequentially)
+				return;
+			}
+
+			boolean interrupted = false;
+			while (true) {
+				try {
+					loaded.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	private static final class JsclCalculatorMathEngine implements CalculatorMathEngine {
 
 		@Nonnull
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import jscl.AngleUnit;
+import jscl.NumeralBase;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Immutable snapshot of engine preferences. New instance is published by {@link CalculatorEngine} on every change
+ * => readers may use it without any synchronization and see consistent set of values during one evaluation.
+ */
+public final class CalculatorEngineSettings {
+
+	@Nonnull
+	private final AngleUnit angleUnits;
+
+	@Nonnull
+	private final NumeralBase numeralBase;
+
+	@Nonnull
+	private final String multiplicationSign;
+
+	private final int precision;
+
+	private final boolean roundResult;
+
+	private final boolean scienceNotation;
+
+	private final char groupingSeparator;
+
+	private final int timeout;
+
+	private CalculatorEngineSettings(@Nonnull AngleUnit angleUnits,
+									 @Nonnull NumeralBase numeralBase,
+									 @Nonnull String multiplicationSign,
+									 int precision,
+									 boolean roundResult,
+									 boolean scienceNotation,
+									 char groupingSeparator,
+									 int timeout) {
+		this.angleUnits = angleUnits;
+		this.numeralBase = numeralBase;
+		this.multiplicationSign = multiplicationSign;
+		this.precision = precision;
+		this.roundResult = roundResult;
+		this.scienceNotation = scienceNotation;
+		this.groupingSeparator = groupingSeparator;
+		this.timeout = timeout;
+	}
+
+	@Nonnull
+	public static CalculatorEngineSettings newInstance(@Nonnull AngleUnit angleUnits,
+													   @Nonnull NumeralBase numeralBase,
+													   @Nonnull String multiplicationSign,
+													   int precision,
+													   boolean roundResult,
+													   boolean scienceNotation,
+													   char groupingSeparator,
+													   int timeout) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withAngleUnits(@Nonnull AngleUnit angleUnits) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withNumeralBase(@Nonnull NumeralBase numeralBase) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withMultiplicationSign(@Nonnull String multiplicationSign) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withPrecision(int precision) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withRoundResult(boolean roundResult) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withScienceNotation(boolean scienceNotation) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withGroupingSeparator(char groupingSeparator) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	CalculatorEngineSettings withTimeout(int timeout) {
+		return new CalculatorEngineSettings(angleUnits, numeralBase, multiplicationSign, precision, roundResult, scienceNotation, groupingSeparator, timeout);
+	}
+
+	@Nonnull
+	public AngleUnit getAngleUnits() {
+		return angleUnits;
+	}
+
+	@Nonnull
+	public NumeralBase getNumeralBase() {
+		return numeralBase;
+	}
+
+	@Nonnull
+	public String getMultiplicationSign() {
+		return multiplicationSign;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public boolean isRoundResult() {
+		return roundResult;
+	}
+
+	public boolean isScienceNotation() {
+		return scienceNotation;
+	}
+
+	public char getGroupingSeparator() {
+		return groupingSeparator;
+	}
+
+	public int getTimeout() {
+		return timeout;
+	}
+
+	@Override
+	public String toString() {
+		return "CalculatorEngineSettings{" +
+				"angleUnits=" + angleUnits +
+				", numeralBase=" + numeralBase +
+				", multiplicationSign='" + multiplicationSign + '\'' +
+				", precision=" + precision +
+				", roundResult=" + roundResult +
+				", scienceNotation=" + scienceNotation +
+				", groupingSeparator=" + groupingSeparator +
+				", timeout=" + timeout +
+				'}';
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.common.msg.ListMessageRegistry;
+import org.solovyev.common.msg.Message;
+import org.solovyev.common.msg.MessageRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-evaluation state: settings snapshot taken at the moment of creation and private message registry.
+ * Context must be attached to the evaluating thread before calling the math engine and detached afterwards:
+ *
+ * <pre>
+ * context.attach();
+ * try {
+ *     ...
+ * } finally {
+ *     context.detach();
+ * }
+ * </pre>
+ */
+public final class CalculatorEvaluationContext {
+
+	@Nonnull
+	private final CalculatorEngineSettings settings;
+
+	@Nonnull
+	private final MessageRegistry messageRegistry = new ListMessageRegistry();
+
+	@Nonnull
+	private final ThreadLocalMessageRegistry engineMessageRegistry;
+
+	@Nullable
+	private MessageRegistry previousMessageRegistry;
+
+	private boolean attached = false;
+
+	CalculatorEvaluationContext(@Nonnull CalculatorEngineSettings settings,
+								@Nonnull ThreadLocalMessageRegistry engineMessageRegistry) {
+		this.settings = settings;
+		this.engineMessageRegistry = engineMessageRegistry;
+	}
+
+	@Nonnull
+	public CalculatorEngineSettings getSettings() {
+		return settings;
+	}
+
+	public void attach() {
+		if (attached) {
+			throw new IllegalStateException("Context is already attached!");
+		}
+		previousMessageRegistry = engineMessageRegistry.bind(messageRegistry);
+		attached = true;
+	}
+
+	public void detach() {
+		if (attached) {
+			engineMessageRegistry.bind(previousMessageRegistry);
+			previousMessageRegistry = null;
+			attached = false;
+		}
+	}
+
+	/**
+	 * @return all messages produced during evaluation (messages are removed from the context)
+	 */
+	@Nonnull
+	public List<Message> drainMessages() {
+		final List<Message> messages = new ArrayList<Message>();
+		while (messageRegistry.hasMessage()) {
+			messages.add(messageRegistry.getMessage());
+		}
+		return messages;
+	}
+}
@@ -38,8 +38,10 @@ import org.solovyev.common.JBuilder;
 import org.solovyev.common.math.MathRegistry;
 import org.solovyev.common.text.Strings;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -59,6 +61,11 @@ public class CalculatorFunctionsMathRegistry extends AbstractCalculatorMathRegis
 	@Nonnull
 	private static final String FUNCTION_DESCRIPTION_PREFIX = "c_fun_description_";
 
+	// guarded by this: last compiled function for each name. Function body is parsed only if definition of the function
+	// has changed => reload of the registry and save of not changed function reuse compiled function
+	@Nonnull
+	private final Map<String, CompiledFunction> compiledFunctions = new HashMap<String, CompiledFunction>();
+
 	public CalculatorFunctionsMathRegistry(@Nonnull MathRegistry<Function> functionsRegistry,
 										   @Nonnull MathEntityDao<AFunction> mathEntityDao) {
 		super(functionsRegistry, FUNCTION_DESCRIPTION_PREFIX, mathEntityDao);
@@ -66,16 +73,55 @@ public class CalculatorFunctionsMathRegistry extends AbstractCalculatorMathRegis
 
 	@Override
 	public void load() {
-		add(new CustomFunction.Builder(true, "log", Arrays.asList("base", "x"), "ln(x)/ln(base)"));
-		add(new CustomFunction.Builder(true, "√3", Arrays.asList("x"), "x^(1/3)"));
-		add(new CustomFunction.Builder(true, "√4", Arrays.asList("x"), "x^(1/4)"));
-		add(new CustomFunction.Builder(true, "√n", Arrays.asList("x", "n"), "x^(1/n)"));
-		add(new CustomFunction.Builder(true, "re", Arrays.asList("x"), "(x+conjugate(x))/2"));
-		add(new CustomFunction.Builder(true, "im", Arrays.asList("x"), "(x-conjugate(x))/(2*i)"));
+		addSystemFunction("log", Arrays.asList("base", "x"), "ln(x)/ln(base)");
+		addSystemFunction("√3", Arrays.asList("x"), "x^(1/3)");
+		addSystemFunction("√4", Arrays.asList("x"), "x^(1/4)");
+		addSystemFunction("√n", Arrays.asList("x", "n"), "x^(1/n)");
+		addSystemFunction("re", Arrays.asList("x"), "(x+conjugate(x))/2");
+		addSystemFunction("im", Arrays.asList("x"), "(x-conjugate(x))/(2*i)");
 
 		super.load();
 	}
 
+	private void addSystemFunction(@Nonnull String name, @Nonnull List<String> parameterNames, @Nonnull String body) {
+		final FunctionDefinition definition = new FunctionDefinition(name, body, parameterNames, null, true);
+		add(definition, new CustomFunction.Builder(true, name, parameterNames, body));
+	}
+
+	@Override
+	public synchronized Function add(@Nonnull JBuilder<? extends Function> builder) {
+		if (builder instanceof FunctionBuilderAdapter) {
+			// body is preprocessed anyway as it depends on the current variables, only parsing might be skipped
+			final AFunction function = ((FunctionBuilderAdapter) builder).getFunctionBuilder().create();
+			return add(FunctionDefinition.newInstance(function), new CustomFunction.Builder(function));
+		} else {
+			return super.add(builder);
+		}
+	}
+
+	@Nonnull
+	private synchronized Function add(@Nonnull FunctionDefinition definition, @Nonnull JBuilder<? extends Function> builder) {
+		CompiledFunction compiled = compiledFunctions.get(definition.name);
+		if (compiled == null || !compiled.definition.equals(definition)) {
+			compiled = new CompiledFunction(definition, builder.create());
+			compiledFunctions.put(definition.name, compiled);
+		} else if (get(definition.name) == compiled.function) {
+			// compiled function is already registered
+			return compiled.function;
+		}
+
+		return super.add(compiled);
+	}
+
+	@Override
+	public synchronized void remove(@Nonnull Function function) {
+		try {
+			super.remove(function);
+		} finally {
+			compiledFunctions.remove(function.getName());
+		}
+	}
+
 	public static void saveFunction(@Nonnull CalculatorMathRegistry<Function> registry,
 									@Nonnull MathEntityBuilder<? extends Function> builder,
 									@Nullable IFunction editedInstance,
@@ -148,4 +194,84 @@ public class CalculatorFunctionsMathRegistry extends AbstractCalculatorMathRegis
 	protected MathEntityPersistenceContainer<AFunction> createPersistenceContainer() {
 		return new Functions();
 	}
+
+	private static final class FunctionDefinition {
+
+		@Nonnull
+		private final String name;
+
+		@Nonnull
+		private final String body;
+
+		@Nonnull
+		private final List<String> parameterNames;
+
+		@Nonnull
+		private final String description;
+
+		private final boolean system;
+
+		private FunctionDefinition(@Nonnull String name,
+								   @Nonnull String body,
+								   @Nonnull List<String> parameterNames,
+								   @Nullable String description,
+								   boolean system) {
+			this.name = name;
+			this.body = body;
+			this.parameterNames = new ArrayList<String>(parameterNames);
+			this.description = Strings.getNotEmpty(description, "");
+			this.system = system;
+		}
+
+		@Nonnull
+		private static FunctionDefinition newInstance(@Nonnull AFunction function) {
+			return new FunctionDefinition(function.getName(), function.getContent(), function.getParameterNames(), function.getDescription(), function.isSystem());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof FunctionDefinition)) return false;
+
+			final FunctionDefinition that = (FunctionDefinition) o;
+
+			if (system != that.system) return false;
+			if (!name.equals(that.name)) return false;
+			if (!body.equals(that.body)) return false;
+			if (!parameterNames.equals(that.parameterNames)) return false;
+			if (!description.equals(that.description)) return false;
+
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = name.hashCode();
+			result = 31 * result + body.hashCode();
+			result = 31 * result + parameterNames.hashCode();
+			result = 31 * result + description.hashCode();
+			result = 31 * result + (system ? 1 : 0);
+			return result;
+		}
+	}
+
+	private static final class CompiledFunction implements JBuilder<Function> {
+
+		@Nonnull
+		private final FunctionDefinition definition;
+
+		@Nonnull
+		private final Function function;
+
+		private CompiledFunction(@Nonnull FunctionDefinition definition, @Nonnull Function function) {
+			this.definition = definition;
+			this.function = function;
+		}
+
+		@Nonnull
+		@Override
+		public Function create() {
+			return function;
+		}
+	}
 }
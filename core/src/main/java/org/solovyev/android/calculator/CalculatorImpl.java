@@ -22,9 +22,15 @@
 
 package org.solovyev.android.calculator;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
 import jscl.AbstractJsclArithmeticException;
 import jscl.NumeralBase;
 import jscl.NumeralBaseException;
+import jscl.math.Expression;
 import jscl.math.Generic;
 import jscl.math.function.Function;
 import jscl.math.function.IConstant;
@@ -39,18 +45,17 @@ import org.solovyev.android.calculator.history.CalculatorHistoryState;
 import org.solovyev.android.calculator.jscl.JsclOperation;
 import org.solovyev.android.calculator.model.Var;
 import org.solovyev.android.calculator.text.TextProcessor;
-import org.solovyev.android.calculator.units.CalculatorNumeralBase;
 import org.solovyev.common.history.HistoryAction;
-import org.solovyev.common.msg.ListMessageRegistry;
 import org.solovyev.common.msg.Message;
 import org.solovyev.common.msg.MessageRegistry;
 import org.solovyev.common.msg.MessageType;
 import org.solovyev.common.text.Strings;
 import org.solovyev.common.units.ConversionException;
-import org.solovyev.common.units.Conversions;
 
-import java.util.ArrayList;
+import java.math.MathContext;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
@@ -62,17 +67,6 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class CalculatorImpl implements Calculator, CalculatorEventListener {
 
-	/*
-	**********************************************************************
-	*
-	*                           CONSTANTS
-	*
-	**********************************************************************
-	*/
-
-	// one minute
-	private static final long PREFERENCE_CHECK_INTERVAL = 1000L * 60L;
-
 	/*
 	**********************************************************************
 	*
@@ -93,13 +87,31 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 	@Nonnull
 	private final Executor calculationsExecutor = Executors.newFixedThreadPool(10);
 
+	@Nonnull
+	private final CalculatorConversionService conversionService = new CalculatorConversionService();
+
 	// NOTE: only one thread is responsible for events as all events must be done in order of their creating
 	@Nonnull
 	private final Executor eventExecutor = Executors.newFixedThreadPool(1);
 
-	private volatile boolean calculateOnFly = true;
+	// NOTE: preferences are checked in background on changes => evaluation never waits for preferences I/O
+	@Nonnull
+	private final Executor preferencesExecutor = Executors.newSingleThreadExecutor();
 
-	private volatile long lastPreferenceCheck = 0L;
+	@Nonnull
+	private final Runnable preferencesCheck = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				Locator.getInstance().getPreferenceService().checkPreferredPreferences(false);
+			} catch (RuntimeException e) {
+				// failed check must not affect the calculator
+				Locator.getInstance().getLogger().error(CalculatorImpl.class.getSimpleName(), e.getMessage(), e);
+			}
+		}
+	};
+
+	private volatile boolean calculateOnFly = true;
 
 
 	/*
@@ -201,10 +213,34 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 		return eventDataId;
 	}
 
+	@Nonnull
+	@Override
+	public ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull JsclOperation operation, @Nonnull String expression) {
+		return evaluateAsync(operation, expression, null);
+	}
+
+	@Nonnull
+	@Override
+	public ListenableFuture<CalculatorOutput> evaluateAsync(@Nonnull final JsclOperation operation, @Nonnull final String expression, @Nullable final MathContext mc) {
+		final ListenableFutureTask<CalculatorOutput> task = ListenableFutureTask.create(new Callable<CalculatorOutput>() {
+			@Override
+			public CalculatorOutput call() throws Exception {
+				final FutureCalculationCallback callback = new FutureCalculationCallback();
+				CalculatorImpl.this.evaluate(operation, expression, mc, null, callback);
+				return callback.getOutput();
+			}
+		});
+
+		calculationsExecutor.execute(task);
+
+		return task;
+	}
+
 	@Override
 	public void init() {
 		Locator.getInstance().getEngine().init();
 		Locator.getInstance().getHistory().load();
+		// NOTE: initial check of preferred preferences is done by the UI on start, later checks are done on changes (see onCalculatorEvent)
 	}
 
 	public void setCalculateOnFly(boolean calculateOnFly) {
@@ -224,8 +260,14 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 						  @Nonnull JsclOperation operation,
 						  @Nonnull String expression,
 						  @Nullable MessageRegistry mr) {
+		evaluate(operation, expression, null, mr, new EventsCalculationCallback(sequenceId));
+	}
 
-		checkPreferredPreferences();
+	private void evaluate(@Nonnull JsclOperation operation,
+						  @Nonnull String expression,
+						  @Nullable MathContext mc,
+						  @Nullable MessageRegistry mr,
+						  @Nonnull CalculationCallback callback) {
 
 		PreparedExpression preparedExpression = null;
 
@@ -234,70 +276,79 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 			expression = expression.trim();
 
 			if (Strings.isEmpty(expression)) {
-				fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_result, CalculatorOutputImpl.newEmptyOutput(operation));
+				callback.onResult(operation, expression, CalculatorOutputImpl.newEmptyOutput(operation));
 			} else {
+				final CalculatorEngine engine = Locator.getInstance().getEngine();
+
+				// NOTE: each evaluation has its own context => no messages from other evaluations are mixed in
+				final CalculatorEvaluationContext context = engine.newEvaluationContext();
+
+				if (operation == JsclOperation.numeric) {
+					final CalculatorEngineSettings settings = context.getSettings();
+					if (mc != null && settings.getNumeralBase() == NumeralBase.dec) {
+						final DecimalEvaluator.Result result = DecimalEvaluator.evaluate(expression, mc, DecimalEvaluator.MAX_COST_DEFAULT);
+						if (result != null) {
+							final String output = result.format(settings.getGroupingSeparator());
+							callback.onResult(operation, expression, CalculatorOutputImpl.newOutput(output, operation, Expression.valueOf(result.getValue().toPlainString())));
+							return;
+						}
+					}
+
+					// plain arithmetic is evaluated without preprocessing and parsing
+					final Generic result = SimpleNumericEvaluator.evaluate(expression, settings);
+					if (result != null) {
+						callback.onResult(operation, expression, CalculatorOutputImpl.newOutput(operation.getFromProcessor().process(result), operation, result));
+						return;
+					}
+				}
+
 				preparedExpression = prepareExpression(expression);
 
 				final String jsclExpression = preparedExpression.toString();
 
+				context.attach();
 				try {
 
-					final CalculatorMathEngine mathEngine = Locator.getInstance().getEngine().getMathEngine();
-
-					final MessageRegistry messageRegistry = new ListMessageRegistry();
-					Locator.getInstance().getEngine().getMathEngine0().setMessageRegistry(messageRegistry);
-
-					final Generic result = operation.evaluateGeneric(jsclExpression, mathEngine);
+					Generic result = null;
+					if (operation == JsclOperation.numeric) {
+						// each repeated subexpression (e.g. inlined value of the variable) is evaluated only once
+						result = CommonSubexpressionEliminator.evaluate(preparedExpression, engine.getMathEngine(), engine.getOperatorsRegistry().getSnapshot());
+					}
+					if (result == null) {
+						result = operation.evaluateGeneric(jsclExpression, engine.getMathEngine());
+					}
 
 					// NOTE: toString() method must be called here as ArithmeticOperationException may occur in it (just to avoid later check!)
 					result.toString();
 
-					if (messageRegistry.hasMessage()) {
-						final CalculatorLogger logger = Locator.getInstance().getLogger();
-						try {
-							final List<Message> messages = new ArrayList<Message>();
-							while (messageRegistry.hasMessage()) {
-								messages.add(messageRegistry.getMessage());
-							}
-							if (!messages.isEmpty()) {
-								fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_messages, messages);
-							}
-						} catch (Throwable e) {
-							// todo serso: not good but we need proper synchronization
-							logger.error("Calculator", e.getMessage(), e);
-						}
+					final List<Message> messages = context.drainMessages();
+					if (!messages.isEmpty()) {
+						callback.onMessages(operation, expression, messages);
 					}
 
 					final CalculatorOutput data = CalculatorOutputImpl.newOutput(operation.getFromProcessor().process(result), operation, result);
-					fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_result, data);
+					callback.onResult(operation, expression, data);
 
 				} catch (AbstractJsclArithmeticException e) {
-					handleException(sequenceId, operation, expression, mr, new CalculatorEvalException(e, e, jsclExpression));
+					handleException(operation, expression, mr, callback, new CalculatorEvalException(e, e, jsclExpression));
+				} finally {
+					context.detach();
 				}
 			}
 
 		} catch (ArithmeticException e) {
-			handleException(sequenceId, operation, expression, mr, preparedExpression, new CalculatorParseException(expression, new CalculatorMessage(CalculatorMessages.msg_001, MessageType.error, e.getMessage())));
+			handleException(operation, expression, mr, callback, preparedExpression, new CalculatorParseException(expression, new CalculatorMessage(CalculatorMessages.msg_001, MessageType.error, e.getMessage())));
 		} catch (StackOverflowError e) {
-			handleException(sequenceId, operation, expression, mr, preparedExpression, new CalculatorParseException(expression, new CalculatorMessage(CalculatorMessages.msg_002, MessageType.error)));
+			handleException(operation, expression, mr, callback, preparedExpression, new CalculatorParseException(expression, new CalculatorMessage(CalculatorMessages.msg_002, MessageType.error)));
 		} catch (jscl.text.ParseException e) {
-			handleException(sequenceId, operation, expression, mr, preparedExpression, new CalculatorParseException(e));
+			handleException(operation, expression, mr, callback, preparedExpression, new CalculatorParseException(e));
 		} catch (ParseInterruptedException e) {
 
 			// do nothing - we ourselves interrupt the calculations
-			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_cancelled, null);
+			callback.onCancelled(operation, expression);
 
 		} catch (CalculatorParseException e) {
-			handleException(sequenceId, operation, expression, mr, preparedExpression, e);
-		}
-	}
-
-	private void checkPreferredPreferences() {
-		final long currentTime = System.currentTimeMillis();
-
-		if (currentTime - lastPreferenceCheck > PREFERENCE_CHECK_INTERVAL) {
-			lastPreferenceCheck = currentTime;
-			Locator.getInstance().getPreferenceService().checkPreferredPreferences(false);
+			handleException(operation, expression, mr, callback, preparedExpression, e);
 		}
 	}
 
@@ -314,10 +365,10 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 		return new CalculatorEvaluationEventDataImpl(nextEventData(calculationId), operation, expression);
 	}
 
-	private void handleException(@Nonnull Long sequenceId,
-								 @Nonnull JsclOperation operation,
+	private void handleException(@Nonnull JsclOperation operation,
 								 @Nonnull String expression,
 								 @Nullable MessageRegistry mr,
+								 @Nonnull CalculationCallback callback,
 								 @Nullable PreparedExpression preparedExpression,
 								 @Nonnull CalculatorParseException parseException) {
 
@@ -325,23 +376,23 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 				&& preparedExpression != null
 				&& preparedExpression.isExistsUndefinedVar()) {
 
-			evaluate(sequenceId, JsclOperation.simplify, expression, mr);
+			evaluate(JsclOperation.simplify, expression, mr, callback);
 		} else {
 
-			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_failed, new CalculatorFailureImpl(parseException));
+			callback.onFailure(operation, expression, new CalculatorFailureImpl(parseException));
 		}
 	}
 
-	private void handleException(@Nonnull Long calculationId,
-								 @Nonnull JsclOperation operation,
+	private void handleException(@Nonnull JsclOperation operation,
 								 @Nonnull String expression,
 								 @Nullable MessageRegistry mr,
+								 @Nonnull CalculationCallback callback,
 								 @Nonnull CalculatorEvalException evalException) {
 
 		if (operation == JsclOperation.numeric && evalException.getCause() instanceof NumeralBaseException) {
-			evaluate(calculationId, JsclOperation.simplify, expression, mr);
+			evaluate(JsclOperation.simplify, expression, mr, callback);
 		} else {
-			fireCalculatorEvent(newCalculationEventData(operation, expression, calculationId), CalculatorEventType.calculation_failed, new CalculatorFailureImpl(evalException));
+			callback.onFailure(operation, expression, new CalculatorFailureImpl(evalException));
 		}
 	}
 
@@ -362,20 +413,19 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 		final CalculatorDisplayViewState displayViewState = Locator.getInstance().getDisplay().getViewState();
 		final NumeralBase from = Locator.getInstance().getEngine().getNumeralBase();
 
-		calculationsExecutor.execute(new Runnable() {
-			@Override
-			public void run() {
-				final Long sequenceId = eventDataId.getSequenceId();
-
-				fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_started, null);
-				try {
+		final Long sequenceId = eventDataId.getSequenceId();
+		fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_started, null);
 
-					final String result = doConversion(value, from, to);
-
-					fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_result, result);
+		Futures.addCallback(conversionService.convert(value, from, to, calculationsExecutor), new FutureCallback<String>() {
+			@Override
+			public void onSuccess(String result) {
+				fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_result, result);
+			}
 
-				} catch (ConversionException e) {
-					fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_failed, new ConversionFailureImpl(e));
+			@Override
+			public void onFailure(Throwable t) {
+				if (t instanceof ConversionException) {
+					fireCalculatorEvent(newConversionEventData(sequenceId, value, from, to, displayViewState), CalculatorEventType.conversion_failed, new ConversionFailureImpl((ConversionException) t));
 				}
 			}
 		});
@@ -383,39 +433,9 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 		return eventDataId;
 	}
 
-	@Nonnull
-	private static String doConversion(@Nonnull Generic generic,
-									   @Nonnull NumeralBase from,
-									   @Nonnull NumeralBase to) throws ConversionException {
-		final String result;
-
-		if (from != to) {
-			String fromString = generic.toString();
-			if (!Strings.isEmpty(fromString)) {
-				try {
-					fromString = ToJsclTextProcessor.getInstance().process(fromString).getExpression();
-				} catch (CalculatorParseException e) {
-					// ok, problems while processing occurred
-				}
-			}
-
-
-			result = Conversions.doConversion(CalculatorNumeralBase.getConverter(), fromString, CalculatorNumeralBase.valueOf(from), CalculatorNumeralBase.valueOf(to));
-		} else {
-			result = generic.toString();
-		}
-
-		return result;
-	}
-
 	@Override
 	public boolean isConversionPossible(@Nonnull Generic generic, NumeralBase from, @Nonnull NumeralBase to) {
-		try {
-			doConversion(generic, from, to);
-			return true;
-		} catch (ConversionException e) {
-			return false;
-		}
+		return conversionService.isConversionPossible(generic, from, to);
 	}
 
 	/*
@@ -532,6 +552,7 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 
 			case engine_preferences_changed:
 				evaluate(calculatorEventData.getSequenceId());
+				preferencesExecutor.execute(preferencesCheck);
 				break;
 
 			case use_constant:
@@ -606,6 +627,105 @@ public class CalculatorImpl implements Calculator, CalculatorEventListener {
 		return CalculatorHistoryState.newInstance(getEditor(), getDisplay());
 	}
 
+	/*
+	**********************************************************************
+	*
+	*                           CALCULATION CALLBACKS
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * Receives outcome of one calculation. Note that operation passed to the methods might differ from the requested one
+	 * (e.g. numeric evaluation falls back to simplification if expression contains undefined variables)
+	 */
+	private static interface CalculationCallback {
+
+		void onMessages(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull List<Message> messages);
+
+		void onResult(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorOutput output);
+
+		void onFailure(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorFailure failure);
+
+		void onCancelled(@Nonnull JsclOperation operation, @Nonnull String expression);
+	}
+
+	/**
+	 * Publishes outcome of the calculation as calculator events
+	 */
+	private final class EventsCalculationCallback implements CalculationCallback {
+
+		@Nonnull
+		private final Long sequenceId;
+
+		private EventsCalculationCallback(@Nonnull Long sequenceId) {
+			this.sequenceId = sequenceId;
+		}
+
+		@Override
+		public void onMessages(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull List<Message> messages) {
+			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_messages, messages);
+		}
+
+		@Override
+		public void onResult(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorOutput output) {
+			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_result, output);
+		}
+
+		@Override
+		public void onFailure(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorFailure failure) {
+			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_failed, failure);
+		}
+
+		@Override
+		public void onCancelled(@Nonnull JsclOperation operation, @Nonnull String expression) {
+			fireCalculatorEvent(newCalculationEventData(operation, expression, sequenceId), CalculatorEventType.calculation_cancelled, null);
+		}
+	}
+
+	/**
+	 * Keeps outcome of the calculation in order to return it directly from the calculation thread (no events are fired)
+	 */
+	private static final class FutureCalculationCallback implements CalculationCallback {
+
+		@Nullable
+		private CalculatorOutput output;
+
+		@Nullable
+		private Exception exception;
+
+		@Override
+		public void onMessages(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull List<Message> messages) {
+			// messages are not reported through futures
+		}
+
+		@Override
+		public void onResult(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorOutput output) {
+			this.output = output;
+		}
+
+		@Override
+		public void onFailure(@Nonnull JsclOperation operation, @Nonnull String expression, @Nonnull CalculatorFailure failure) {
+			this.exception = failure.getException();
+		}
+
+		@Override
+		public void onCancelled(@Nonnull JsclOperation operation, @Nonnull String expression) {
+			this.exception = new CancellationException("Calculation of " + expression + " was interrupted");
+		}
+
+		@Nonnull
+		private CalculatorOutput getOutput() throws Exception {
+			if (exception != null) {
+				throw exception;
+			} else if (output == null) {
+				throw new IllegalStateException("Calculation has not been finished");
+			} else {
+				return output;
+			}
+		}
+	}
+
 	/*
 	**********************************************************************
 	*
@@ -44,4 +44,15 @@ public interface CalculatorMathRegistry<T extends MathEntity> extends MathRegist
 	void load();
 
 	void save();
+
+	/**
+	 * Starts write of pending changes immediately (e.g. when application goes to background), see {@link #save()}
+	 */
+	void flush();
+
+	/**
+	 * @return current immutable snapshot of the registry (cheap, no locking if registry has not been changed)
+	 */
+	@Nonnull
+	MathRegistrySnapshot<T> getSnapshot();
 }
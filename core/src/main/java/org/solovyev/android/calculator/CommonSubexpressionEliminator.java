@@ -0,0 +1,283 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import jscl.math.Generic;
+import jscl.math.JsclInteger;
+import jscl.math.NumericWrapper;
+import jscl.math.numeric.Numeric;
+import jscl.math.numeric.Real;
+import jscl.math.operator.Operator;
+import jscl.text.ParseException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Common subexpression elimination for the numeric evaluation of the prepared expression.
+ * <p/>
+ * Preprocessor inlines each reference to the variable defined by expression as bracketed value of the variable => an
+ * expression referencing such variable (directly or through other variables) N times contains N copies of the same
+ * bracketed subexpression. Each distinct bracketed subexpression which occurs more than once is evaluated only once
+ * (inner ones first) and all its occurrences are replaced with its value before the evaluation of the whole
+ * expression. Real values are substituted with full double precision, values which can't be written as real number
+ * (complex numbers, infinities) and subexpressions which depend on their context (arguments of operators, like
+ * variables of ∑ or ∂) are left as is.
+ */
+final class CommonSubexpressionEliminator {
+
+	@Nonnull
+	private final String expression;
+
+	@Nonnull
+	private final CalculatorMathEngine mathEngine;
+
+	@Nonnull
+	private final List<String> operatorNames;
+
+	// position of the matching close bracket for each open bracket
+	@Nonnull
+	private final int[] closings;
+
+	// content of the bracketed subexpression for each open bracket, null if subexpression can't be eliminated
+	@Nonnull
+	private final String[] contents;
+
+	@Nonnull
+	private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+	// replacement (bracketed value or bracketed processed subexpression) for each repeated subexpression
+	@Nonnull
+	private final Map<String, String> replacements = new HashMap<String, String>();
+
+	private int substitutions = 0;
+
+	private CommonSubexpressionEliminator(@Nonnull String expression,
+										  @Nonnull CalculatorMathEngine mathEngine,
+										  @Nonnull List<String> operatorNames,
+										  @Nonnull int[] closings) {
+		this.expression = expression;
+		this.mathEngine = mathEngine;
+		this.operatorNames = operatorNames;
+		this.closings = closings;
+		this.contents = new String[expression.length()];
+	}
+
+	/**
+	 * @return result of the numeric evaluation of <var>expression</var> or null if expression contains no repeated
+	 * subexpressions (and thus should be evaluated as usual)
+	 */
+	@Nullable
+	static Generic evaluate(@Nonnull PreparedExpression expression,
+							@Nonnull CalculatorMathEngine mathEngine,
+							@Nonnull MathRegistrySnapshot<Operator> operators) throws ParseException {
+		final String rewritten = eliminate(expression, mathEngine, operators);
+		return rewritten == null ? null : mathEngine.evaluateGeneric(rewritten);
+	}
+
+	/**
+	 * @return <var>expression</var> with repeated subexpressions replaced by their values or null if there is nothing to
+	 * replace
+	 */
+	@Nullable
+	static String eliminate(@Nonnull PreparedExpression expression,
+							@Nonnull CalculatorMathEngine mathEngine,
+							@Nonnull MathRegistrySnapshot<Operator> operators) throws ParseException {
+		if (expression.isExistsUndefinedVar()) {
+			// subexpressions with undefined variables have no numeric values
+			return null;
+		}
+
+		final String s = expression.getExpression();
+		for (int i = 0; i < s.length(); i++) {
+			final char ch = s.charAt(i);
+			if (ch == '[' || ch == '{' || ch == '%') {
+				// vectors, matrices and percents are evaluated depending on the context
+				return null;
+			}
+		}
+
+		final int[] closings = findClosings(s);
+		if (closings == null) {
+			// let jscl report the error
+			return null;
+		}
+
+		final CommonSubexpressionEliminator eliminator = new CommonSubexpressionEliminator(s, mathEngine, operators.getNames(), closings);
+		if (!eliminator.countSubexpressions()) {
+			return null;
+		}
+
+		final StringBuilder result = new StringBuilder(s.length());
+		eliminator.rewrite(0, s.length(), result);
+		return eliminator.substitutions > 0 ? result.toString() : null;
+	}
+
+	@Nullable
+	private static int[] findClosings(@Nonnull String s) {
+		final int[] result = new int[s.length()];
+		// stack of positions of not yet closed brackets
+		final int[] openings = new int[s.length()];
+		int depth = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char ch = s.charAt(i);
+			if (ch == '(') {
+				openings[depth++] = i;
+			} else if (ch == ')') {
+				if (depth == 0) {
+					return null;
+				}
+				result[openings[--depth]] = i;
+			}
+		}
+		return depth == 0 ? result : null;
+	}
+
+	/**
+	 * @return true if at least one subexpression occurs more than once
+	 */
+	private boolean countSubexpressions() {
+		boolean result = false;
+		for (int i = 0; i < expression.length(); i++) {
+			if (expression.charAt(i) == '(') {
+				if (isOperatorArguments(i)) {
+					// variables of the operator might be bound inside => skip everything
+					i = closings[i];
+				} else if (isEliminable(i)) {
+					final String content = expression.substring(i + 1, closings[i]);
+					contents[i] = content;
+
+					final Integer count = counts.get(content);
+					if (count == null) {
+						counts.put(content, 1);
+					} else {
+						counts.put(content, count + 1);
+						result = true;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean isOperatorArguments(int openBracket) {
+		for (String operatorName : operatorNames) {
+			if (expression.startsWith(operatorName, openBracket - operatorName.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Subexpression can be eliminated if it contains some operation and it is not a list of function's arguments
+	 */
+	private boolean isEliminable(int openBracket) {
+		final int closeBracket = closings[openBracket];
+
+		boolean operation = false;
+		for (int i = openBracket + 1; i < closeBracket; i++) {
+			final char ch = expression.charAt(i);
+			if (ch == ',') {
+				return false;
+			} else if (ch == '(') {
+				operation = true;
+				i = closings[i];
+			} else if (!Character.isLetterOrDigit(ch) && ch != '.') {
+				operation = true;
+			}
+		}
+		return operation;
+	}
+
+	private void rewrite(int start, int end, @Nonnull StringBuilder out) throws ParseException {
+		int i = start;
+		while (i < end) {
+			final char ch = expression.charAt(i);
+			if (ch == '(') {
+				final int closing = closings[i];
+				final String content = contents[i];
+				if (content != null && counts.get(content) > 1) {
+					String replacement = replacements.get(content);
+					if (replacement == null) {
+						replacement = newReplacement(i, closing);
+						replacements.put(content, replacement);
+					}
+					out.append(replacement);
+				} else if (content != null || !isOperatorArguments(i)) {
+					out.append('(');
+					rewrite(i + 1, closing, out);
+					out.append(')');
+				} else {
+					out.append(expression, i, closing + 1);
+				}
+				i = closing + 1;
+			} else {
+				out.append(ch);
+				i++;
+			}
+		}
+	}
+
+	@Nonnull
+	private String newReplacement(int openBracket, int closeBracket) throws ParseException {
+		final StringBuilder subexpression = new StringBuilder(closeBracket - openBracket + 1);
+		rewrite(openBracket + 1, closeBracket, subexpression);
+
+		final String value = toReal(mathEngine.evaluateGeneric(subexpression.toString()));
+		if (value != null) {
+			substitutions++;
+			return "(" + value + ")";
+		} else {
+			return "(" + subexpression + ")";
+		}
+	}
+
+	/**
+	 * @return string representation of the <var>value</var> which is parsed back to exactly the same value or null if
+	 * value is not a real number
+	 */
+	@Nullable
+	static String toReal(@Nonnull Generic value) {
+		if (value instanceof JsclInteger) {
+			return value.toString();
+		} else if (value instanceof NumericWrapper) {
+			final Numeric content = ((NumericWrapper) value).content();
+			if (content instanceof Real) {
+				final double d = ((Real) content).doubleValue();
+				if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+					// shortest decimal representation of the double, without exponent (always with dot => stays double)
+					final BigDecimal decimal = BigDecimal.valueOf(d);
+					final String result = decimal.toPlainString();
+					return decimal.scale() > 0 ? result : result + ".0";
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.NumeralBase;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.math.MathType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Evaluation of decimal arithmetic with {@link BigDecimal}: numbers, + - × / ^ (integer exponent), brackets and √.
+ * Literals, sums and products are exact until they exceed the precision of the {@link MathContext}, quotients and
+ * roots are rounded to it.
+ * <p/>
+ * Each operation is charged by the number of digits it processes (sum of digits for additions, product of digits for
+ * multiplications/divisions) and the result is charged by the length of its plain representation, evaluation is stopped
+ * when the total cost exceeds the budget. Evaluation is also stopped if any value is too big or too small to be
+ * written without exponent (see {@link #MAX_MAGNITUDE}).
+ */
+public final class DecimalEvaluator {
+
+	/**
+	 * Default budget: enough for thousands of operations on numbers of default precision
+	 */
+	public static final long MAX_COST_DEFAULT = 10000000L;
+
+	/**
+	 * Max number of digits between decimal point and the first/last significant digit of any value (and max absolute
+	 * value of the exponent): results are shown in plain notation
+	 */
+	static final int MAX_MAGNITUDE = 1000;
+
+	@Nonnull
+	private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+	@Nonnull
+	private final char[] chars;
+
+	private final int length;
+
+	private int position = 0;
+
+	@Nonnull
+	private final MathContext mc;
+
+	private final long maxCost;
+
+	private int operations = 0;
+
+	private long cost = 0;
+
+	private DecimalEvaluator(@Nonnull char[] chars, int length, @Nonnull MathContext mc, long maxCost) {
+		this.chars = chars;
+		this.length = length;
+		this.mc = mc;
+		this.maxCost = maxCost;
+	}
+
+	/**
+	 * @param expression expression to be evaluated
+	 * @param mc         precision (significant digits) and rounding of inexact operations
+	 * @param maxCost    budget of the evaluation (see {@link Result#getCost()})
+	 * @return result of the evaluation or null if <var>expression</var> is not supported or budget is exceeded
+	 * @throws ArithmeticException if division by zero occurs
+	 */
+	@Nullable
+	public static Result evaluate(@Nonnull String expression, @Nonnull MathContext mc, long maxCost) throws ArithmeticException {
+		if (mc.getPrecision() <= 0) {
+			throw new IllegalArgumentException("Precision must be positive");
+		}
+
+		final char[] chars = new char[expression.length()];
+		int length = 0;
+		for (int i = 0; i < expression.length(); i++) {
+			final char ch = expression.charAt(i);
+			if (!isGroupingSeparator(ch)) {
+				chars[length++] = ch;
+			}
+		}
+
+		if (length == 0) {
+			return null;
+		}
+
+		final DecimalEvaluator evaluator = new DecimalEvaluator(chars, length, mc, maxCost);
+		try {
+			final BigDecimal value = evaluator.evaluateSum();
+			if (evaluator.position != length) {
+				return null;
+			}
+			evaluator.spend(plainLength(value));
+			return new Result(value, evaluator.operations, evaluator.cost);
+		} catch (UnsupportedExpressionException e) {
+			return null;
+		}
+	}
+
+	private static boolean isGroupingSeparator(char ch) {
+		final List<String> tokens = MathType.grouping_separator.getTokens();
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.get(i).charAt(0) == ch) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           GRAMMAR
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * sum = ['-'] product (('+' | '-') product)*
+	 */
+	@Nonnull
+	private BigDecimal evaluateSum() throws UnsupportedExpressionException {
+		final boolean negate = skip('-');
+
+		BigDecimal result = evaluateProduct();
+		if (negate) {
+			result = result.negate();
+		}
+
+		while (position < length) {
+			final char operation = chars[position];
+			if (operation != '+' && operation != '-') {
+				break;
+			}
+			position++;
+
+			final BigDecimal operand = evaluateProduct();
+			charge(digits(result) + digits(operand));
+			result = checkMagnitude(operation == '+' ? result.add(operand, mc) : result.subtract(operand, mc));
+		}
+
+		return result;
+	}
+
+	/**
+	 * product = power (('*' | '×' | '∙' | '/') power)*
+	 */
+	@Nonnull
+	private BigDecimal evaluateProduct() throws UnsupportedExpressionException {
+		BigDecimal result = evaluatePower();
+
+		while (position < length) {
+			final char operation = chars[position];
+			final boolean division = operation == '/';
+			if (!division && operation != '*' && operation != '×' && operation != '∙') {
+				break;
+			}
+			position++;
+
+			final BigDecimal operand = evaluatePower();
+			if (division) {
+				charge((long) mc.getPrecision() * digits(operand));
+				result = checkMagnitude(result.divide(operand, mc));
+			} else {
+				charge((long) digits(result) * digits(operand));
+				result = checkMagnitude(result.multiply(operand, mc));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * power = primary ['^' ['-'] primary]
+	 */
+	@Nonnull
+	private BigDecimal evaluatePower() throws UnsupportedExpressionException {
+		final BigDecimal base = evaluatePrimary();
+		if (!skip('^')) {
+			return base;
+		}
+
+		final boolean negative = skip('-');
+		final BigDecimal exponent = evaluatePrimary();
+		if (position < length && chars[position] == '^') {
+			throw unsupported();
+		}
+
+		final int n;
+		try {
+			n = exponent.intValueExact();
+		} catch (ArithmeticException e) {
+			// fractional or too big exponent
+			throw unsupported();
+		}
+		if (n > MAX_MAGNITUDE) {
+			throw unsupported();
+		}
+
+		// ~ log2(n) squarings and multiplications of numbers with up to precision digits
+		final long digits = Math.min(mc.getPrecision(), (long) digits(base) * Math.max(n, 1));
+		charge(2L * (32 - Integer.numberOfLeadingZeros(n)) * digits * digits);
+		return checkMagnitude(base.pow(negative ? -n : n, mc));
+	}
+
+	/**
+	 * primary = number | '(' sum ')' | '√' '(' sum ')'
+	 */
+	@Nonnull
+	private BigDecimal evaluatePrimary() throws UnsupportedExpressionException {
+		if (position >= length) {
+			throw unsupported();
+		}
+
+		final char ch = chars[position];
+		if (isDigit(ch)) {
+			return evaluateNumber();
+		} else if (isOpenBracket(ch)) {
+			position++;
+			return evaluateGroup();
+		} else if (ch == '√' && position + 1 < length && isOpenBracket(chars[position + 1])) {
+			position += 2;
+			return sqrt(evaluateGroup());
+		} else {
+			throw unsupported();
+		}
+	}
+
+	@Nonnull
+	private BigDecimal evaluateGroup() throws UnsupportedExpressionException {
+		final BigDecimal result = evaluateSum();
+		if (position >= length || !isCloseBracket(chars[position])) {
+			throw unsupported();
+		}
+		position++;
+		return result;
+	}
+
+	@Nonnull
+	private BigDecimal evaluateNumber() throws UnsupportedExpressionException {
+		final int start = position;
+		while (position < length && isDigit(chars[position])) {
+			position++;
+		}
+
+		if (position < length && chars[position] == '.') {
+			position++;
+			if (position >= length || !isDigit(chars[position])) {
+				throw unsupported();
+			}
+			while (position < length && isDigit(chars[position])) {
+				position++;
+			}
+		}
+
+		charge(position - start);
+		return checkMagnitude(new BigDecimal(chars, start, position - start));
+	}
+
+	/**
+	 * Square root by Newton's method starting from double approximation (number of correct digits doubles on each
+	 * iteration)
+	 */
+	@Nonnull
+	private BigDecimal sqrt(@Nonnull BigDecimal value) throws UnsupportedExpressionException {
+		final int signum = value.signum();
+		if (signum < 0) {
+			// complex result
+			throw unsupported();
+		} else if (signum == 0) {
+			return BigDecimal.ZERO;
+		}
+
+		final double approximation = Math.sqrt(value.doubleValue());
+		if (Double.isNaN(approximation) || Double.isInfinite(approximation) || approximation == 0) {
+			throw unsupported();
+		}
+
+		final MathContext workingMc = new MathContext(mc.getPrecision() + 2, RoundingMode.HALF_EVEN);
+
+		BigDecimal result = new BigDecimal(approximation);
+		for (int correctDigits = 15; correctDigits < workingMc.getPrecision(); correctDigits *= 2) {
+			charge(2L * workingMc.getPrecision() * workingMc.getPrecision());
+			// x = (x + value / x) / 2
+			result = result.add(value.divide(result, workingMc)).divide(TWO, workingMc);
+		}
+
+		return result.round(mc);
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           COST
+	*
+	**********************************************************************
+	*/
+
+	private void charge(long operationCost) throws UnsupportedExpressionException {
+		operations++;
+		spend(operationCost);
+	}
+
+	private void spend(long cost) throws UnsupportedExpressionException {
+		this.cost += cost;
+		if (this.cost > maxCost) {
+			throw unsupported();
+		}
+	}
+
+	private static int digits(@Nonnull BigDecimal value) {
+		return value.precision();
+	}
+
+	/**
+	 * @return number of characters in {@link BigDecimal#toPlainString()} of the absolute value
+	 */
+	private static long plainLength(@Nonnull BigDecimal value) {
+		final int scale = value.scale();
+		if (scale <= 0) {
+			return (long) value.precision() - scale;
+		} else {
+			// integer part (at least 0), decimal point and fraction
+			return Math.max(value.precision() - scale, 1) + 1L + scale;
+		}
+	}
+
+	@Nonnull
+	private static BigDecimal checkMagnitude(@Nonnull BigDecimal value) throws UnsupportedExpressionException {
+		if (Math.abs(value.scale()) > 2 * MAX_MAGNITUDE) {
+			// too many digits after the decimal point or trailing zeros
+			throw unsupported();
+		}
+		if (value.signum() != 0 && Math.abs((long) value.precision() - value.scale()) > MAX_MAGNITUDE) {
+			// too big or too small
+			throw unsupported();
+		}
+		return value;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           UTILS
+	*
+	**********************************************************************
+	*/
+
+	private boolean skip(char ch) {
+		if (position < length && chars[position] == ch) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	private static boolean isOpenBracket(char ch) {
+		return ch == '(' || ch == '[' || ch == '{';
+	}
+
+	private static boolean isCloseBracket(char ch) {
+		return ch == ')' || ch == ']' || ch == '}';
+	}
+
+	@Nonnull
+	private static UnsupportedExpressionException unsupported() {
+		return UnsupportedExpressionException.instance;
+	}
+
+	/**
+	 * Thrown when expression can't be evaluated within the budget (single instance without stack trace)
+	 */
+	private static final class UnsupportedExpressionException extends Exception {
+
+		@Nonnull
+		private static final UnsupportedExpressionException instance = new UnsupportedExpressionException();
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           RESULT
+	*
+	**********************************************************************
+	*/
+
+	public static final class Result {
+
+		@Nonnull
+		private final BigDecimal value;
+
+		private final int operations;
+
+		private final long cost;
+
+		private Result(@Nonnull BigDecimal value, int operations, long cost) {
+			this.value = value;
+			this.operations = operations;
+			this.cost = cost;
+		}
+
+		@Nonnull
+		public BigDecimal getValue() {
+			return value;
+		}
+
+		/**
+		 * @return number of charged operations (including parsing of the numbers)
+		 */
+		public int getOperations() {
+			return operations;
+		}
+
+		/**
+		 * @return total cost of the evaluation in processed digits
+		 */
+		public long getCost() {
+			return cost;
+		}
+
+		/**
+		 * @return plain (without exponent and trailing zeros) representation of the value with grouped integer part
+		 */
+		@Nonnull
+		public String format(char groupingSeparator) {
+			final String number;
+			if (value.signum() == 0) {
+				number = "0";
+			} else {
+				number = value.abs().stripTrailingZeros().toPlainString();
+			}
+
+			final StringBuilder result = new StringBuilder(number.length() + number.length() / 3 + 1);
+			if (value.signum() < 0) {
+				result.append('-');
+			}
+			NumberBuilder.appendFormattedNumber(result, number, NumeralBase.dec, groupingSeparator);
+			return result.toString();
+		}
+	}
+}
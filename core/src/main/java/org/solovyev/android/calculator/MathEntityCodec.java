@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Binary representation of math entities, see {@link BinaryMathEntityDao}
+ */
+public interface MathEntityCodec<T extends MathPersistenceEntity> {
+
+	void write(@Nonnull DataOutput out, @Nonnull T entity) throws IOException;
+
+	@Nonnull
+	T read(@Nonnull DataInput in) throws IOException;
+
+	@Nonnull
+	MathEntityPersistenceContainer<T> newContainer(@Nonnull List<T> entities);
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.common.math.MathEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the registry content at some moment of time (identified by version).
+ * Snapshot should be taken once per operation (e.g. evaluation) and then used without any synchronization.
+ */
+public final class MathRegistrySnapshot<T extends MathEntity> {
+
+	private final long version;
+
+	@Nonnull
+	private final List<String> names;
+
+	@Nonnull
+	private final List<T> entities;
+
+	@Nonnull
+	private final List<T> systemEntities;
+
+	@Nonnull
+	private final Map<String, T> entitiesByName;
+
+	@Nonnull
+	private final Map<Integer, T> entitiesById;
+
+	private MathRegistrySnapshot(long version,
+								 @Nonnull List<String> names,
+								 @Nonnull List<T> entities,
+								 @Nonnull List<T> systemEntities) {
+		this.version = version;
+		this.names = Collections.unmodifiableList(new ArrayList<String>(names));
+		this.entities = Collections.unmodifiableList(new ArrayList<T>(entities));
+		this.systemEntities = Collections.unmodifiableList(new ArrayList<T>(systemEntities));
+
+		this.entitiesByName = new HashMap<String, T>(entities.size());
+		this.entitiesById = new HashMap<Integer, T>(entities.size());
+		for (T entity : entities) {
+			entitiesByName.put(entity.getName(), entity);
+			if (entity.isIdDefined()) {
+				entitiesById.put(entity.getId(), entity);
+			}
+		}
+	}
+
+	@Nonnull
+	static <T extends MathEntity> MathRegistrySnapshot<T> newInstance(long version,
+																	   @Nonnull List<String> names,
+																	   @Nonnull List<T> entities,
+																	   @Nonnull List<T> systemEntities) {
+		return new MathRegistrySnapshot<T>(version, names, entities, systemEntities);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return names of all entities in the same order as returned by underlying registry
+	 */
+	@Nonnull
+	public List<String> getNames() {
+		return names;
+	}
+
+	@Nonnull
+	public List<T> getEntities() {
+		return entities;
+	}
+
+	@Nonnull
+	public List<T> getSystemEntities() {
+		return systemEntities;
+	}
+
+	public boolean contains(@Nonnull String name) {
+		return entitiesByName.containsKey(name);
+	}
+
+	@Nullable
+	public T get(@Nonnull String name) {
+		return entitiesByName.get(name);
+	}
+
+	@Nullable
+	public T getById(@Nonnull Integer id) {
+		return entitiesById.get(id);
+	}
+}
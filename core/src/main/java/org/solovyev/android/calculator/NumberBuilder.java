@@ -22,11 +22,7 @@
 
 package org.solovyev.android.calculator;
 
-import jscl.MathContext;
-import jscl.MathEngine;
 import jscl.NumeralBase;
-import jscl.math.numeric.Real;
-import jscl.text.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -34,7 +30,6 @@ import javax.annotation.Nullable;
 import org.solovyev.android.calculator.math.MathType;
 import org.solovyev.common.MutableObject;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,6 +39,10 @@ import java.util.List;
  */
 public class NumberBuilder extends AbstractNumberBuilder {
 
+	// reused for all numbers
+	@Nonnull
+	private final StringBuilder trimmedNumber = new StringBuilder();
+
 	public NumberBuilder(@Nonnull CalculatorEngine engine) {
 		super(engine);
 	}
@@ -92,35 +91,16 @@ public class NumberBuilder extends AbstractNumberBuilder {
 	 */
 	@Nullable
 	public MathType.Result processNumber(@Nonnull StringBuilder text, @Nullable MutableObject<Integer> offset) {
-		// total number of trimmed chars
-		int trimmedChars = 0;
-
-		String number = null;
-
 		// toXml numeral base (as later it might be replaced)
 		final NumeralBase localNb = getNumeralBase();
 
 		if (numberBuilder != null) {
-			try {
-				number = numberBuilder.toString();
-
-				// let's get rid of unnecessary characters (grouping separators, + after E)
-				final List<String> tokens = new ArrayList<String>();
-				tokens.addAll(MathType.grouping_separator.getTokens());
-				// + after E can be omitted: 10+E = 10E (NOTE: - cannot be omitted )
-				tokens.add("+");
-				for (String groupingSeparator : tokens) {
-					final String trimmedNumber = number.replace(groupingSeparator, "");
-					trimmedChars += number.length() - trimmedNumber.length();
-					number = trimmedNumber;
-				}
-
-				// check if number still valid
-				toDouble(number, getNumeralBase(), engine.getMathEngine0());
-
-			} catch (NumberFormatException e) {
-				// number is not valid => stop
-				number = null;
+			// let's get rid of unnecessary characters (grouping separators, + after E)
+			trimNumber(numberBuilder, trimmedNumber);
+
+			// check if number still valid
+			if (isValid(trimmedNumber, localNb)) {
+				replaceNumberInText(text, numberBuilder.length(), trimmedNumber, localNb, offset);
 			}
 
 			numberBuilder = null;
@@ -129,89 +109,104 @@ public class NumberBuilder extends AbstractNumberBuilder {
 			nb = engine.getNumeralBase();
 		}
 
-		return replaceNumberInText(text, number, trimmedChars, offset, localNb, engine.getMathEngine0());
+		return null;
 	}
 
-	@Nullable
-	private static MathType.Result replaceNumberInText(@Nonnull StringBuilder text,
-													   @Nullable String number,
-													   int trimmedChars,
-													   @Nullable MutableObject<Integer> offset,
-													   @Nonnull NumeralBase nb,
-													   @Nonnull final MathEngine engine) {
-		MathType.Result result = null;
-
-		if (number != null) {
-			// in any case remove old number from text
-			final int oldNumberLength = number.length() + trimmedChars;
-			text.delete(text.length() - oldNumberLength, text.length());
-
-			final String newNumber = formatNumber(number, nb, engine);
-			if (offset != null) {
-				// register offset between old number and new number
-				offset.setObject(newNumber.length() - oldNumberLength);
+	private void replaceNumberInText(@Nonnull StringBuilder text,
+									 int oldNumberLength,
+									 @Nonnull CharSequence number,
+									 @Nonnull NumeralBase nb,
+									 @Nullable MutableObject<Integer> offset) {
+		// in any case remove old number from text
+		text.setLength(text.length() - oldNumberLength);
+
+		final int newNumberStart = text.length();
+		appendFormattedNumber(text, number, nb, engine.getSettings().getGroupingSeparator());
+		if (offset != null) {
+			// register offset between old number and new number
+			offset.setObject(text.length() - newNumberStart - oldNumberLength);
+		}
+	}
+
+	/**
+	 * Method copies number to <var>out</var> without grouping separators and without + after E (10E+2 = 10E2, NOTE: -
+	 * cannot be omitted)
+	 */
+	static void trimNumber(@Nonnull CharSequence number, @Nonnull StringBuilder out) {
+		final List<String> groupingSeparators = MathType.grouping_separator.getTokens();
+
+		out.setLength(0);
+		for (int i = 0; i < number.length(); i++) {
+			final char ch = number.charAt(i);
+			if (ch != '+' && !isGroupingSeparator(ch, groupingSeparators)) {
+				out.append(ch);
 			}
-			text.append(newNumber);
 		}
+	}
 
-		return result;
+	private static boolean isGroupingSeparator(char ch, @Nonnull List<String> groupingSeparators) {
+		for (int i = 0; i < groupingSeparators.size(); i++) {
+			if (groupingSeparators.get(i).charAt(0) == ch) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-	@Nonnull
-	private static String formatNumber(@Nonnull String number, @Nonnull NumeralBase nb, @Nonnull MathEngine engine) {
-		String result;
+	/**
+	 * Method checks if (trimmed) number can be parsed: number must start with integer part or with fractional part
+	 * (dot followed by digit) in specified numeral base.
+	 */
+	static boolean isValid(@Nonnull CharSequence number, @Nonnull NumeralBase nb) {
+		if (number.length() == 0) {
+			return false;
+		}
 
-		int indexOfDot = number.indexOf('.');
+		final List<Character> digits = nb.getAcceptableCharacters();
 
-		if (indexOfDot < 0) {
-			int indexOfE;
-			if (nb == NumeralBase.hex) {
-				indexOfE = -1;
-			} else {
-				indexOfE = number.indexOf(MathType.POWER_10);
-			}
-			if (indexOfE < 0) {
-				result = engine.addGroupingSeparators(nb, number);
-			} else {
-				final String partBeforeE;
-				if (indexOfE != 0) {
-					partBeforeE = engine.addGroupingSeparators(nb, number.substring(0, indexOfE));
-				} else {
-					partBeforeE = "";
-				}
-				result = partBeforeE + number.substring(indexOfE);
-			}
+		final char first = number.charAt(0);
+		if (digits.contains(first)) {
+			return true;
 		} else {
-			final String integerPart;
-			if (indexOfDot != 0) {
-				integerPart = engine.addGroupingSeparators(nb, number.substring(0, indexOfDot));
-			} else {
-				integerPart = "";
+			return first == '.' && number.length() > 1 && digits.contains(number.charAt(1));
+		}
+	}
+
+	/**
+	 * Method appends (trimmed) number to <var>out</var> inserting grouping separators into integer part of the number
+	 * (part before dot or, if there is no dot, before E)
+	 */
+	static void appendFormattedNumber(@Nonnull StringBuilder out,
+									  @Nonnull CharSequence number,
+									  @Nonnull NumeralBase nb,
+									  char groupingSeparator) {
+		final int length = number.length();
+
+		int integerPartEnd = indexOf(number, '.');
+		if (integerPartEnd < 0) {
+			integerPartEnd = nb == NumeralBase.hex ? -1 : indexOf(number, MathType.POWER_10);
+			if (integerPartEnd < 0) {
+				integerPartEnd = length;
 			}
-			result = integerPart + number.substring(indexOfDot);
 		}
 
-		return result;
+		final char separator = nb == NumeralBase.dec ? groupingSeparator : ' ';
+		final int groupingSize = nb.getGroupingSize();
+		for (int i = 0; i < integerPartEnd; i++) {
+			if (i > 0 && (integerPartEnd - i) % groupingSize == 0) {
+				out.append(separator);
+			}
+			out.append(number.charAt(i));
+		}
+		out.append(number, integerPartEnd, length);
 	}
 
-	@Nonnull
-	private static Double toDouble(@Nonnull String s, @Nonnull NumeralBase nb, @Nonnull final MathContext mc) throws NumberFormatException {
-		final NumeralBase defaultNb = mc.getNumeralBase();
-		try {
-			mc.setNumeralBase(nb);
-
-			try {
-				return JsclIntegerParser.parser.parse(Parser.Parameters.newInstance(s, new MutableInt(0), mc), null).content().doubleValue();
-			} catch (ParseException e) {
-				try {
-					return ((Real) DoubleParser.parser.parse(Parser.Parameters.newInstance(s, new MutableInt(0), mc), null).content()).doubleValue();
-				} catch (ParseException e1) {
-					throw new NumberFormatException();
-				}
+	private static int indexOf(@Nonnull CharSequence s, char ch) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == ch) {
+				return i;
 			}
-
-		} finally {
-			mc.setNumeralBase(defaultNb);
 		}
+		return -1;
 	}
 }
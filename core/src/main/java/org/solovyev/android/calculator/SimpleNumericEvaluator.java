@@ -0,0 +1,464 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.AngleUnit;
+import jscl.NumeralBase;
+import jscl.math.Expression;
+import jscl.math.Generic;
+import jscl.math.function.Function;
+import jscl.text.ParseException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.math.MathType;
+
+import java.util.List;
+
+/**
+ * Fast path of the numeric evaluation for plain arithmetic: expressions which contain only decimal numbers, + - × / ^,
+ * brackets and built-in real functions (sin, cos, ln, √ etc) are evaluated with primitive arithmetic without
+ * preprocessing and jscl parsing.
+ * <p/>
+ * Integer arithmetic is done exactly (as jscl does) while the result fits into double mantissa, result is wrapped into
+ * {@link Generic} and thus is formatted by jscl (precision, grouping, science notation are the same as in full path).
+ * If expression or some intermediate result (big integer, complex number, infinity) is not supported
+ * {@link #evaluate(String, CalculatorEngineSettings)} returns null and expression must be evaluated by jscl.
+ */
+final class SimpleNumericEvaluator {
+
+	private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+	private static final int MAX_INTEGER_DIGITS = 15;
+
+	@Nonnull
+	private static final UnsupportedExpressionException unsupported = new UnsupportedExpressionException();
+
+	@Nonnull
+	private final char[] chars;
+
+	private final int length;
+
+	private int position = 0;
+
+	private final boolean degrees;
+
+	// true if last evaluated (sub)expression is an integer stored in exactValue
+	private boolean exact;
+
+	private long exactValue;
+
+	// true if power operation has been evaluated
+	private boolean powered;
+
+	private SimpleNumericEvaluator(@Nonnull char[] chars, int length, boolean degrees) {
+		this.chars = chars;
+		this.length = length;
+		this.degrees = degrees;
+	}
+
+	/**
+	 * @return result of the numeric evaluation of <var>expression</var> or null if expression is not supported by the
+	 * fast path
+	 */
+	@Nullable
+	static Generic evaluate(@Nonnull String expression, @Nonnull CalculatorEngineSettings settings) throws ParseException {
+		if (settings.getNumeralBase() != NumeralBase.dec) {
+			return null;
+		}
+
+		if (!settings.isRoundResult()) {
+			// not rounded results might reveal the difference in the last bits
+			return null;
+		}
+
+		final AngleUnit angleUnits = settings.getAngleUnits();
+		if (angleUnits != AngleUnit.deg && angleUnits != AngleUnit.rad) {
+			return null;
+		}
+
+		// grouping separators are removed by the preprocessor wherever they are
+		final char[] chars = new char[expression.length()];
+		int length = 0;
+		for (int i = 0; i < expression.length(); i++) {
+			final char ch = expression.charAt(i);
+			if (!isGroupingSeparator(ch)) {
+				chars[length++] = ch;
+			}
+		}
+
+		if (length == 0) {
+			return null;
+		}
+
+		final SimpleNumericEvaluator evaluator = new SimpleNumericEvaluator(chars, length, angleUnits == AngleUnit.deg);
+		try {
+			final double result = evaluator.evaluateSum();
+			if (evaluator.position != length) {
+				return null;
+			}
+
+			if (evaluator.exact) {
+				// jscl formats integers differently from doubles => use jscl integer
+				return Expression.valueOf(Long.toString(evaluator.exactValue)).numeric();
+			} else if (result == 0) {
+				// sign of zero might differ
+				return null;
+			} else {
+				return Expression.valueOf(result).numeric();
+			}
+		} catch (UnsupportedExpressionException e) {
+			return null;
+		}
+	}
+
+	private static boolean isGroupingSeparator(char ch) {
+		final List<String> tokens = MathType.grouping_separator.getTokens();
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.get(i).charAt(0) == ch) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           GRAMMAR
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * sum = ['-'] product (('+' | '-') product)*
+	 */
+	private double evaluateSum() throws UnsupportedExpressionException {
+		final boolean negate = skip('-');
+
+		final boolean outerPowered = powered;
+		powered = false;
+		double result = evaluateProduct();
+		boolean resultExact = exact;
+		long resultExactValue = exactValue;
+
+		if (negate) {
+			if (powered) {
+				// -a^b: precedence of unary minus is left to jscl
+				throw unsupported;
+			}
+			result = -result;
+			resultExactValue = -resultExactValue;
+		}
+
+		while (position < length) {
+			final char operation = chars[position];
+			if (operation != '+' && operation != '-') {
+				break;
+			}
+			position++;
+
+			final double operand = evaluateProduct();
+			if (resultExact && exact) {
+				resultExactValue = checkExact(operation == '+' ? resultExactValue + exactValue : resultExactValue - exactValue);
+				result = resultExactValue;
+			} else {
+				result = check(operation == '+' ? result + operand : result - operand);
+				resultExact = false;
+			}
+		}
+
+		exact = resultExact;
+		exactValue = resultExactValue;
+		powered |= outerPowered;
+		return result;
+	}
+
+	/**
+	 * product = power (('*' | '×' | '∙' | '/') power)*
+	 */
+	private double evaluateProduct() throws UnsupportedExpressionException {
+		double result = evaluatePower();
+		boolean resultExact = exact;
+		long resultExactValue = exactValue;
+
+		while (position < length) {
+			final char operation = chars[position];
+			final boolean division = operation == '/';
+			if (!division && operation != '*' && operation != '×' && operation != '∙') {
+				break;
+			}
+			position++;
+
+			final double operand = evaluatePower();
+			if (resultExact && exact) {
+				if (division) {
+					if (exactValue == 0) {
+						throw unsupported;
+					}
+					if (resultExactValue % exactValue == 0) {
+						resultExactValue = resultExactValue / exactValue;
+						result = resultExactValue;
+					} else {
+						result = (double) resultExactValue / exactValue;
+						resultExact = false;
+					}
+				} else {
+					resultExactValue = multiplyExact(resultExactValue, exactValue);
+					result = resultExactValue;
+				}
+			} else {
+				result = check(division ? result / operand : result * operand);
+				resultExact = false;
+			}
+		}
+
+		exact = resultExact;
+		exactValue = resultExactValue;
+		return result;
+	}
+
+	/**
+	 * power = primary ['^' primary]
+	 */
+	private double evaluatePower() throws UnsupportedExpressionException {
+		final double base = evaluatePrimary();
+		if (!skip('^')) {
+			return base;
+		}
+
+		powered = true;
+
+		final boolean baseExact = exact;
+		final long baseExactValue = exactValue;
+
+		final double exponent = evaluatePrimary();
+		if (position < length && chars[position] == '^') {
+			// associativity of a^b^c is left to jscl
+			throw unsupported;
+		}
+
+		if (base == 0 && exponent <= 0) {
+			throw unsupported;
+		}
+
+		if (baseExact && exact && exactValue >= 0) {
+			long result = 1;
+			if (baseExactValue == 1 || baseExactValue == 0) {
+				result = exactValue == 0 ? 1 : baseExactValue;
+			} else if (baseExactValue == -1) {
+				result = exactValue % 2 == 0 ? 1 : -1;
+			} else {
+				for (long i = 0; i < exactValue; i++) {
+					result = multiplyExact(result, baseExactValue);
+				}
+			}
+			exactValue = result;
+			return result;
+		} else {
+			exact = false;
+			return check(Math.pow(base, exponent));
+		}
+	}
+
+	/**
+	 * primary = number | '(' sum ')' | function '(' sum ')'
+	 */
+	private double evaluatePrimary() throws UnsupportedExpressionException {
+		if (position >= length) {
+			throw unsupported;
+		}
+
+		final char ch = chars[position];
+		if (isDigit(ch)) {
+			return evaluateNumber();
+		} else if (isOpenBracket(ch)) {
+			position++;
+			return evaluateGroup();
+		} else {
+			final int start = position;
+			if (ch == '√') {
+				position++;
+			} else {
+				while (position < length && Character.isLetter(chars[position])) {
+					position++;
+				}
+			}
+
+			if (position == start || position >= length || !isOpenBracket(chars[position])) {
+				throw unsupported;
+			}
+
+			final String name = new String(chars, start, position - start);
+			position++;
+
+			final double argument = evaluateGroup();
+			exact = false;
+			return check(evaluateFunction(name, argument));
+		}
+	}
+
+	private double evaluateGroup() throws UnsupportedExpressionException {
+		final double result = evaluateSum();
+		if (position >= length || !isCloseBracket(chars[position])) {
+			throw unsupported;
+		}
+		position++;
+		return result;
+	}
+
+	private double evaluateNumber() throws UnsupportedExpressionException {
+		final int start = position;
+		while (position < length && isDigit(chars[position])) {
+			position++;
+		}
+
+		if (position < length && chars[position] == '.') {
+			position++;
+			if (position >= length || !isDigit(chars[position])) {
+				throw unsupported;
+			}
+			while (position < length && isDigit(chars[position])) {
+				position++;
+			}
+
+			exact = false;
+			return Double.parseDouble(new String(chars, start, position - start));
+		} else {
+			if (position - start > MAX_INTEGER_DIGITS) {
+				throw unsupported;
+			}
+
+			long result = 0;
+			for (int i = start; i < position; i++) {
+				result = result * 10 + (chars[i] - '0');
+			}
+			exact = true;
+			exactValue = result;
+			return result;
+		}
+	}
+
+	private double evaluateFunction(@Nonnull String name, double x) throws UnsupportedExpressionException {
+		final Function function = Locator.getInstance().getEngine().getFunctionsRegistry().get(name);
+		if (function == null || !function.isSystem()) {
+			throw unsupported;
+		}
+
+		if (name.equals("sin")) {
+			return Math.sin(toRadians(x));
+		} else if (name.equals("cos")) {
+			return Math.cos(toRadians(x));
+		} else if (name.equals("tan")) {
+			return Math.tan(toRadians(x));
+		} else if (name.equals("asin")) {
+			return fromRadians(Math.asin(x));
+		} else if (name.equals("acos")) {
+			return fromRadians(Math.acos(x));
+		} else if (name.equals("atan")) {
+			return fromRadians(Math.atan(x));
+		} else if (name.equals("ln")) {
+			return Math.log(x);
+		} else if (name.equals("lg")) {
+			return Math.log10(x);
+		} else if (name.equals("exp")) {
+			return Math.exp(x);
+		} else if (name.equals("√") || name.equals("sqrt")) {
+			return Math.sqrt(x);
+		} else {
+			throw unsupported;
+		}
+	}
+
+	private double toRadians(double angle) {
+		return degrees ? angle * Math.PI / 180 : angle;
+	}
+
+	private double fromRadians(double angle) {
+		return degrees ? angle * 180 / Math.PI : angle;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           UTILS
+	*
+	**********************************************************************
+	*/
+
+	private boolean skip(char ch) {
+		if (position < length && chars[position] == ch) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	private static boolean isOpenBracket(char ch) {
+		return ch == '(' || ch == '[' || ch == '{';
+	}
+
+	private static boolean isCloseBracket(char ch) {
+		return ch == ')' || ch == ']' || ch == '}';
+	}
+
+	private static double check(double value) throws UnsupportedExpressionException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			// complex numbers and infinities are handled by jscl
+			throw unsupported;
+		}
+		return value;
+	}
+
+	private static long checkExact(long value) throws UnsupportedExpressionException {
+		if (value > MAX_EXACT_INTEGER || value < -MAX_EXACT_INTEGER) {
+			// jscl prints big integers exactly
+			throw unsupported;
+		}
+		return value;
+	}
+
+	private static long multiplyExact(long a, long b) throws UnsupportedExpressionException {
+		if (a != 0 && Math.abs(b) > MAX_EXACT_INTEGER / Math.abs(a)) {
+			throw unsupported;
+		}
+		return checkExact(a * b);
+	}
+
+	/**
+	 * Thrown when expression can't be evaluated by the fast path (single instance without stack trace)
+	 */
+	private static final class UnsupportedExpressionException extends Exception {
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.common.msg.Message;
+import org.solovyev.common.msg.MessageRegistry;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Message registry which is set only once to the shared math engine and which delegates to the registry bound to
+ * the current thread. Messages produced outside of any evaluation are dropped.
+ */
+final class ThreadLocalMessageRegistry implements MessageRegistry {
+
+	@Nonnull
+	private final ThreadLocal<MessageRegistry> registries = new ThreadLocal<MessageRegistry>();
+
+	/**
+	 * @param registry registry to be used by the current thread
+	 * @return registry previously bound to the current thread (must be restored via {@link #bind(MessageRegistry)})
+	 */
+	@Nullable
+	MessageRegistry bind(@Nullable MessageRegistry registry) {
+		final MessageRegistry previous = registries.get();
+		if (registry == null) {
+			registries.remove();
+		} else {
+			registries.set(registry);
+		}
+		return previous;
+	}
+
+	@Override
+	public void addMessage(@Nonnull Message message) {
+		final MessageRegistry registry = registries.get();
+		if (registry != null) {
+			registry.addMessage(message);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Message getMessage() {
+		final MessageRegistry registry = registries.get();
+		if (registry != null) {
+			return registry.getMessage();
+		} else {
+			throw new NoSuchElementException();
+		}
+	}
+
+	@Override
+	public boolean hasMessage() {
+		final MessageRegistry registry = registries.get();
+		return registry != null && registry.hasMessage();
+	}
+}
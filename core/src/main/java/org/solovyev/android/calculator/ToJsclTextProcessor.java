@@ -24,6 +24,7 @@ package org.solovyev.android.calculator;
 
 import jscl.math.function.Function;
 import jscl.math.function.IConstant;
+import jscl.math.operator.Operator;
 
 import javax.annotation.Nonnull;
 
@@ -34,7 +35,9 @@ import org.solovyev.common.msg.MessageType;
 import org.solovyev.common.search.StartsWithFinder;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, String> {
 
@@ -56,15 +59,15 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 	@Override
 	@Nonnull
 	public PreparedExpression process(@Nonnull String s) throws CalculatorParseException {
-		return processWithDepth(s, 0, new ArrayList<IConstant>());
+		return processWithDepth(s, 0, new ArrayList<IConstant>(), Registries.newInstance(Locator.getInstance().getEngine()));
 	}
 
-	private static PreparedExpression processWithDepth(@Nonnull String s, int depth, @Nonnull List<IConstant> undefinedVars) throws CalculatorParseException {
-		return replaceVariables(processExpression(s).toString(), depth, undefinedVars);
+	private static PreparedExpression processWithDepth(@Nonnull String s, int depth, @Nonnull List<IConstant> undefinedVars, @Nonnull Registries registries) throws CalculatorParseException {
+		return replaceVariables(processExpression(s, registries).toString(), depth, undefinedVars, registries);
 	}
 
 	@Nonnull
-	private static StringBuilder processExpression(@Nonnull String s) throws CalculatorParseException {
+	private static StringBuilder processExpression(@Nonnull String s, @Nonnull Registries registries) throws CalculatorParseException {
 		final StartsWithFinder startsWithFinder = StartsWithFinder.newInstance(s);
 		final StringBuilder result = new StringBuilder();
 
@@ -95,7 +98,7 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 					(mathTypeBefore.getMathType() == MathType.function || mathTypeBefore.getMathType() == MathType.operator) &&
 					Collections.find(MathType.openGroupSymbols, startsWithFinder) != null) {
 				final String functionName = mathTypeBefore.getMatch();
-				final Function function = Locator.getInstance().getEngine().getFunctionsRegistry().get(functionName);
+				final Function function = registries.functions.get(functionName);
 				if (function == null || function.getMinParameters() > 0) {
 					throw new CalculatorParseException(i, s, new CalculatorMessage(CalculatorMessages.msg_005, MessageType.error, mathTypeBefore.getMatch()));
 				}
@@ -107,7 +110,7 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 	}
 
 	@Nonnull
-	private static PreparedExpression replaceVariables(@Nonnull final String s, int depth, @Nonnull List<IConstant> undefinedVars) throws CalculatorParseException {
+	private static PreparedExpression replaceVariables(@Nonnull final String s, int depth, @Nonnull List<IConstant> undefinedVars, @Nonnull Registries registries) throws CalculatorParseException {
 		if (depth >= MAX_DEPTH) {
 			throw new CalculatorParseException(s, new CalculatorMessage(CalculatorMessages.msg_006, MessageType.error));
 		} else {
@@ -121,13 +124,13 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 			startsWithFinder.setI(i);
 
 			int offset = 0;
-			String functionName = Collections.find(MathType.function.getTokens(), startsWithFinder);
+			String functionName = Collections.find(registries.functions.getNames(), startsWithFinder);
 			if (functionName == null) {
-				String operatorName = Collections.find(MathType.operator.getTokens(), startsWithFinder);
+				String operatorName = Collections.find(registries.operators.getNames(), startsWithFinder);
 				if (operatorName == null) {
-					String varName = Collections.find(Locator.getInstance().getEngine().getVarsRegistry().getNames(), startsWithFinder);
+					String varName = Collections.find(registries.vars.getNames(), startsWithFinder);
 					if (varName != null) {
-						final IConstant var = Locator.getInstance().getEngine().getVarsRegistry().get(varName);
+						final IConstant var = registries.vars.get(varName);
 						if (var != null) {
 							if (!var.isDefined()) {
 								undefinedVars.add(var);
@@ -142,7 +145,13 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 									// NOTE: append varName as JSCL engine will convert it to double if needed
 									result.append(varName);
 								} else {
-									result.append("(").append(processWithDepth(value, depth, undefinedVars)).append(")");
+									// value of the variable is processed once even if it is referenced many times
+									String processedValue = registries.processedValues.get(varName);
+									if (processedValue == null) {
+										processedValue = processWithDepth(value, depth, undefinedVars, registries).toString();
+										registries.processedValues.put(varName, processedValue);
+									}
+									result.append("(").append(processedValue).append(")");
 								}
 								offset = varName.length();
 							}
@@ -167,4 +176,37 @@ public class ToJsclTextProcessor implements TextProcessor<PreparedExpression, St
 
 		return new PreparedExpression(result.toString(), undefinedVars);
 	}
+
+	/**
+	 * Registries' snapshots taken once per processing => whole expression is processed against the same set of
+	 * functions, operators and variables even if they are modified concurrently. Processed values of the variables are
+	 * cached for the same processing.
+	 */
+	private static final class Registries {
+
+		@Nonnull
+		private final MathRegistrySnapshot<IConstant> vars;
+
+		@Nonnull
+		private final MathRegistrySnapshot<Function> functions;
+
+		@Nonnull
+		private final MathRegistrySnapshot<Operator> operators;
+
+		@Nonnull
+		private final Map<String, String> processedValues = new HashMap<String, String>();
+
+		private Registries(@Nonnull MathRegistrySnapshot<IConstant> vars,
+						   @Nonnull MathRegistrySnapshot<Function> functions,
+						   @Nonnull MathRegistrySnapshot<Operator> operators) {
+			this.vars = vars;
+			this.functions = functions;
+			this.operators = operators;
+		}
+
+		@Nonnull
+		private static Registries newInstance(@Nonnull CalculatorEngine engine) {
+			return new Registries(engine.getVarsRegistry().getSnapshot(), engine.getFunctionsRegistry().getSnapshot(), engine.getOperatorsRegistry().getSnapshot());
+		}
+	}
 }
@@ -46,6 +46,11 @@ public final class FunctionBuilderAdapter implements MathEntityBuilder<Function>
 		this.nestedBuilder = nestedBuilder;
 	}
 
+	@Nonnull
+	public AFunction.Builder getFunctionBuilder() {
+		return nestedBuilder;
+	}
+
 	@Nonnull
 	@Override
 	public MathEntityBuilder<Function> setName(@Nonnull String name) {
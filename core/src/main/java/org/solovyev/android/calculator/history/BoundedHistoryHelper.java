@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.common.history.HistoryAction;
+import org.solovyev.common.history.HistoryHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Undo/redo history stored in ring buffer: the oldest states are dropped when either number of states or estimated
+ * memory consumption exceeds the limit. Equal texts of the stored states share one string instance.
+ * Not thread-safe.
+ */
+final class BoundedHistoryHelper implements HistoryHelper<CalculatorHistoryState> {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	static final int DEFAULT_MAX_STATES = 1000;
+
+	static final long DEFAULT_MAX_BYTES = 256L * 1024L;
+
+	// approximate size of state object with its editor and display states (without texts)
+	private static final int STATE_SIZE = 160;
+
+	// approximate size of string object without characters
+	private static final int STRING_SIZE = 40;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final CalculatorHistoryState[] states;
+
+	private final long maxBytes;
+
+	// index of the oldest state in the array
+	private int head = 0;
+
+	private int size = 0;
+
+	// index of the current state relative to the head, -1 if history is empty
+	private int current = -1;
+
+	private long bytes = 0;
+
+	@Nonnull
+	private final Map<String, SharedText> texts = new HashMap<String, SharedText>();
+
+	BoundedHistoryHelper(int maxStates, long maxBytes) {
+		if (maxStates <= 0) {
+			throw new IllegalArgumentException("Max states must be positive: " + maxStates);
+		}
+		this.states = new CalculatorHistoryState[maxStates];
+		this.maxBytes = maxBytes;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           METHODS
+	*
+	**********************************************************************
+	*/
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public CalculatorHistoryState getLastHistoryState() {
+		return current >= 0 ? get(current) : null;
+	}
+
+	@Override
+	public boolean isUndoAvailable() {
+		return current > 0;
+	}
+
+	@Override
+	public CalculatorHistoryState undo(@Nullable CalculatorHistoryState currentState) {
+		if (!isUndoAvailable()) {
+			throw new IndexOutOfBoundsException();
+		}
+		current--;
+		return get(current);
+	}
+
+	@Override
+	public boolean isRedoAvailable() {
+		return current < size - 1;
+	}
+
+	@Override
+	public CalculatorHistoryState redo(@Nullable CalculatorHistoryState currentState) {
+		if (!isRedoAvailable()) {
+			throw new IndexOutOfBoundsException();
+		}
+		current++;
+		return get(current);
+	}
+
+	@Override
+	public boolean isActionAvailable(@Nonnull HistoryAction historyAction) {
+		switch (historyAction) {
+			case undo:
+				return isUndoAvailable();
+			case redo:
+				return isRedoAvailable();
+			default:
+				throw new UnsupportedOperationException(String.valueOf(historyAction));
+		}
+	}
+
+	@Override
+	public CalculatorHistoryState doAction(@Nonnull HistoryAction historyAction, @Nullable CalculatorHistoryState currentState) {
+		switch (historyAction) {
+			case undo:
+				return undo(currentState);
+			case redo:
+				return redo(currentState);
+			default:
+				throw new UnsupportedOperationException(String.valueOf(historyAction));
+		}
+	}
+
+	@Override
+	public void addState(@Nullable CalculatorHistoryState currentState) {
+		// new state replaces all the redo states
+		while (size > current + 1) {
+			removeLast();
+		}
+
+		if (size == states.length) {
+			removeFirst();
+		}
+
+		states[index(size)] = currentState;
+		size++;
+		current = size - 1;
+		bytes += STATE_SIZE;
+		if (currentState != null) {
+			shareText(currentState.getEditorState());
+			shareText(currentState.getDisplayState().getEditorState());
+		}
+
+		while (bytes > maxBytes && size > 1) {
+			removeFirst();
+		}
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> getStates() {
+		final List<CalculatorHistoryState> result = new ArrayList<CalculatorHistoryState>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(get(i));
+		}
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < states.length; i++) {
+			states[i] = null;
+		}
+		texts.clear();
+		head = 0;
+		size = 0;
+		current = -1;
+		bytes = 0;
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	private CalculatorHistoryState get(int i) {
+		return states[index(i)];
+	}
+
+	private int index(int i) {
+		return (head + i) % states.length;
+	}
+
+	private void removeFirst() {
+		release(states[head]);
+		states[head] = null;
+		head = index(1);
+		size--;
+		current--;
+	}
+
+	private void removeLast() {
+		final int index = index(size - 1);
+		release(states[index]);
+		states[index] = null;
+		size--;
+	}
+
+	private void release(@Nullable CalculatorHistoryState state) {
+		bytes -= STATE_SIZE;
+		if (state != null) {
+			releaseText(state.getEditorState().getText());
+			releaseText(state.getDisplayState().getEditorState().getText());
+		}
+	}
+
+	private void shareText(@Nonnull EditorHistoryState editorState) {
+		final String text = editorState.getText();
+		if (text != null) {
+			SharedText sharedText = texts.get(text);
+			if (sharedText == null) {
+				sharedText = new SharedText(text);
+				texts.put(text, sharedText);
+				bytes += STRING_SIZE + 2L * text.length();
+			} else if (sharedText.text != text) {
+				editorState.setText(sharedText.text);
+			}
+			sharedText.references++;
+		}
+	}
+
+	private void releaseText(@Nullable String text) {
+		if (text != null) {
+			final SharedText sharedText = texts.get(text);
+			if (sharedText != null) {
+				sharedText.references--;
+				if (sharedText.references <= 0) {
+					texts.remove(text);
+					bytes -= STRING_SIZE + 2L * text.length();
+				}
+			}
+		}
+	}
+
+	private static final class SharedText {
+
+		@Nonnull
+		private final String text;
+
+		private int references = 0;
+
+		private SharedText(@Nonnull String text) {
+			this.text = text;
+		}
+	}
+}
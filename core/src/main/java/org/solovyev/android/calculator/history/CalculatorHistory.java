@@ -1,63 +1,107 @@
-/*
- * Copyright 2013 serso aka se.solovyev
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *    http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- *
- * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
- * Contact details
- *
- * Email: se.solovyev@gmail.com
- * Site:  http://se.solovyev.org
- */
-
-package org.solovyev.android.calculator.history;
-
-import javax.annotation.Nonnull;
-
-import org.solovyev.android.calculator.CalculatorEventListener;
-import org.solovyev.common.history.HistoryHelper;
-
-import java.util.List;
-
-/**
- * User: Solovyev_S
- * Date: 20.09.12
- * Time: 16:11
- */
-public interface CalculatorHistory extends HistoryHelper<CalculatorHistoryState>, CalculatorEventListener {
-
-	void load();
-
-	void save();
-
-	void fromXml(@Nonnull String xml);
-
-	String toXml();
-
-	void clearSavedHistory();
-
-	void removeSavedHistory(@Nonnull CalculatorHistoryState historyState);
-
-	@Nonnull
-	List<CalculatorHistoryState> getSavedHistory();
-
-	@Nonnull
-	CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState);
-
-	@Nonnull
-	List<CalculatorHistoryState> getStates();
-
-	@Nonnull
-	List<CalculatorHistoryState> getStates(boolean includeIntermediateStates);
-
-}
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.CalculatorEventListener;
+import org.solovyev.common.history.HistoryHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * User: Solovyev_S
+ * Date: 20.09.12
+ * Time: 16:11
+ */
+public interface CalculatorHistory extends HistoryHelper<CalculatorHistoryState>, CalculatorEventListener {
+
+	void load();
+
+	void save();
+
+	void fromXml(@Nonnull String xml);
+
+	String toXml();
+
+	/**
+	 * Writes saved history one state at a time in XML format (same as {@link #toXml()})
+	 */
+	void exportSavedHistory(@Nonnull Writer writer) throws IOException;
+
+	/**
+	 * Reads states (in XML format, see {@link #exportSavedHistory(Writer)}) one at a time and adds them to saved history
+	 */
+	void importSavedHistory(@Nonnull Reader reader) throws IOException;
+
+	/**
+	 * Writes saved history one state at a time in compact binary format
+	 */
+	void exportSavedHistory(@Nonnull OutputStream out) throws IOException;
+
+	/**
+	 * Reads states (in binary format, see {@link #exportSavedHistory(OutputStream)}) one at a time and adds them to
+	 * saved history
+	 */
+	void importSavedHistory(@Nonnull InputStream in) throws IOException;
+
+	void clearSavedHistory();
+
+	void removeSavedHistory(@Nonnull CalculatorHistoryState historyState);
+
+	@Nonnull
+	List<CalculatorHistoryState> getSavedHistory();
+
+	@Nonnull
+	CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState);
+
+	/**
+	 * @param query words to be found in expression or result of saved state (last word might be incomplete)
+	 * @return saved states containing all the words of the query in order of saving
+	 */
+	@Nonnull
+	List<CalculatorHistoryState> searchSavedHistory(@Nonnull String query);
+
+	/**
+	 * @return saved states which results are numbers in the specified range (inclusive) in order of saving
+	 */
+	@Nonnull
+	List<CalculatorHistoryState> searchSavedHistory(double minResult, double maxResult);
+
+	/**
+	 * @return true if saved history contains state with the same time, editor and display as <var>historyState</var>
+	 */
+	boolean containsSavedState(@Nonnull CalculatorHistoryState historyState);
+
+	@Nonnull
+	List<CalculatorHistoryState> getStates();
+
+	@Nonnull
+	List<CalculatorHistoryState> getStates(boolean includeIntermediateStates);
+
+}
@@ -1,281 +1,515 @@
-/*
- * Copyright 2013 serso aka se.solovyev
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *    http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- *
- * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
- * Contact details
- *
- * Email: se.solovyev@gmail.com
- * Site:  http://se.solovyev.org
- */
-
-package org.solovyev.android.calculator.history;
-
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-
-import org.solovyev.android.calculator.*;
-import org.solovyev.common.history.HistoryAction;
-import org.solovyev.common.history.HistoryHelper;
-import org.solovyev.common.history.SimpleHistoryHelper;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static org.solovyev.android.calculator.CalculatorEventType.*;
-
-/**
- * User: Solovyev_S
- * Date: 20.09.12
- * Time: 16:12
- */
-public class CalculatorHistoryImpl implements CalculatorHistory {
-
-	private final AtomicInteger counter = new AtomicInteger(0);
-
-	@Nonnull
-	private final HistoryHelper<CalculatorHistoryState> history = SimpleHistoryHelper.newInstance();
-
-	@Nonnull
-	private final List<CalculatorHistoryState> savedHistory = new ArrayList<CalculatorHistoryState>();
-
-	@Nonnull
-	private final CalculatorEventHolder lastEventData = new CalculatorEventHolder(CalculatorUtils.createFirstEventDataId());
-
-	@Nullable
-	private volatile CalculatorEditorViewState lastEditorViewState;
-
-	public CalculatorHistoryImpl(@Nonnull Calculator calculator) {
-		calculator.addCalculatorEventListener(this);
-	}
-
-	@Override
-	public boolean isEmpty() {
-		synchronized (history) {
-			return this.history.isEmpty();
-		}
-	}
-
-	@Override
-	public CalculatorHistoryState getLastHistoryState() {
-		synchronized (history) {
-			return this.history.getLastHistoryState();
-		}
-	}
-
-	@Override
-	public boolean isUndoAvailable() {
-		synchronized (history) {
-			return history.isUndoAvailable();
-		}
-	}
-
-	@Override
-	public CalculatorHistoryState undo(@Nullable CalculatorHistoryState currentState) {
-		synchronized (history) {
-			return history.undo(currentState);
-		}
-	}
-
-	@Override
-	public boolean isRedoAvailable() {
-		return history.isRedoAvailable();
-	}
-
-	@Override
-	public CalculatorHistoryState redo(@Nullable CalculatorHistoryState currentState) {
-		synchronized (history) {
-			return history.redo(currentState);
-		}
-	}
-
-	@Override
-	public boolean isActionAvailable(@Nonnull HistoryAction historyAction) {
-		synchronized (history) {
-			return history.isActionAvailable(historyAction);
-		}
-	}
-
-	@Override
-	public CalculatorHistoryState doAction(@Nonnull HistoryAction historyAction, @Nullable CalculatorHistoryState currentState) {
-		synchronized (history) {
-			return history.doAction(historyAction, currentState);
-		}
-	}
-
-	@Override
-	public void addState(@Nullable CalculatorHistoryState currentState) {
-		synchronized (history) {
-			history.addState(currentState);
-			Locator.getInstance().getCalculator().fireCalculatorEvent(CalculatorEventType.history_state_added, currentState);
-		}
-	}
-
-	@Nonnull
-	@Override
-	public List<CalculatorHistoryState> getStates() {
-		synchronized (history) {
-			return history.getStates();
-		}
-	}
-
-	@Nonnull
-	@Override
-	public List<CalculatorHistoryState> getStates(boolean includeIntermediateStates) {
-		synchronized (history) {
-			if (includeIntermediateStates) {
-				return getStates();
-			} else {
-				final List<CalculatorHistoryState> states = getStates();
-
-				final List<CalculatorHistoryState> result = new LinkedList<CalculatorHistoryState>();
-
-				CalculatorHistoryState laterState = null;
-				for (CalculatorHistoryState state : org.solovyev.common.collections.Collections.reversed(states)) {
-					if (laterState != null) {
-						final String laterEditorText = laterState.getEditorState().getText();
-						final String editorText = state.getEditorState().getText();
-						if (laterEditorText != null && editorText != null && isIntermediate(laterEditorText, editorText)) {
-							// intermediate result => skip from add
-						} else {
-							result.add(0, state);
-						}
-					} else {
-						result.add(0, state);
-					}
-
-					laterState = state;
-				}
-
-				return result;
-			}
-		}
-	}
-
-	private boolean isIntermediate(@Nonnull String laterEditorText,
-								   @Nonnull String editorText) {
-		if (Math.abs(laterEditorText.length() - editorText.length()) <= 1) {
-			if (laterEditorText.length() > editorText.length()) {
-				return laterEditorText.startsWith(editorText);
-			} else {
-				return editorText.startsWith(laterEditorText);
-			}
-		}
-
-		return false;
-	}
-
-	@Override
-	public void clear() {
-		synchronized (history) {
-			this.history.clear();
-		}
-	}
-
-	@Override
-	@Nonnull
-	public List<CalculatorHistoryState> getSavedHistory() {
-		return Collections.unmodifiableList(savedHistory);
-	}
-
-	@Override
-	@Nonnull
-	public CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState) {
-		if (historyState.isSaved()) {
-			return historyState;
-		} else {
-			final CalculatorHistoryState savedState = historyState.clone();
-
-			savedState.setId(counter.incrementAndGet());
-			savedState.setSaved(true);
-
-			savedHistory.add(savedState);
-
-			return savedState;
-		}
-	}
-
-	@Override
-	public void load() {
-		// todo serso: create saved/loader class
-	}
-
-	@Override
-	public void save() {
-		// todo serso: create saved/loader class
-	}
-
-	@Override
-	public void fromXml(@Nonnull String xml) {
-		clearSavedHistory();
-
-		HistoryUtils.fromXml(xml, this.savedHistory);
-		for (CalculatorHistoryState historyState : savedHistory) {
-			historyState.setSaved(true);
-			historyState.setId(counter.incrementAndGet());
-		}
-	}
-
-	@Override
-	public String toXml() {
-		return HistoryUtils.toXml(this.savedHistory);
-	}
-
-	@Override
-	public void clearSavedHistory() {
-		this.savedHistory.clear();
-	}
-
-	@Override
-	public void removeSavedHistory(@Nonnull CalculatorHistoryState historyState) {
-		this.savedHistory.remove(historyState);
-	}
-
-	@Override
-	public void onCalculatorEvent(@Nonnull CalculatorEventData calculatorEventData,
-								  @Nonnull CalculatorEventType calculatorEventType,
-								  @Nullable Object data) {
-		if (calculatorEventType.isOfType(editor_state_changed, display_state_changed, manual_calculation_requested)) {
-
-			final CalculatorEventHolder.Result result = lastEventData.apply(calculatorEventData);
-
-			if (result.isNewAfter() && result.isNewSameOrAfterSequence()) {
-				switch (calculatorEventType) {
-					case manual_calculation_requested:
-						lastEditorViewState = (CalculatorEditorViewState) data;
-						break;
-					case editor_state_changed:
-						final CalculatorEditorChangeEventData editorChangeData = (CalculatorEditorChangeEventData) data;
-						lastEditorViewState = editorChangeData.getNewValue();
-						break;
-					case display_state_changed:
-						if (result.isSameSequence()) {
-							if (lastEditorViewState != null) {
-								final CalculatorEditorViewState editorViewState = lastEditorViewState;
-								final CalculatorDisplayChangeEventData displayChangeData = (CalculatorDisplayChangeEventData) data;
-								final CalculatorDisplayViewState displayViewState = displayChangeData.getNewValue();
-								addState(CalculatorHistoryState.newInstance(editorViewState, displayViewState));
-							}
-						} else {
-							lastEditorViewState = null;
-						}
-						break;
-				}
-			}
-		}
-	}
-}
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.*;
+import org.solovyev.common.history.HistoryAction;
+import org.solovyev.common.history.HistoryHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.solovyev.android.calculator.CalculatorEventType.*;
+
+/**
+ * User: Solovyev_S
+ * Date: 20.09.12
+ * Time: 16:12
+ */
+public class CalculatorHistoryImpl implements CalculatorHistory {
+
+	private final AtomicInteger counter = new AtomicInteger(0);
+
+	@Nonnull
+	private final HistoryHelper<CalculatorHistoryState> history;
+
+	@Nonnull
+	private final SavedHistory savedHistory = new SavedHistory();
+
+	@Nonnull
+	private final CalculatorEventHolder lastEventData = new CalculatorEventHolder(CalculatorUtils.createFirstEventDataId());
+
+	@Nullable
+	private volatile CalculatorEditorViewState lastEditorViewState;
+
+	public CalculatorHistoryImpl(@Nonnull Calculator calculator) {
+		this(calculator, BoundedHistoryHelper.DEFAULT_MAX_STATES, BoundedHistoryHelper.DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxStates max number of undo/redo states
+	 * @param maxBytes  approximate max memory consumed by undo/redo states, the oldest states are dropped if exceeded
+	 */
+	public CalculatorHistoryImpl(@Nonnull Calculator calculator, int maxStates, long maxBytes) {
+		this.history = new BoundedHistoryHelper(maxStates, maxBytes);
+		calculator.addCalculatorEventListener(this);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		synchronized (history) {
+			return this.history.isEmpty();
+		}
+	}
+
+	@Override
+	public CalculatorHistoryState getLastHistoryState() {
+		synchronized (history) {
+			return this.history.getLastHistoryState();
+		}
+	}
+
+	@Override
+	public boolean isUndoAvailable() {
+		synchronized (history) {
+			return history.isUndoAvailable();
+		}
+	}
+
+	@Override
+	public CalculatorHistoryState undo(@Nullable CalculatorHistoryState currentState) {
+		synchronized (history) {
+			return history.undo(currentState);
+		}
+	}
+
+	@Override
+	public boolean isRedoAvailable() {
+		synchronized (history) {
+			return history.isRedoAvailable();
+		}
+	}
+
+	@Override
+	public CalculatorHistoryState redo(@Nullable CalculatorHistoryState currentState) {
+		synchronized (history) {
+			return history.redo(currentState);
+		}
+	}
+
+	@Override
+	public boolean isActionAvailable(@Nonnull HistoryAction historyAction) {
+		synchronized (history) {
+			return history.isActionAvailable(historyAction);
+		}
+	}
+
+	@Override
+	public CalculatorHistoryState doAction(@Nonnull HistoryAction historyAction, @Nullable CalculatorHistoryState currentState) {
+		synchronized (history) {
+			return history.doAction(historyAction, currentState);
+		}
+	}
+
+	@Override
+	public void addState(@Nullable CalculatorHistoryState currentState) {
+		synchronized (history) {
+			history.addState(currentState);
+			Locator.getInstance().getCalculator().fireCalculatorEvent(CalculatorEventType.history_state_added, currentState);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> getStates() {
+		synchronized (history) {
+			return history.getStates();
+		}
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> getStates(boolean includeIntermediateStates) {
+		synchronized (history) {
+			if (includeIntermediateStates) {
+				return getStates();
+			} else {
+				final List<CalculatorHistoryState> states = getStates();
+
+				final List<CalculatorHistoryState> result = new ArrayList<CalculatorHistoryState>(states.size());
+
+				for (int i = 0; i < states.size(); i++) {
+					final CalculatorHistoryState state = states.get(i);
+					if (i < states.size() - 1) {
+						final String laterEditorText = states.get(i + 1).getEditorState().getText();
+						final String editorText = state.getEditorState().getText();
+						if (laterEditorText != null && editorText != null && isIntermediate(laterEditorText, editorText)) {
+							// intermediate result => skip from add
+							continue;
+						}
+					}
+
+					result.add(state);
+				}
+
+				return result;
+			}
+		}
+	}
+
+	private boolean isIntermediate(@Nonnull String laterEditorText,
+								   @Nonnull String editorText) {
+		if (Math.abs(laterEditorText.length() - editorText.length()) <= 1) {
+			if (laterEditorText.length() > editorText.length()) {
+				return laterEditorText.startsWith(editorText);
+			} else {
+				return editorText.startsWith(laterEditorText);
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (history) {
+			this.history.clear();
+		}
+	}
+
+	@Override
+	@Nonnull
+	public List<CalculatorHistoryState> getSavedHistory() {
+		return Collections.unmodifiableList(savedHistory);
+	}
+
+	@Override
+	@Nonnull
+	public CalculatorHistoryState addSavedState(@Nonnull CalculatorHistoryState historyState) {
+		if (historyState.isSaved()) {
+			return historyState;
+		} else {
+			final CalculatorHistoryState savedState = historyState.clone();
+
+			savedState.setId(counter.incrementAndGet());
+			savedState.setSaved(true);
+
+			savedHistory.add(savedState);
+
+			return savedState;
+		}
+	}
+
+	@Override
+	public void load() {
+		// todo serso: create saved/loader class
+	}
+
+	@Override
+	public void save() {
+		// todo serso: create saved/loader class
+	}
+
+	@Override
+	public void fromXml(@Nonnull String xml) {
+		final List<CalculatorHistoryState> historyStates = new ArrayList<CalculatorHistoryState>();
+		HistoryUtils.fromXml(xml, historyStates);
+		loadSavedHistory(historyStates);
+	}
+
+	/**
+	 * Method replaces saved history with specified states (e.g. loaded from some storage).
+	 * Elements of the list are requested only when needed => list might load them lazily.
+	 */
+	public void loadSavedHistory(@Nonnull List<CalculatorHistoryState> historyStates) {
+		this.savedHistory.load(historyStates);
+	}
+
+	@Override
+	public String toXml() {
+		return HistoryUtils.toXml(this.savedHistory);
+	}
+
+	@Override
+	public void exportSavedHistory(@Nonnull Writer writer) throws IOException {
+		synchronized (savedHistory) {
+			HistoryStreams.writeXml(this.savedHistory, writer);
+		}
+	}
+
+	@Override
+	public void importSavedHistory(@Nonnull Reader reader) throws IOException {
+		importSavedHistory(HistoryStreams.newXmlReader(reader));
+	}
+
+	@Override
+	public void exportSavedHistory(@Nonnull OutputStream out) throws IOException {
+		synchronized (savedHistory) {
+			HistoryStreams.writeBinary(this.savedHistory, out);
+		}
+	}
+
+	@Override
+	public void importSavedHistory(@Nonnull InputStream in) throws IOException {
+		importSavedHistory(HistoryStreams.newBinaryReader(in));
+	}
+
+	private void importSavedHistory(@Nonnull HistoryStreams.StateReader reader) throws IOException {
+		for (CalculatorHistoryState state = reader.read(); state != null; state = reader.read()) {
+			addSavedState(state);
+		}
+	}
+
+	@Override
+	public void clearSavedHistory() {
+		this.savedHistory.clear();
+	}
+
+	@Override
+	public void removeSavedHistory(@Nonnull CalculatorHistoryState historyState) {
+		this.savedHistory.remove(historyState);
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> searchSavedHistory(@Nonnull String query) {
+		return this.savedHistory.search(query);
+	}
+
+	@Nonnull
+	@Override
+	public List<CalculatorHistoryState> searchSavedHistory(double minResult, double maxResult) {
+		return this.savedHistory.search(minResult, maxResult);
+	}
+
+	@Override
+	public boolean containsSavedState(@Nonnull CalculatorHistoryState historyState) {
+		return this.savedHistory.containsSame(historyState);
+	}
+
+	/**
+	 * Saved history which might be backed by lazily loaded list: states from such list are prepared on first access
+	 */
+	private final class SavedHistory extends AbstractList<CalculatorHistoryState> implements RandomAccess {
+
+		@Nonnull
+		private List<CalculatorHistoryState> loadedStates = Collections.emptyList();
+
+		// null element => state must be taken from loaded states
+		@Nonnull
+		private final List<CalculatorHistoryState> states = new ArrayList<CalculatorHistoryState>();
+
+		// index in loaded states for each element of states
+		@Nonnull
+		private final List<Integer> loadedIndices = new ArrayList<Integer>();
+
+		@Nonnull
+		private final SavedHistoryIndex index = new SavedHistoryIndex();
+
+		// index is built on the first search (not to load all the states on start) and then is updated incrementally
+		private boolean indexed = false;
+
+		// number of states for each time, times of loaded states are known without loading them
+		@Nonnull
+		private final Map<Long, Integer> timeCounts = new HashMap<Long, Integer>();
+
+		@Nonnull
+		private synchronized List<CalculatorHistoryState> search(@Nonnull String query) {
+			prepareIndex();
+			return index.find(query);
+		}
+
+		@Nonnull
+		private synchronized List<CalculatorHistoryState> search(double min, double max) {
+			prepareIndex();
+			return index.find(min, max);
+		}
+
+		/**
+		 * Only states with the same time are loaded and compared
+		 */
+		private synchronized boolean containsSame(@Nonnull CalculatorHistoryState state) {
+			final long time = state.getTime();
+			if (!timeCounts.containsKey(time)) {
+				return false;
+			}
+
+			for (int i = 0; i < states.size(); i++) {
+				if (getTime(i) == time) {
+					final CalculatorHistoryState savedState = get(i);
+					if (savedState.getDisplayState().equals(state.getDisplayState()) && savedState.getEditorState().equals(state.getEditorState())) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		private long getTime(int index) {
+			final CalculatorHistoryState state = states.get(index);
+			if (state != null) {
+				return state.getTime();
+			} else if (loadedStates instanceof TimedStates) {
+				return ((TimedStates) loadedStates).getTime(loadedIndices.get(index));
+			} else {
+				return loadedStates.get(loadedIndices.get(index)).getTime();
+			}
+		}
+
+		private void addTime(long time) {
+			final Integer count = timeCounts.get(time);
+			timeCounts.put(time, count == null ? 1 : count + 1);
+		}
+
+		private void removeTime(long time) {
+			final Integer count = timeCounts.get(time);
+			if (count != null) {
+				if (count > 1) {
+					timeCounts.put(time, count - 1);
+				} else {
+					timeCounts.remove(time);
+				}
+			}
+		}
+
+		private void prepareIndex() {
+			if (!indexed) {
+				for (int i = 0; i < size(); i++) {
+					index.add(get(i));
+				}
+				indexed = true;
+			}
+		}
+
+		private synchronized void load(@Nonnull List<CalculatorHistoryState> loadedStates) {
+			clear();
+
+			this.loadedStates = loadedStates;
+			for (int i = 0; i < loadedStates.size(); i++) {
+				states.add(null);
+				loadedIndices.add(i);
+				addTime(getTime(i));
+			}
+		}
+
+		@Override
+		public synchronized CalculatorHistoryState get(int index) {
+			CalculatorHistoryState state = states.get(index);
+			if (state == null) {
+				state = loadedStates.get(loadedIndices.get(index));
+				state.setSaved(true);
+				state.setId(counter.incrementAndGet());
+				states.set(index, state);
+			}
+			return state;
+		}
+
+		@Override
+		public synchronized int size() {
+			return states.size();
+		}
+
+		@Override
+		public synchronized void add(int index, CalculatorHistoryState state) {
+			states.add(index, state);
+			loadedIndices.add(index, -1);
+			addTime(state.getTime());
+			if (indexed) {
+				this.index.add(state);
+			}
+		}
+
+		@Override
+		public synchronized CalculatorHistoryState remove(int index) {
+			final CalculatorHistoryState result = get(index);
+			states.remove(index);
+			loadedIndices.remove(index);
+			removeTime(result.getTime());
+			if (indexed) {
+				this.index.remove(result);
+			}
+			return result;
+		}
+
+		@Override
+		public synchronized boolean remove(Object o) {
+			// not loaded states cannot be removed as nobody has seen them => no need to load them
+			for (int i = 0; i < states.size(); i++) {
+				final CalculatorHistoryState state = states.get(i);
+				if (state != null && state.equals(o)) {
+					remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public synchronized void clear() {
+			states.clear();
+			loadedIndices.clear();
+			loadedStates = Collections.emptyList();
+			timeCounts.clear();
+			index.clear();
+			indexed = false;
+		}
+	}
+
+	@Override
+	public void onCalculatorEvent(@Nonnull CalculatorEventData calculatorEventData,
+								  @Nonnull CalculatorEventType calculatorEventType,
+								  @Nullable Object data) {
+		if (calculatorEventType.isOfType(editor_state_changed, display_state_changed, manual_calculation_requested)) {
+
+			final CalculatorEventHolder.Result result = lastEventData.apply(calculatorEventData);
+
+			if (result.isNewAfter() && result.isNewSameOrAfterSequence()) {
+				switch (calculatorEventType) {
+					case manual_calculation_requested:
+						lastEditorViewState = (CalculatorEditorViewState) data;
+						break;
+					case editor_state_changed:
+						final CalculatorEditorChangeEventData editorChangeData = (CalculatorEditorChangeEventData) data;
+						lastEditorViewState = editorChangeData.getNewValue();
+						break;
+					case display_state_changed:
+						if (result.isSameSequence()) {
+							if (lastEditorViewState != null) {
+								final CalculatorEditorViewState editorViewState = lastEditorViewState;
+								final CalculatorDisplayChangeEventData displayChangeData = (CalculatorDisplayChangeEventData) data;
+								final CalculatorDisplayViewState displayViewState = displayChangeData.getNewValue();
+								addState(CalculatorHistoryState.newInstance(editorViewState, displayViewState));
+							}
+						} else {
+							lastEditorViewState = null;
+						}
+						break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,968 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.BinaryStrings;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Append-only binary storage of saved history.
+ *
+ * File consists of header (magic + version) and records, each record is:
+ * <pre>
+ * int length (number of bytes after length field)
+ * byte type
+ * int id
+ * body
+ * </pre>
+ * Records are:
+ * <pre>
+ * payload:   id of the payload, editor state + display editor state + operation
+ * reference: id of the state, long time, int id of the payload, String comment
+ * remove:    id of the state, no body
+ * add:       id of the state, state encoded by {@link HistoryStateCodec} (written only by version 1)
+ * </pre>
+ * The same expressions are usually saved many times: equal payloads are written once and states only reference them
+ * (see also {@link HistoryPayloads}). States decoded from the same payload share its editor and display states.
+ *
+ * Adding record with existing id replaces the state but keeps its position.
+ * Saving one state costs one record (plus one record for a new payload), file is compacted when obsolete records
+ * outnumber live ones. Payload is obsolete when no live state references it.
+ * States are decoded lazily page by page (see {@link #load()}), only their times are read on load.
+ */
+public final class CalculatorHistoryLog {
+
+	/*
+	**********************************************************************
+	*
+	*                           CONSTANTS
+	*
+	**********************************************************************
+	*/
+
+	private static final int MAGIC = 0x43484C47;
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_LENGTH = 8;
+
+	// type + id
+	private static final int RECORD_HEADER_LENGTH = 5;
+
+	// body of add and reference records starts with time of the state
+	private static final int TIME_LENGTH = 8;
+
+	private static final byte TYPE_ADD = 1;
+
+	private static final byte TYPE_REMOVE = 2;
+
+	private static final byte TYPE_PAYLOAD = 3;
+
+	private static final byte TYPE_REFERENCE = 4;
+
+	private static final int COMPACTION_MIN_OBSOLETE_RECORDS = 64;
+
+	private static final int PAGE_SIZE = 50;
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final File file;
+
+	// live records in order of addition (states of some of them might be not decoded yet)
+	@Nonnull
+	private final Map<Integer, Record> records = new LinkedHashMap<Integer, Record>();
+
+	@Nonnull
+	private final Map<CalculatorHistoryState, Record> recordsByState = new IdentityHashMap<CalculatorHistoryState, Record>();
+
+	// payloads referenced by live records
+	@Nonnull
+	private final Map<Content, Payload> payloads = new HashMap<Content, Payload>();
+
+	private int nextId = 0;
+
+	private int nextPayloadId = 0;
+
+	// number of records (both live and obsolete) in the file
+	private int fileRecords = 0;
+
+	// -1 if file has not been loaded yet
+	private long fileLength = -1;
+
+	private int fileVersion = VERSION;
+
+	public CalculatorHistoryLog(@Nonnull File file) {
+		this.file = file;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           METHODS
+	*
+	**********************************************************************
+	*/
+
+	public boolean exists() {
+		return file.exists();
+	}
+
+	/**
+	 * Method reads all records from the file. Incomplete record at the end of the file (e.g. after crash) is discarded.
+	 * Only headers of the records, times of the states and payloads are read: states of the last page are decoded
+	 * immediately, all other states are decoded page by page on first access.
+	 *
+	 * File which cannot be read (e.g. corrupted header) is moved aside to {@link #getUnsupportedFile()} and new empty
+	 * log is started instead.
+	 *
+	 * @return saved states in order of their addition
+	 * @throws IOException if file cannot be moved aside
+	 */
+	@Nonnull
+	public synchronized List<CalculatorHistoryState> load() throws IOException {
+		clearRecords();
+
+		if (!file.exists()) {
+			fileLength = 0;
+			return new ArrayList<CalculatorHistoryState>();
+		}
+
+		try {
+			return read();
+		} catch (IOException e) {
+			onUnsupportedFile();
+			return new ArrayList<CalculatorHistoryState>();
+		} catch (RuntimeException e) {
+			// e.g. state of the last page cannot be decoded
+			onUnsupportedFile();
+			return new ArrayList<CalculatorHistoryState>();
+		}
+	}
+
+	@Nonnull
+	private List<CalculatorHistoryState> read() throws IOException {
+		final long length = file.length();
+		long position = 0;
+
+		// all payloads of the file, only referenced ones are kept after reading
+		final Map<Integer, Payload> filePayloads = new HashMap<Integer, Payload>();
+
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (length < HEADER_LENGTH || in.readInt() != MAGIC) {
+				throw new IOException("Unsupported history file: " + file);
+			}
+			fileVersion = in.readInt();
+			if (fileVersion != 1 && fileVersion != VERSION) {
+				throw new IOException("Unsupported history file: " + file);
+			}
+			position = HEADER_LENGTH;
+
+			while (position < length) {
+				final int recordLength;
+				final byte type;
+				final int id;
+				long time = 0;
+				Payload payload = null;
+				try {
+					recordLength = in.readInt();
+					if (recordLength < RECORD_HEADER_LENGTH || position + 4 + recordLength > length) {
+						// incomplete record
+						break;
+					}
+					type = in.readByte();
+					id = in.readInt();
+
+					final int bodyLength = recordLength - RECORD_HEADER_LENGTH;
+					switch (type) {
+						case TYPE_ADD:
+							checkBodyLength(bodyLength, TIME_LENGTH);
+							time = in.readLong();
+							skipFully(in, bodyLength - TIME_LENGTH);
+							break;
+						case TYPE_REFERENCE:
+							checkBodyLength(bodyLength, TIME_LENGTH + 4);
+							time = in.readLong();
+							payload = filePayloads.get(in.readInt());
+							if (payload == null) {
+								throw new IOException("Unknown history payload");
+							}
+							skipFully(in, bodyLength - TIME_LENGTH - 4);
+							break;
+						case TYPE_PAYLOAD:
+							final byte[] content = new byte[bodyLength];
+							in.readFully(content);
+							filePayloads.put(id, new Payload(id, new Content(content)));
+							break;
+						default:
+							skipFully(in, bodyLength);
+							break;
+					}
+				} catch (EOFException e) {
+					break;
+				}
+
+				if (!applyRecord(type, id, position, 4 + recordLength, time, payload)) {
+					break;
+				}
+
+				position += 4 + recordLength;
+			}
+		} finally {
+			in.close();
+		}
+
+		if (position < length) {
+			truncate(position);
+		}
+		fileLength = position;
+
+		for (Payload payload : filePayloads.values()) {
+			nextPayloadId = Math.max(nextPayloadId, payload.id + 1);
+		}
+		for (Record record : records.values()) {
+			if (record.payload != null) {
+				reference(record.payload);
+			}
+		}
+
+		final List<Record> loadedRecords = new ArrayList<Record>(records.values());
+		if (!loadedRecords.isEmpty()) {
+			decode(loadedRecords, loadedRecords.size() - 1);
+		}
+		return new LazyStates(loadedRecords);
+	}
+
+	private static void checkBodyLength(int bodyLength, int minLength) throws IOException {
+		if (bodyLength < minLength) {
+			throw new IOException("Invalid history record");
+		}
+	}
+
+	@Nonnull
+	File getUnsupportedFile() {
+		return new File(file.getPath() + ".bad");
+	}
+
+	/**
+	 * Method moves file which cannot be read aside and starts new empty log
+	 */
+	private void onUnsupportedFile() throws IOException {
+		clearRecords();
+		moveAside();
+		fileLength = 0;
+	}
+
+	private void moveAside() throws IOException {
+		final File unsupportedFile = getUnsupportedFile();
+		if (unsupportedFile.exists() && !unsupportedFile.delete()) {
+			throw new IOException("Unable to delete " + unsupportedFile);
+		}
+		if (!file.renameTo(unsupportedFile) && !file.delete()) {
+			throw new IOException("Unable to move aside unsupported history file: " + file);
+		}
+	}
+
+	private static void skipFully(@Nonnull DataInputStream in, int bytes) throws IOException {
+		while (bytes > 0) {
+			final int skipped = in.skipBytes(bytes);
+			if (skipped <= 0) {
+				throw new EOFException();
+			}
+			bytes -= skipped;
+		}
+	}
+
+	private boolean applyRecord(byte type, int id, long offset, int length, long time, @Nullable Payload payload) {
+		switch (type) {
+			case TYPE_ADD:
+			case TYPE_REFERENCE:
+				final Record record = new Record(id, offset, length);
+				record.writtenTime = time;
+				record.payload = payload;
+				// NOTE: LinkedHashMap keeps the position of replaced record
+				records.put(id, record);
+				break;
+			case TYPE_REMOVE:
+				records.remove(id);
+				break;
+			case TYPE_PAYLOAD:
+				// payload is applied when referenced
+				fileRecords++;
+				return true;
+			default:
+				return false;
+		}
+
+		nextId = Math.max(nextId, id + 1);
+		fileRecords++;
+		return true;
+	}
+
+	/**
+	 * Method decodes all not yet decoded states on the page containing record with specified index
+	 */
+	private synchronized void decode(@Nonnull List<Record> loadedRecords, int index) {
+		// pages are counted from the end as the latest states are needed first
+		final int fromEnd = loadedRecords.size() - 1 - index;
+		final int to = loadedRecords.size() - (fromEnd - fromEnd % PAGE_SIZE);
+		final int from = Math.max(0, to - PAGE_SIZE);
+
+		try {
+			final RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				for (int i = from; i < to; i++) {
+					final Record record = loadedRecords.get(i);
+					if (record.state == null) {
+						final CalculatorHistoryState state = readState(in, record);
+						record.setState(state);
+						recordsByState.put(state, record);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState readState(@Nonnull RandomAccessFile in, @Nonnull Record record) throws IOException {
+		final byte[] body = new byte[record.length - 4 - RECORD_HEADER_LENGTH];
+		in.seek(record.offset + 4 + RECORD_HEADER_LENGTH);
+		in.readFully(body);
+
+		final Payload payload = record.payload;
+		if (payload == null) {
+			return HistoryStateCodec.fromBytes(body);
+		}
+
+		final DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+		final long time = bodyIn.readLong();
+		// payload id has been read on load
+		bodyIn.readInt();
+		final String comment = BinaryStrings.read(bodyIn);
+
+		final CalculatorHistoryState result = payload.newState();
+		result.setTime(time);
+		result.setComment(comment);
+		return result;
+	}
+
+	/**
+	 * Method writes new state or, if state has been already written, the changes made to it
+	 */
+	public synchronized void append(@Nonnull CalculatorHistoryState state) throws IOException {
+		final Record record = recordsByState.get(state);
+		if (record == null) {
+			final Record newRecord = new Record(nextId++, 0, 0);
+			newRecord.setState(state);
+			writeAdd(newRecord);
+			records.put(newRecord.id, newRecord);
+			recordsByState.put(state, newRecord);
+		} else if (record.isModified()) {
+			writeAdd(record);
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Method writes new states with one write. Unlike {@link #append(CalculatorHistoryState)} states are not kept in
+	 * memory (and their changes are not tracked): they are decoded from the file as any other state after next
+	 * {@link #load()}.
+	 */
+	public synchronized void appendAll(@Nonnull List<CalculatorHistoryState> states) throws IOException {
+		if (states.isEmpty()) {
+			return;
+		}
+
+		final Writes writes = new Writes(appendOffset());
+		final List<Record> newRecords = new ArrayList<Record>(states.size());
+		for (CalculatorHistoryState state : states) {
+			final Record record = new Record(nextId++, 0, 0);
+			record.writtenTime = state.getTime();
+			writes.add(record, state);
+			newRecords.add(record);
+		}
+		write(writes);
+
+		for (Record record : newRecords) {
+			records.put(record.id, record);
+		}
+	}
+
+	/**
+	 * Method writes all saved states to <var>writer</var> in order of their addition. States which have not been decoded
+	 * yet are decoded one by one and are not kept in memory.
+	 */
+	public synchronized void export(@Nonnull HistoryStreams.StateWriter writer) throws IOException {
+		RandomAccessFile in = null;
+		try {
+			for (Record record : records.values()) {
+				CalculatorHistoryState state = record.state;
+				if (state == null) {
+					if (in == null) {
+						in = new RandomAccessFile(file, "r");
+					}
+					state = readState(in, record);
+				}
+				writer.write(state);
+			}
+		} finally {
+			if (in != null) {
+				in.close();
+			}
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Method writes all the changes made to the already written states (e.g. changed comments)
+	 */
+	public synchronized void saveModified() throws IOException {
+		for (Record record : recordsByState.values()) {
+			if (record.isModified()) {
+				writeAdd(record);
+			}
+		}
+		compactIfNeeded();
+	}
+
+	public synchronized void remove(@Nonnull CalculatorHistoryState state) throws IOException {
+		final Record record = recordsByState.remove(state);
+		if (record != null) {
+			records.remove(record.id);
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + RECORD_HEADER_LENGTH);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(RECORD_HEADER_LENGTH);
+			out.writeByte(TYPE_REMOVE);
+			out.writeInt(record.id);
+			write(bytes.toByteArray(), 1);
+
+			if (record.payload != null) {
+				release(record.payload);
+			}
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Method replaces content of the file with specified states
+	 */
+	public synchronized void reset(@Nonnull List<CalculatorHistoryState> states) throws IOException {
+		clearRecords();
+
+		final Writes writes = new Writes(0);
+		writes.out.writeInt(MAGIC);
+		writes.out.writeInt(VERSION);
+		final List<Record> newRecords = new ArrayList<Record>(states.size());
+		for (CalculatorHistoryState state : states) {
+			final Record record = new Record(nextId++, 0, 0);
+			record.setState(state);
+			writes.add(record, state);
+			newRecords.add(record);
+		}
+
+		replaceFile(writes.bytes.toByteArray());
+		writes.apply();
+		for (Record record : newRecords) {
+			records.put(record.id, record);
+			recordsByState.put(record.state, record);
+		}
+		fileRecords = writes.recordCount;
+	}
+
+	/**
+	 * Method removes obsolete records from the file
+	 */
+	public synchronized void compact() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) fileLength);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		// payloads must precede records which reference them
+		for (Payload payload : payloads.values()) {
+			writePayloadRecord(out, payload);
+		}
+
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			for (Record record : records.values()) {
+				final byte[] recordBytes = new byte[record.length];
+				in.seek(record.offset);
+				in.readFully(recordBytes);
+
+				record.offset = bytes.size();
+				out.write(recordBytes);
+			}
+		} finally {
+			in.close();
+		}
+
+		replaceFile(bytes.toByteArray());
+		fileRecords = payloads.size() + records.size();
+	}
+
+	private void compactIfNeeded() throws IOException {
+		final int obsoleteRecords = fileRecords - records.size() - payloads.size();
+		if (obsoleteRecords > COMPACTION_MIN_OBSOLETE_RECORDS && obsoleteRecords > records.size()) {
+			compact();
+		}
+	}
+
+	private void writeAdd(@Nonnull Record record) throws IOException {
+		final CalculatorHistoryState state = record.state;
+		assert state != null;
+
+		final Writes writes = new Writes(appendOffset());
+		writes.add(record, state);
+		write(writes);
+	}
+
+	private void write(@Nonnull Writes writes) throws IOException {
+		final long offset = write(writes.bytes.toByteArray(), writes.recordCount);
+		assert offset == writes.offset;
+		writes.apply();
+	}
+
+	private static void writePayloadRecord(@Nonnull DataOutputStream out, @Nonnull Payload payload) throws IOException {
+		out.writeInt(RECORD_HEADER_LENGTH + payload.content.bytes.length);
+		out.writeByte(TYPE_PAYLOAD);
+		out.writeInt(payload.id);
+		out.write(payload.content.bytes);
+	}
+
+	@Nonnull
+	private static byte[] toBytes(@Nullable String s) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryStrings.write(new DataOutputStream(bytes), s);
+		return bytes.toByteArray();
+	}
+
+	private void reference(@Nonnull Payload payload) {
+		if (payload.references == 0) {
+			payloads.put(payload.content, payload);
+		}
+		payload.references++;
+	}
+
+	private void release(@Nonnull Payload payload) {
+		payload.references--;
+		if (payload.references == 0) {
+			payloads.remove(payload.content);
+		}
+	}
+
+	/**
+	 * @return offset at which next write will append records
+	 */
+	private long appendOffset() throws IOException {
+		if (fileLength < 0) {
+			// e.g. loading failed
+			throw new IOException("History must be loaded before any modification!");
+		}
+
+		if (fileLength > 0 && fileVersion != VERSION) {
+			// old version can't contain new types of records => upgrade header before appending them
+			compact();
+		}
+
+		return fileLength == 0 ? HEADER_LENGTH : fileLength;
+	}
+
+	/**
+	 * @param recordCount number of records in <var>bytes</var>
+	 * @return offset of written bytes
+	 */
+	private long write(@Nonnull byte[] bytes, int recordCount) throws IOException {
+		appendOffset();
+
+		if (fileLength == 0) {
+			// no header yet
+			final ByteArrayOutputStream header = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(header);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			replaceFile(header.toByteArray());
+		}
+
+		final long offset = fileLength;
+
+		final FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+
+		fileLength += bytes.length;
+		fileRecords += recordCount;
+		return offset;
+	}
+
+	private void replaceFile(@Nonnull byte[] content) throws IOException {
+		final File tmpFile = new File(file.getPath() + ".tmp");
+
+		final FileOutputStream out = new FileOutputStream(tmpFile);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Unable to replace " + file);
+		}
+		fileLength = content.length;
+		fileVersion = VERSION;
+	}
+
+	private void truncate(long length) throws IOException {
+		final RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(length);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void clearRecords() {
+		records.clear();
+		recordsByState.clear();
+		payloads.clear();
+		nextId = 0;
+		nextPayloadId = 0;
+		fileRecords = 0;
+		fileLength = -1;
+		fileVersion = VERSION;
+	}
+
+	/**
+	 * Records encoded to be written with one write. Payload records are added for payloads which are not in the file
+	 * yet. Changes of the log (offsets, references to payloads) are applied only after bytes have been written.
+	 */
+	private final class Writes {
+
+		@Nonnull
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		@Nonnull
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		// offset of the bytes in the file
+		private final long offset;
+
+		// number of encoded records
+		private int recordCount = 0;
+
+		@Nonnull
+		private final Map<Content, Payload> newPayloads = new HashMap<Content, Payload>();
+
+		@Nonnull
+		private final List<Write> writes = new ArrayList<Write>();
+
+		private Writes(long offset) {
+			this.offset = offset;
+		}
+
+		private void add(@Nonnull Record record, @Nonnull CalculatorHistoryState state) throws IOException {
+			final Content content = Content.newInstance(state);
+			Payload payload = payloads.get(content);
+			if (payload == null) {
+				payload = newPayloads.get(content);
+				if (payload == null) {
+					payload = new Payload(nextPayloadId++, content);
+					writePayloadRecord(out, payload);
+					recordCount++;
+					newPayloads.put(content, payload);
+				}
+			}
+
+			final int start = bytes.size();
+			final byte[] comment = toBytes(state.getComment());
+			out.writeInt(RECORD_HEADER_LENGTH + TIME_LENGTH + 4 + comment.length);
+			out.writeByte(TYPE_REFERENCE);
+			out.writeInt(record.id);
+			out.writeLong(state.getTime());
+			out.writeInt(payload.id);
+			out.write(comment);
+			recordCount++;
+
+			writes.add(new Write(record, state, payload, offset + start, bytes.size() - start));
+		}
+
+		private void apply() {
+			for (Write write : writes) {
+				final Record record = write.record;
+				record.offset = write.offset;
+				record.length = write.length;
+
+				final Payload oldPayload = record.payload;
+				record.payload = write.payload;
+				reference(write.payload);
+				if (oldPayload != null) {
+					release(oldPayload);
+				}
+
+				if (record.state == write.state) {
+					record.onWritten();
+				}
+			}
+		}
+	}
+
+	private static final class Write {
+
+		@Nonnull
+		private final Record record;
+
+		@Nonnull
+		private final CalculatorHistoryState state;
+
+		@Nonnull
+		private final Payload payload;
+
+		private final long offset;
+
+		private final int length;
+
+		private Write(@Nonnull Record record, @Nonnull CalculatorHistoryState state, @Nonnull Payload payload, long offset, int length) {
+			this.record = record;
+			this.state = state;
+			this.payload = payload;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * States loaded from the file, states are decoded on first access
+	 */
+	private final class LazyStates extends AbstractList<CalculatorHistoryState> implements RandomAccess, TimedStates {
+
+		@Nonnull
+		private final List<Record> loadedRecords;
+
+		private LazyStates(@Nonnull List<Record> loadedRecords) {
+			this.loadedRecords = loadedRecords;
+		}
+
+		@Override
+		public CalculatorHistoryState get(int index) {
+			final Record record = loadedRecords.get(index);
+
+			CalculatorHistoryState state = record.state;
+			if (state == null) {
+				decode(loadedRecords, index);
+				state = record.state;
+			}
+			return state;
+		}
+
+		@Override
+		public int size() {
+			return loadedRecords.size();
+		}
+
+		@Override
+		public long getTime(int index) {
+			final Record record = loadedRecords.get(index);
+
+			final CalculatorHistoryState state = record.state;
+			return state != null ? state.getTime() : record.writtenTime;
+		}
+	}
+
+	/**
+	 * Encoded editor state + display state
+	 */
+	private static final class Content {
+
+		@Nonnull
+		private final byte[] bytes;
+
+		private final int hashCode;
+
+		private Content(@Nonnull byte[] bytes) {
+			this.bytes = bytes;
+			this.hashCode = Arrays.hashCode(bytes);
+		}
+
+		@Nonnull
+		private static Content newInstance(@Nonnull CalculatorHistoryState state) throws IOException {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			HistoryStateCodec.writeEditorState(out, state.getEditorState());
+
+			final CalculatorDisplayHistoryState displayState = state.getDisplayState();
+			HistoryStateCodec.writeEditorState(out, displayState.getEditorState());
+			out.writeByte(displayState.getJsclOperation().ordinal());
+			return new Content(bytes.toByteArray());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Content)) return false;
+
+			return Arrays.equals(bytes, ((Content) o).bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private static final class Payload {
+
+		private final int id;
+
+		@Nonnull
+		private final Content content;
+
+		// number of live records referencing the payload
+		private int references;
+
+		// decoded on first use and shared by all states of the payload
+		@Nullable
+		private EditorHistoryState editorState;
+
+		@Nullable
+		private CalculatorDisplayHistoryState displayState;
+
+		private Payload(int id, @Nonnull Content content) {
+			this.id = id;
+			this.content = content;
+		}
+
+		@Nonnull
+		private CalculatorHistoryState newState() throws IOException {
+			if (editorState == null || displayState == null) {
+				final DataInputStream in = new DataInputStream(new ByteArrayInputStream(content.bytes));
+				editorState = HistoryStateCodec.readEditorState(in);
+
+				final EditorHistoryState displayEditorState = HistoryStateCodec.readEditorState(in);
+				displayState = CalculatorDisplayHistoryState.newInstance(displayEditorState, HistoryStateCodec.readJsclOperation(in));
+			}
+			return CalculatorHistoryState.newInstance(editorState, displayState);
+		}
+	}
+
+	private static final class Record {
+
+		private final int id;
+
+		// null if state has not been decoded yet
+		@Nullable
+		private volatile CalculatorHistoryState state;
+
+		// null for add records written by version 1 (whole state is in the record)
+		@Nullable
+		private Payload payload;
+
+		// position of the last written version of the state in the file
+		private long offset;
+
+		private int length;
+
+		// values of mutable fields at the moment of the last write (time is known even if state has not been decoded yet)
+		private long writtenTime;
+
+		@Nullable
+		private String writtenComment;
+
+		@Nullable
+		private EditorHistoryState writtenEditorState;
+
+		@Nullable
+		private CalculatorDisplayHistoryState writtenDisplayState;
+
+		private Record(int id, long offset, int length) {
+			this.id = id;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		private void setState(@Nonnull CalculatorHistoryState state) {
+			this.state = state;
+			onWritten();
+		}
+
+		private void onWritten() {
+			final CalculatorHistoryState state = this.state;
+			assert state != null;
+
+			writtenTime = state.getTime();
+			writtenComment = state.getComment();
+			writtenEditorState = state.getEditorState();
+			writtenDisplayState = state.getDisplayState();
+		}
+
+		private boolean isModified() {
+			final CalculatorHistoryState state = this.state;
+			if (state == null) return false;
+
+			if (writtenTime != state.getTime()) return true;
+			if (writtenComment != null ? !writtenComment.equals(state.getComment()) : state.getComment() != null) return true;
+			if (writtenEditorState != state.getEditorState()) return true;
+			if (writtenDisplayState != state.getDisplayState()) return true;
+
+			return false;
+		}
+	}
+}
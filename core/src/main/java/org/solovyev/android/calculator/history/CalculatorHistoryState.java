@@ -77,6 +77,12 @@ public class CalculatorHistoryState extends AbstractHistoryState {
 		return new CalculatorHistoryState(editorHistoryState, displayHistoryState);
 	}
 
+	@Nonnull
+	static CalculatorHistoryState newInstance(@Nonnull EditorHistoryState editorState,
+											  @Nonnull CalculatorDisplayHistoryState displayState) {
+		return new CalculatorHistoryState(editorState, displayState);
+	}
+
 	@Nonnull
 	public EditorHistoryState getEditorState() {
 		return editorState;
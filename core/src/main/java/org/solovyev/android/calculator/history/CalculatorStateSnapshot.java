@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.BinaryStrings;
+import org.solovyev.android.calculator.Calculator;
+import org.solovyev.android.calculator.CalculatorOutput;
+import org.solovyev.common.text.Strings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * State of the calculator which is not persisted anywhere else: current editor/display state and recent (not saved)
+ * history. Snapshot is written when application goes to background and is read with one memory mapped read on start.
+ *
+ * NOTE: snapshot doesn't make start faster: engine settings, vars, functions and saved history are not included
+ * (they have their own storages which stay authoritative) and are initialized as usual. Snapshot only brings back
+ * what would be lost otherwise.
+ *
+ * File format:
+ * <pre>
+ * int magic
+ * int version
+ * payloads of all states (see {@link HistoryPayloads})
+ * current state
+ * boolean current result is valid
+ * String error message of current result
+ * int number of recent states
+ * recent states
+ * </pre>
+ * The same expressions are usually evaluated many times: states only reference their payloads so each distinct
+ * payload is stored (and after reading is kept in memory) only once.
+ */
+public final class CalculatorStateSnapshot {
+
+	private static final int MAGIC = 0x43535354;
+
+	private static final int VERSION = 3;
+
+	@Nonnull
+	private final CalculatorHistoryState currentState;
+
+	@Nonnull
+	private final List<CalculatorHistoryState> states;
+
+	private CalculatorStateSnapshot(@Nonnull CalculatorHistoryState currentState, @Nonnull List<CalculatorHistoryState> states) {
+		this.currentState = currentState;
+		this.states = Collections.unmodifiableList(states);
+	}
+
+	@Nonnull
+	public static CalculatorStateSnapshot capture(@Nonnull Calculator calculator, @Nonnull CalculatorHistory history) {
+		return new CalculatorStateSnapshot(calculator.getCurrentHistoryState(), new ArrayList<CalculatorHistoryState>(history.getStates()));
+	}
+
+	public void restore(@Nonnull final Calculator calculator, @Nonnull CalculatorHistory history) {
+		if (history.isEmpty()) {
+			for (CalculatorHistoryState state : states) {
+				history.addState(state);
+			}
+		}
+		calculator.setCurrentHistoryState(currentState);
+
+		final CalculatorDisplayHistoryState displayState = currentState.getDisplayState();
+		final String expression = currentState.getEditorState().getText();
+		if (displayState.isValid() && !Strings.isEmpty(displayState.getEditorState().getText()) && !Strings.isEmpty(expression)) {
+			// result itself (not only its text) is needed e.g. for conversion => evaluate the expression again
+			Futures.addCallback(calculator.evaluateAsync(displayState.getJsclOperation(), expression), new FutureCallback<CalculatorOutput>() {
+				@Override
+				public void onSuccess(CalculatorOutput output) {
+					// nothing has been changed since restoration
+					if (currentState.equals(calculator.getCurrentHistoryState())) {
+						calculator.setCurrentHistoryState(withResult(output));
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					// result stays without generic value as for history states
+				}
+			});
+		}
+	}
+
+	@Nonnull
+	private CalculatorHistoryState withResult(@Nonnull CalculatorOutput output) {
+		final CalculatorDisplayHistoryState displayState = currentState.getDisplayState();
+		final CalculatorHistoryState result = CalculatorHistoryState.newInstance(currentState.getEditorState(), CalculatorDisplayHistoryState.newInstance(displayState.getEditorState(), displayState.getJsclOperation(), true, null, output.getResult()));
+		result.setTime(currentState.getTime());
+		result.setComment(currentState.getComment());
+		return result;
+	}
+
+	@Nonnull
+	public CalculatorHistoryState getCurrentState() {
+		return currentState;
+	}
+
+	@Nonnull
+	public List<CalculatorHistoryState> getStates() {
+		return states;
+	}
+
+	public void write(@Nonnull File file) throws IOException {
+		// write to temporary file first => old snapshot is not lost if writing fails
+		final File tmpFile = new File(file.getPath() + ".tmp");
+
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			final HistoryPayloads payloads = new HistoryPayloads();
+			payloads.add(currentState);
+			for (CalculatorHistoryState state : states) {
+				payloads.add(state);
+			}
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			payloads.write(out);
+			payloads.writeState(out, currentState);
+			out.writeBoolean(currentState.getDisplayState().isValid());
+			BinaryStrings.write(out, currentState.getDisplayState().getErrorMessage());
+			out.writeInt(states.size());
+			for (CalculatorHistoryState state : states) {
+				payloads.writeState(out, state);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Unable to replace " + file);
+		}
+	}
+
+	/**
+	 * @return snapshot stored in the file or null if there is no snapshot
+	 */
+	@Nullable
+	public static CalculatorStateSnapshot read(@Nonnull File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(new DataInputStream(new ByteBufferInputStream(buffer)));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Nonnull
+	private static CalculatorStateSnapshot read(@Nonnull DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a calculator state snapshot");
+		}
+
+		final int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version of calculator state snapshot: " + version);
+		}
+
+		final HistoryPayloads payloads = HistoryPayloads.read(in);
+		final CalculatorHistoryState currentState = readCurrentState(in, payloads);
+
+		final int count = in.readInt();
+		final List<CalculatorHistoryState> states = new ArrayList<CalculatorHistoryState>(count);
+		for (int i = 0; i < count; i++) {
+			states.add(payloads.readState(in));
+		}
+
+		return new CalculatorStateSnapshot(currentState, states);
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState readCurrentState(@Nonnull DataInputStream in, @Nonnull HistoryPayloads payloads) throws IOException {
+		final CalculatorHistoryState state = payloads.readState(in);
+		final boolean valid = in.readBoolean();
+		final String errorMessage = BinaryStrings.read(in);
+
+		// display state of the payload is shared => copy
+		final CalculatorDisplayHistoryState displayState = state.getDisplayState();
+		final CalculatorHistoryState result = CalculatorHistoryState.newInstance(state.getEditorState(), CalculatorDisplayHistoryState.newInstance(displayState.getEditorState(), displayState.getJsclOperation(), valid, errorMessage, null));
+		result.setTime(state.getTime());
+		result.setComment(state.getComment());
+		return result;
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+
+		@Nonnull
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(@Nonnull ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			final int result = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, result);
+			return result;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
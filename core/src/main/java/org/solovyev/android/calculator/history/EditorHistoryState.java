@@ -66,6 +66,16 @@ public class EditorHistoryState implements Cloneable {
 		return result;
 	}
 
+	@Nonnull
+	static EditorHistoryState newInstance(int cursorPosition, @Nullable String text) {
+		final EditorHistoryState result = new EditorHistoryState();
+
+		result.text = text;
+		result.cursorPosition = cursorPosition;
+
+		return result;
+	}
+
 	public void setValuesFromHistory(@Nonnull CalculatorEditor editor) {
 		editor.setText(Strings.getNotEmpty(this.getText(), ""));
 		editor.setSelection(this.getCursorPosition());
@@ -76,6 +86,11 @@ public class EditorHistoryState implements Cloneable {
 		return text;
 	}
 
+	// NOTE: used only for replacing text with equal (shared) instance
+	void setText(@Nullable String text) {
+		this.text = text;
+	}
+
 	public int getCursorPosition() {
 		return cursorPosition;
 	}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.BinaryStrings;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed table of history payloads (editor state + display state). Equal payloads of different history
+ * states are stored only once and states reference them by index:
+ * <pre>
+ * int number of payloads
+ * payloads (editor state, display editor state, operation)
+ * ...
+ * states (time, comment, int payload index)
+ * </pre>
+ * States decoded with the same table share editor and display states of equal payloads.
+ */
+final class HistoryPayloads {
+
+	@Nonnull
+	private final List<Payload> payloads = new ArrayList<Payload>();
+
+	@Nonnull
+	private final Map<Payload, Integer> indices = new HashMap<Payload, Integer>();
+
+	/**
+	 * @return index of the payload of the state (payload is added to the table if it is not there yet)
+	 */
+	int add(@Nonnull CalculatorHistoryState state) {
+		final Payload payload = new Payload(state.getEditorState(), state.getDisplayState());
+
+		Integer index = indices.get(payload);
+		if (index == null) {
+			index = payloads.size();
+			payloads.add(payload);
+			indices.put(payload, index);
+		}
+		return index;
+	}
+
+	int size() {
+		return payloads.size();
+	}
+
+	void write(@Nonnull DataOutput out) throws IOException {
+		out.writeInt(payloads.size());
+		for (Payload payload : payloads) {
+			HistoryStateCodec.writeEditorState(out, payload.editorState);
+			HistoryStateCodec.writeEditorState(out, payload.displayState.getEditorState());
+			out.writeByte(payload.displayState.getJsclOperation().ordinal());
+		}
+	}
+
+	@Nonnull
+	static HistoryPayloads read(@Nonnull DataInput in) throws IOException {
+		final HistoryPayloads result = new HistoryPayloads();
+
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			final EditorHistoryState editorState = HistoryStateCodec.readEditorState(in);
+			final EditorHistoryState displayEditorState = HistoryStateCodec.readEditorState(in);
+			final JsclOperation jsclOperation = HistoryStateCodec.readJsclOperation(in);
+
+			final Payload payload = new Payload(editorState, CalculatorDisplayHistoryState.newInstance(displayEditorState, jsclOperation));
+			result.payloads.add(payload);
+			result.indices.put(payload, i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Writes state as a reference to its payload, payload must be written before (see {@link #write(DataOutput)})
+	 */
+	void writeState(@Nonnull DataOutput out, @Nonnull CalculatorHistoryState state) throws IOException {
+		final Integer index = indices.get(new Payload(state.getEditorState(), state.getDisplayState()));
+		if (index == null) {
+			throw new IllegalStateException("Payload of the state is not in the table: " + state);
+		}
+
+		out.writeLong(state.getTime());
+		BinaryStrings.write(out, state.getComment());
+		out.writeInt(index);
+	}
+
+	@Nonnull
+	CalculatorHistoryState readState(@Nonnull DataInput in) throws IOException {
+		final long time = in.readLong();
+		final String comment = BinaryStrings.read(in);
+
+		final int index = in.readInt();
+		if (index < 0 || index >= payloads.size()) {
+			throw new IOException("Unknown payload: " + index);
+		}
+
+		final Payload payload = payloads.get(index);
+		final CalculatorHistoryState result = CalculatorHistoryState.newInstance(payload.editorState, payload.displayState);
+		result.setTime(time);
+		result.setComment(comment);
+		return result;
+	}
+
+	private static final class Payload {
+
+		@Nonnull
+		private final EditorHistoryState editorState;
+
+		@Nonnull
+		private final CalculatorDisplayHistoryState displayState;
+
+		private Payload(@Nonnull EditorHistoryState editorState, @Nonnull CalculatorDisplayHistoryState displayState) {
+			this.editorState = editorState;
+			this.displayState = displayState;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Payload)) return false;
+
+			final Payload that = (Payload) o;
+
+			if (!editorState.equals(that.editorState)) return false;
+			if (!displayState.equals(that.displayState)) return false;
+
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = editorState.hashCode();
+			result = 31 * result + displayState.hashCode();
+			return result;
+		}
+	}
+}
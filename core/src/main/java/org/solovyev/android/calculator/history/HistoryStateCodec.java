@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.BinaryStrings;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary representation of {@link CalculatorHistoryState}: only fields which are stored in XML are written
+ * (transient fields like generic result are restored in the same way as they are restored after XML deserialization)
+ */
+final class HistoryStateCodec {
+
+	// not intended for instantiation
+	private HistoryStateCodec() {
+		throw new AssertionError();
+	}
+
+	@Nonnull
+	static byte[] toBytes(@Nonnull CalculatorHistoryState state) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try {
+			write(new DataOutputStream(bytes), state);
+		} catch (IOException e) {
+			// byte array output stream doesn't throw IO exceptions
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Nonnull
+	static CalculatorHistoryState fromBytes(@Nonnull byte[] bytes) throws IOException {
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	static void write(@Nonnull DataOutput out, @Nonnull CalculatorHistoryState state) throws IOException {
+		out.writeLong(state.getTime());
+		BinaryStrings.write(out, state.getComment());
+		writeEditorState(out, state.getEditorState());
+
+		final CalculatorDisplayHistoryState displayState = state.getDisplayState();
+		writeEditorState(out, displayState.getEditorState());
+		out.writeByte(displayState.getJsclOperation().ordinal());
+	}
+
+	@Nonnull
+	static CalculatorHistoryState read(@Nonnull DataInput in) throws IOException {
+		final long time = in.readLong();
+		final String comment = BinaryStrings.read(in);
+		final EditorHistoryState editorState = readEditorState(in);
+
+		final EditorHistoryState displayEditorState = readEditorState(in);
+		final JsclOperation jsclOperation = readJsclOperation(in);
+
+		final CalculatorHistoryState result = CalculatorHistoryState.newInstance(editorState, CalculatorDisplayHistoryState.newInstance(displayEditorState, jsclOperation));
+		result.setTime(time);
+		result.setComment(comment);
+		return result;
+	}
+
+	static void writeEditorState(@Nonnull DataOutput out, @Nonnull EditorHistoryState editorState) throws IOException {
+		out.writeInt(editorState.getCursorPosition());
+		BinaryStrings.write(out, editorState.getText());
+	}
+
+	@Nonnull
+	static EditorHistoryState readEditorState(@Nonnull DataInput in) throws IOException {
+		final int cursorPosition = in.readInt();
+		final String text = BinaryStrings.read(in);
+		return EditorHistoryState.newInstance(cursorPosition, text);
+	}
+
+	@Nonnull
+	static JsclOperation readJsclOperation(@Nonnull DataInput in) throws IOException {
+		final int ordinal = in.readUnsignedByte();
+		final JsclOperation[] operations = JsclOperation.values();
+		if (ordinal >= operations.length) {
+			throw new IOException("Unknown operation: " + ordinal);
+		}
+		return operations[ordinal];
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.simpleframework.xml.Serializer;
+import org.simpleframework.xml.core.Persister;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Streaming export/import of history states: states are written and read one at a time, so memory consumption doesn't
+ * depend on the size of the history. Two formats are supported:
+ * 1. XML, same as produced by {@link CalculatorHistory#toXml()}
+ * 2. compact binary: header (magic + version) followed by states encoded by {@link HistoryStateCodec}, each state
+ * is preceded by non-zero byte, zero byte marks the end of the stream
+ */
+public final class HistoryStreams {
+
+	private static final String XML_HEADER = "<history>\n   <historyItems class=\"java.util.ArrayList\">\n";
+
+	private static final String XML_FOOTER = "   </historyItems>\n</history>";
+
+	// root element of CalculatorHistoryState
+	private static final String XML_STATE_START = "<calculatorHistoryState";
+
+	private static final String XML_STATE_END = "</calculatorHistoryState>";
+
+	private static final int MAGIC = 0x43485354;
+
+	private static final int VERSION = 1;
+
+	private static final byte BINARY_STATE = 1;
+
+	private static final byte BINARY_END = 0;
+
+	// not intended for instantiation
+	private HistoryStreams() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Source of history states
+	 */
+	public static interface StateReader {
+
+		/**
+		 * @return next state or null if there are no more states
+		 * @throws IOException if states cannot be read
+		 */
+		@Nullable
+		CalculatorHistoryState read() throws IOException;
+	}
+
+	/**
+	 * Destination of history states
+	 */
+	public static interface StateWriter {
+
+		void write(@Nonnull CalculatorHistoryState state) throws IOException;
+
+		/**
+		 * Method finishes the stream (underlying stream is flushed but not closed)
+		 */
+		void finish() throws IOException;
+	}
+
+	public static void write(@Nonnull Iterable<CalculatorHistoryState> states, @Nonnull StateWriter writer) throws IOException {
+		for (CalculatorHistoryState state : states) {
+			writer.write(state);
+		}
+		writer.finish();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           XML
+	*
+	**********************************************************************
+	*/
+
+	public static void writeXml(@Nonnull Iterable<CalculatorHistoryState> states, @Nonnull Writer writer) throws IOException {
+		write(states, newXmlWriter(writer));
+	}
+
+	@Nonnull
+	public static StateWriter newXmlWriter(@Nonnull Writer writer) {
+		return new XmlStateWriter(writer);
+	}
+
+	private static final class XmlStateWriter implements StateWriter {
+
+		@Nonnull
+		private final Writer writer;
+
+		@Nonnull
+		private final Serializer serializer = new Persister();
+
+		private boolean started = false;
+
+		private XmlStateWriter(@Nonnull Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(@Nonnull CalculatorHistoryState state) throws IOException {
+			start();
+			try {
+				serializer.write(state, writer);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw newIOException(e);
+			}
+			writer.write("\n");
+		}
+
+		@Override
+		public void finish() throws IOException {
+			start();
+			writer.write(XML_FOOTER);
+			writer.flush();
+		}
+
+		private void start() throws IOException {
+			if (!started) {
+				writer.write(XML_HEADER);
+				started = true;
+			}
+		}
+	}
+
+	/**
+	 * NOTE: {@link IOException#IOException(Throwable)} is not available on old Android versions
+	 */
+	@Nonnull
+	private static IOException newIOException(@Nonnull Exception cause) {
+		final IOException result = new IOException(cause.getMessage());
+		result.initCause(cause);
+		return result;
+	}
+
+	@Nonnull
+	public static StateReader newXmlReader(@Nonnull Reader reader) {
+		return new XmlStateReader(reader);
+	}
+
+	private static final class XmlStateReader implements StateReader {
+
+		@Nonnull
+		private final Reader reader;
+
+		@Nonnull
+		private final Serializer serializer = new Persister();
+
+		// xml of the current state, reused for all states
+		@Nonnull
+		private final StringBuilder xml = new StringBuilder();
+
+		private XmlStateReader(@Nonnull Reader reader) {
+			this.reader = new BufferedReader(reader);
+		}
+
+		@Nullable
+		@Override
+		public CalculatorHistoryState read() throws IOException {
+			if (!skipTo(XML_STATE_START, false)) {
+				return null;
+			}
+
+			xml.setLength(0);
+			xml.append(XML_STATE_START);
+			if (!skipTo(XML_STATE_END, true)) {
+				throw new EOFException("History state is not complete");
+			}
+
+			try {
+				return serializer.read(CalculatorHistoryState.class, xml.toString());
+			} catch (Exception e) {
+				throw newIOException(e);
+			}
+		}
+
+		/**
+		 * Reads characters until <var>s</var> is read (<var>s</var> must not contain its first character twice)
+		 *
+		 * @return false if end of stream has been reached before <var>s</var>
+		 */
+		private boolean skipTo(@Nonnull String s, boolean append) throws IOException {
+			int matched = 0;
+			while (matched < s.length()) {
+				final int ch = reader.read();
+				if (ch < 0) {
+					return false;
+				}
+
+				if (append) {
+					xml.append((char) ch);
+				}
+
+				if (ch == s.charAt(matched)) {
+					matched++;
+				} else {
+					matched = ch == s.charAt(0) ? 1 : 0;
+				}
+			}
+			return true;
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           BINARY
+	*
+	**********************************************************************
+	*/
+
+	public static void writeBinary(@Nonnull Iterable<CalculatorHistoryState> states, @Nonnull OutputStream out) throws IOException {
+		write(states, newBinaryWriter(out));
+	}
+
+	@Nonnull
+	public static StateWriter newBinaryWriter(@Nonnull OutputStream out) {
+		return new BinaryStateWriter(out);
+	}
+
+	private static final class BinaryStateWriter implements StateWriter {
+
+		@Nonnull
+		private final DataOutputStream out;
+
+		private boolean started = false;
+
+		private BinaryStateWriter(@Nonnull OutputStream out) {
+			this.out = new DataOutputStream(new BufferedOutputStream(out));
+		}
+
+		@Override
+		public void write(@Nonnull CalculatorHistoryState state) throws IOException {
+			start();
+			out.writeByte(BINARY_STATE);
+			HistoryStateCodec.write(out, state);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			start();
+			out.writeByte(BINARY_END);
+			out.flush();
+		}
+
+		private void start() throws IOException {
+			if (!started) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				started = true;
+			}
+		}
+	}
+
+	/**
+	 * @throws IOException if stream has unsupported format
+	 */
+	@Nonnull
+	public static StateReader newBinaryReader(@Nonnull InputStream in) throws IOException {
+		final DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+		if (dataIn.readInt() != MAGIC) {
+			throw new IOException("Not a history stream");
+		}
+
+		final int version = dataIn.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version of history stream: " + version);
+		}
+
+		return new BinaryStateReader(dataIn);
+	}
+
+	private static final class BinaryStateReader implements StateReader {
+
+		@Nonnull
+		private final DataInputStream in;
+
+		private boolean finished = false;
+
+		private BinaryStateReader(@Nonnull DataInputStream in) {
+			this.in = in;
+		}
+
+		@Nullable
+		@Override
+		public CalculatorHistoryState read() throws IOException {
+			if (finished) {
+				return null;
+			}
+
+			if (in.readByte() == BINARY_END) {
+				finished = true;
+				return null;
+			}
+
+			return HistoryStateCodec.read(in);
+		}
+	}
+}
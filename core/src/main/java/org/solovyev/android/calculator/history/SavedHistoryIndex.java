@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index over saved history: words of expressions and results (searched by prefix) and numeric values of
+ * results (searched by range). Index is updated incrementally on each addition/removal.
+ * Not thread-safe.
+ */
+final class SavedHistoryIndex {
+
+	@Nonnull
+	private final SortedMap<String, Set<Entry>> entriesByWord = new TreeMap<String, Set<Entry>>();
+
+	@Nonnull
+	private final SortedMap<Double, Set<Entry>> entriesByValue = new TreeMap<Double, Set<Entry>>();
+
+	@Nonnull
+	private final Map<CalculatorHistoryState, Entry> entries = new IdentityHashMap<CalculatorHistoryState, Entry>();
+
+	// order of addition, used for sorting the results
+	private long counter = 0;
+
+	void add(@Nonnull CalculatorHistoryState state) {
+		if (entries.containsKey(state)) {
+			return;
+		}
+
+		final List<String> words = new ArrayList<String>();
+		addWords(words, state.getEditorState().getText());
+		final String result = state.getDisplayState().getEditorState().getText();
+		addWords(words, result);
+
+		final Entry entry = new Entry(state, counter++, words, parseValue(result));
+		entries.put(state, entry);
+
+		for (String word : entry.words) {
+			put(entriesByWord, word, entry);
+		}
+		if (entry.value != null) {
+			put(entriesByValue, entry.value, entry);
+		}
+	}
+
+	void remove(@Nonnull CalculatorHistoryState state) {
+		final Entry entry = entries.remove(state);
+		if (entry != null) {
+			for (String word : entry.words) {
+				remove(entriesByWord, word, entry);
+			}
+			if (entry.value != null) {
+				remove(entriesByValue, entry.value, entry);
+			}
+		}
+	}
+
+	void clear() {
+		entriesByWord.clear();
+		entriesByValue.clear();
+		entries.clear();
+	}
+
+	/**
+	 * @return states which contain all words of the query (each word of the query might be a prefix of the word in
+	 * the state) in order of addition
+	 */
+	@Nonnull
+	List<CalculatorHistoryState> find(@Nonnull String query) {
+		final List<String> queryWords = new ArrayList<String>();
+		addWords(queryWords, query);
+
+		if (queryWords.isEmpty()) {
+			return toStates(entries.values());
+		}
+
+		Set<Entry> result = null;
+		for (String queryWord : queryWords) {
+			final Set<Entry> wordEntries = newEntrySet();
+			for (Set<Entry> prefixEntries : entriesByWord.subMap(queryWord, queryWord + Character.MAX_VALUE).values()) {
+				wordEntries.addAll(prefixEntries);
+			}
+
+			if (result == null) {
+				result = wordEntries;
+			} else {
+				result.retainAll(wordEntries);
+			}
+
+			if (result.isEmpty()) {
+				break;
+			}
+		}
+
+		return toStates(result);
+	}
+
+	/**
+	 * @return states which results are numbers in the specified range (inclusive) in order of addition
+	 */
+	@Nonnull
+	List<CalculatorHistoryState> find(double min, double max) {
+		final Set<Entry> result = newEntrySet();
+		if (min <= max) {
+			for (Map.Entry<Double, Set<Entry>> valueEntries : entriesByValue.tailMap(min).entrySet()) {
+				if (valueEntries.getKey() > max) {
+					break;
+				}
+				result.addAll(valueEntries.getValue());
+			}
+		}
+		return toStates(result);
+	}
+
+	@Nonnull
+	private static List<CalculatorHistoryState> toStates(@Nonnull Collection<Entry> entries) {
+		final List<Entry> sortedEntries = new ArrayList<Entry>(entries);
+		Collections.sort(sortedEntries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+			}
+		});
+
+		final List<CalculatorHistoryState> result = new ArrayList<CalculatorHistoryState>(sortedEntries.size());
+		for (Entry entry : sortedEntries) {
+			result.add(entry.state);
+		}
+		return result;
+	}
+
+	/**
+	 * Method splits text into words: sequences of letters, digits and dots (to keep decimal numbers whole)
+	 */
+	private static void addWords(@Nonnull List<String> words, @Nullable String text) {
+		if (text != null) {
+			int start = -1;
+			for (int i = 0; i <= text.length(); i++) {
+				final boolean wordChar = i < text.length() && isWordChar(text.charAt(i));
+				if (wordChar) {
+					if (start < 0) {
+						start = i;
+					}
+				} else if (start >= 0) {
+					words.add(text.substring(start, i).toLowerCase(Locale.US));
+					start = -1;
+				}
+			}
+		}
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '.';
+	}
+
+	@Nullable
+	private static Double parseValue(@Nullable String result) {
+		if (result != null) {
+			final StringBuilder number = new StringBuilder(result.length());
+			for (int i = 0; i < result.length(); i++) {
+				final char c = result.charAt(i);
+				// grouping separators are skipped
+				if (c != ' ' && c != '\'') {
+					number.append(c);
+				}
+			}
+
+			if (number.length() > 0) {
+				try {
+					return Double.valueOf(number.toString());
+				} catch (NumberFormatException e) {
+					// not a number
+				}
+			}
+		}
+		return null;
+	}
+
+	private static <K> void put(@Nonnull Map<K, Set<Entry>> map, @Nonnull K key, @Nonnull Entry entry) {
+		Set<Entry> keyEntries = map.get(key);
+		if (keyEntries == null) {
+			keyEntries = newEntrySet();
+			map.put(key, keyEntries);
+		}
+		keyEntries.add(entry);
+	}
+
+	private static <K> void remove(@Nonnull Map<K, Set<Entry>> map, @Nonnull K key, @Nonnull Entry entry) {
+		final Set<Entry> keyEntries = map.get(key);
+		if (keyEntries != null) {
+			keyEntries.remove(entry);
+			if (keyEntries.isEmpty()) {
+				map.remove(key);
+			}
+		}
+	}
+
+	@Nonnull
+	private static Set<Entry> newEntrySet() {
+		// NOTE: entries are compared by identity as Entry doesn't override equals()
+		return new HashSet<Entry>();
+	}
+
+	private static final class Entry {
+
+		@Nonnull
+		private final CalculatorHistoryState state;
+
+		private final long order;
+
+		// words and value at the moment of indexing (needed for removal)
+		@Nonnull
+		private final List<String> words;
+
+		@Nullable
+		private final Double value;
+
+		private Entry(@Nonnull CalculatorHistoryState state, long order, @Nonnull List<String> words, @Nullable Double value) {
+			this.state = state;
+			this.order = order;
+			this.words = words;
+			this.value = value;
+		}
+	}
+}
@@ -41,6 +41,25 @@ class FromJsclNumericTextProcessor implements TextProcessor<String, Generic> {
 	@Nonnull
 	@Override
 	public String process(@Nonnull Generic numeric) throws CalculatorParseException {
-		return numeric.toString().replace("*", "");
+		return removeMultiplicationSigns(numeric.toString());
+	}
+
+	// NOTE: String#replace(CharSequence, CharSequence) compiles regular expression on each call
+	@Nonnull
+	static String removeMultiplicationSigns(@Nonnull String s) {
+		int next = s.indexOf('*');
+		if (next < 0) {
+			return s;
+		}
+
+		final StringBuilder result = new StringBuilder(s.length());
+		int copied = 0;
+		while (next >= 0) {
+			result.append(s, copied, next);
+			copied = next + 1;
+			next = s.indexOf('*', copied);
+		}
+		result.append(s, copied, s.length());
+		return result.toString();
 	}
 }
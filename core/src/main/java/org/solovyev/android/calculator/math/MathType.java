@@ -37,7 +37,9 @@ import org.solovyev.common.collections.Collections;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public enum MathType {
@@ -208,6 +210,9 @@ public enum MathType {
 	@Nonnull
 	private final MathGroupType groupType;
 
+	@Nullable
+	private volatile TokenIndex tokenIndex;
+
 	MathType(@Nonnull Integer priority,
 			 boolean needMultiplicationSignBefore,
 			 boolean needMultiplicationSignAfter,
@@ -369,18 +374,12 @@ public enum MathType {
 			return new Result(MathType.text, text);
 		}
 
-		final StartsWithFinder startsWithFinder = new StartsWithFinder(text, i);
-
-		for (MathType mathType : getMathTypesByPriority()) {
-			final String s = Collections.find(mathType.getTokens(), startsWithFinder);
+		final boolean hex = hexMode || JsclMathEngine.getInstance().getNumeralBase() == NumeralBase.hex;
+		for (MathType mathType : mathTypesByPriority) {
+			final String s = mathType.getTokenIndex().find(text, i);
 			if (s != null) {
-				if (s.length() == 1) {
-					if (hexMode || JsclMathEngine.getInstance().getNumeralBase() == NumeralBase.hex) {
-						final Character ch = s.charAt(0);
-						if (NumeralBase.hex.getAcceptableCharacters().contains(ch)) {
-							return new Result(MathType.digit, s);
-						}
-					}
+				if (s.length() == 1 && hex && isHexDigit(s.charAt(0))) {
+					return new Result(MathType.digit, s);
 				}
 				return new Result(mathType, s);
 			}
@@ -389,25 +388,53 @@ public enum MathType {
 		return new Result(MathType.text, text.substring(i));
 	}
 
+	@Nonnull
+	private static final MathType[] mathTypesByPriority = newMathTypesByPriority();
 
-	private static List<MathType> mathTypesByPriority;
+	@Nonnull
+	private static final boolean[] hexDigits = newHexDigits();
 
 	@Nonnull
-	private static List<MathType> getMathTypesByPriority() {
-		if (mathTypesByPriority == null) {
-			final List<MathType> result = Collections.asList(MathType.values());
-
-			java.util.Collections.sort(result, new Comparator<MathType>() {
-				@Override
-				public int compare(MathType l, MathType r) {
-					return l.priority.compareTo(r.priority);
-				}
-			});
+	private static MathType[] newMathTypesByPriority() {
+		final MathType[] result = MathType.values();
+
+		Arrays.sort(result, new Comparator<MathType>() {
+			@Override
+			public int compare(MathType l, MathType r) {
+				return l.priority.compareTo(r.priority);
+			}
+		});
 
-			mathTypesByPriority = result;
+		return result;
+	}
+
+	@Nonnull
+	private static boolean[] newHexDigits() {
+		final boolean[] result = new boolean[128];
+		for (Character ch : NumeralBase.hex.getAcceptableCharacters()) {
+			result[ch] = true;
 		}
+		return result;
+	}
+
+	private static boolean isHexDigit(char ch) {
+		return ch < hexDigits.length && hexDigits[ch];
+	}
+
+	/**
+	 * @return index of the current tokens, rebuilt only if list of tokens has changed (registries return the same list
+	 * until they are modified)
+	 */
+	@Nonnull
+	private TokenIndex getTokenIndex() {
+		final List<String> tokens = getTokens();
 
-		return mathTypesByPriority;
+		TokenIndex result = tokenIndex;
+		if (result == null || result.tokens != tokens) {
+			result = new TokenIndex(tokens);
+			tokenIndex = result;
+		}
+		return result;
 	}
 
 	public static class Result {
@@ -464,25 +491,45 @@ public enum MathType {
 		}
 	}
 
-	private static class StartsWithFinder implements JPredicate<String> {
-
-		private int i;
+	/**
+	 * Tokens grouped by their first character: only tokens starting with the character under the cursor are checked
+	 */
+	private static final class TokenIndex {
 
 		@Nonnull
-		private final String targetString;
+		private final List<String> tokens;
 
-		public StartsWithFinder(@Nonnull String targetString, int i) {
-			this.targetString = targetString;
-			this.i = i;
-		}
-
-		@Override
-		public boolean apply(@Nullable String s) {
-			return s != null && targetString.startsWith(s, i);
+		@Nonnull
+		private final Map<Character, List<String>> tokensByFirstChar = new HashMap<Character, List<String>>();
+
+		private TokenIndex(@Nonnull List<String> tokens) {
+			this.tokens = tokens;
+			for (String token : tokens) {
+				if (token != null && token.length() > 0) {
+					final Character firstChar = token.charAt(0);
+					List<String> tokensWithSameFirstChar = tokensByFirstChar.get(firstChar);
+					if (tokensWithSameFirstChar == null) {
+						tokensWithSameFirstChar = new ArrayList<String>(1);
+						tokensByFirstChar.put(firstChar, tokensWithSameFirstChar);
+					}
+					// order of the tokens is preserved => first matching token is the same as in the original list
+					tokensWithSameFirstChar.add(token);
+				}
+			}
 		}
 
-		public void setI(int i) {
-			this.i = i;
+		@Nullable
+		private String find(@Nonnull String text, int i) {
+			final List<String> candidates = tokensByFirstChar.get(text.charAt(i));
+			if (candidates != null) {
+				for (int j = 0; j < candidates.size(); j++) {
+					final String candidate = candidates.get(j);
+					if (text.startsWith(candidate, i)) {
+						return candidate;
+					}
+				}
+			}
+			return null;
 		}
 	}
 }
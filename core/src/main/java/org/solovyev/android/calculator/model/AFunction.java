@@ -211,6 +211,14 @@ public class AFunction implements IFunction, MathPersistenceEntity, Serializable
 		this.parameterNames = parameterNames;
 	}
 
+	void setDescription(@Nonnull String description) {
+		this.description = description;
+	}
+
+	void setSystem(boolean system) {
+		this.system = system;
+	}
+
 	/*
 	**********************************************************************
 	*
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.model;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.BinaryStrings;
+import org.solovyev.android.calculator.MathEntityCodec;
+import org.solovyev.android.calculator.MathEntityPersistenceContainer;
+import org.solovyev.common.text.Strings;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary codec of {@link AFunction}: name, body, parameter names, description, system flag.
+ * Body is stored as is (already prepared expression) and is not processed again on read.
+ */
+public final class FunctionCodec implements MathEntityCodec<AFunction> {
+
+	@Nonnull
+	public static final FunctionCodec instance = new FunctionCodec();
+
+	private FunctionCodec() {
+	}
+
+	@Override
+	public void write(@Nonnull DataOutput out, @Nonnull AFunction function) throws IOException {
+		BinaryStrings.write(out, function.getName());
+		BinaryStrings.write(out, function.getContent());
+
+		final List<String> parameterNames = function.getParameterNames();
+		out.writeInt(parameterNames.size());
+		for (String parameterName : parameterNames) {
+			BinaryStrings.write(out, parameterName);
+		}
+
+		BinaryStrings.write(out, function.getDescription());
+		out.writeBoolean(function.isSystem());
+	}
+
+	@Nonnull
+	@Override
+	public AFunction read(@Nonnull DataInput in) throws IOException {
+		final String name = BinaryStrings.read(in);
+		final String content = BinaryStrings.read(in);
+		if (name == null || content == null) {
+			throw new IOException("Function without name or body");
+		}
+
+		final int parametersCount = in.readInt();
+		final List<String> parameterNames = new ArrayList<String>(parametersCount);
+		for (int i = 0; i < parametersCount; i++) {
+			parameterNames.add(BinaryStrings.read(in));
+		}
+
+		final AFunction result = new AFunction();
+		result.setName(name);
+		result.setContent(content);
+		result.setParameterNames(parameterNames);
+		result.setDescription(Strings.getNotEmpty(BinaryStrings.read(in), ""));
+		result.setSystem(in.readBoolean());
+		return result;
+	}
+
+	@Nonnull
+	@Override
+	public MathEntityPersistenceContainer<AFunction> newContainer(@Nonnull List<AFunction> entities) {
+		final Functions result = new Functions();
+		result.getEntities().addAll(entities);
+		return result;
+	}
+}
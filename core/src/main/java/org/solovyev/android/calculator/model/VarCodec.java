@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.model;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.BinaryStrings;
+import org.solovyev.android.calculator.MathEntityCodec;
+import org.solovyev.android.calculator.MathEntityPersistenceContainer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Binary codec of {@link Var}: name, value, description, system flag
+ */
+public final class VarCodec implements MathEntityCodec<Var> {
+
+	@Nonnull
+	public static final VarCodec instance = new VarCodec();
+
+	private VarCodec() {
+	}
+
+	@Override
+	public void write(@Nonnull DataOutput out, @Nonnull Var var) throws IOException {
+		BinaryStrings.write(out, var.getName());
+		BinaryStrings.write(out, var.getValue());
+		BinaryStrings.write(out, var.getDescription());
+		out.writeBoolean(var.isSystem());
+	}
+
+	@Nonnull
+	@Override
+	public Var read(@Nonnull DataInput in) throws IOException {
+		final String name = BinaryStrings.read(in);
+		if (name == null) {
+			throw new IOException("Variable without name");
+		}
+
+		final Var.Builder builder = new Var.Builder(name, BinaryStrings.read(in));
+		builder.setDescription(BinaryStrings.read(in));
+		builder.setSystem(in.readBoolean());
+		return builder.create();
+	}
+
+	@Nonnull
+	@Override
+	public MathEntityPersistenceContainer<Var> newContainer(@Nonnull List<Var> entities) {
+		final Vars result = new Vars();
+		result.getEntities().addAll(entities);
+		return result;
+	}
+}
@@ -0,0 +1,550 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.plot;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Expression compiled for the batch evaluation: expression (as printed by jscl) is translated into the program of the
+ * stack machine each instruction of which is applied to the whole batch of arguments at once (tight loops over arrays
+ * without any allocation or dispatch inside).
+ * <p/>
+ * Only real arithmetic (+ - * / ^), variables, π, e and elementary functions are supported,
+ * {@link #compile(String, String, String, boolean)} returns null for anything else. Results might be NaN or infinite
+ * where jscl gives a complex number (e.g. √(-1)) or fails => such points must be evaluated by jscl.
+ */
+final class CompiledExpression {
+
+	/*
+	**********************************************************************
+	*
+	*                           INSTRUCTIONS
+	*
+	**********************************************************************
+	*/
+
+	private static final int CONSTANT = 0;
+	private static final int X = 1;
+	private static final int Y = 2;
+	private static final int ADD = 3;
+	private static final int SUBTRACT = 4;
+	private static final int MULTIPLY = 5;
+	private static final int DIVIDE = 6;
+	private static final int POWER = 7;
+	private static final int NEGATE = 8;
+	private static final int SIN = 9;
+	private static final int COS = 10;
+	private static final int TAN = 11;
+	private static final int ASIN = 12;
+	private static final int ACOS = 13;
+	private static final int ATAN = 14;
+	private static final int SINH = 15;
+	private static final int COSH = 16;
+	private static final int TANH = 17;
+	private static final int LN = 18;
+	private static final int LG = 19;
+	private static final int EXP = 20;
+	private static final int SQRT = 21;
+	private static final int ABS = 22;
+
+	private static final String[] FUNCTIONS = {"sin", "cos", "tan", "asin", "acos", "atan", "sinh", "cosh", "tanh", "ln", "lg", "exp", "√", "sqrt", "abs"};
+	private static final int[] FUNCTION_INSTRUCTIONS = {SIN, COS, TAN, ASIN, ACOS, ATAN, SINH, COSH, TANH, LN, LG, EXP, SQRT, SQRT, ABS};
+
+	private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+	private static final double RADIANS_TO_DEGREES = 180 / Math.PI;
+
+	@Nonnull
+	private static final UnsupportedExpressionException unsupported = new UnsupportedExpressionException();
+
+	@Nonnull
+	private final int[] instructions;
+
+	// operand of CONSTANT instruction
+	@Nonnull
+	private final double[] operands;
+
+	private final int stackSize;
+
+	private final boolean degrees;
+
+	private CompiledExpression(@Nonnull int[] instructions, @Nonnull double[] operands, int stackSize, boolean degrees) {
+		this.instructions = instructions;
+		this.operands = operands;
+		this.stackSize = stackSize;
+		this.degrees = degrees;
+	}
+
+	/**
+	 * @param expression expression to be compiled
+	 * @param xName      name of the first variable
+	 * @param yName      name of the second variable
+	 * @param degrees    true if angles of trigonometric functions are in degrees
+	 * @return compiled expression or null if expression is not supported
+	 */
+	@Nullable
+	static CompiledExpression compile(@Nonnull String expression, @Nullable String xName, @Nullable String yName, boolean degrees) {
+		final Compiler compiler = new Compiler(expression, xName, yName);
+		try {
+			compiler.compileSum();
+			if (compiler.position != expression.length()) {
+				return null;
+			}
+		} catch (UnsupportedExpressionException e) {
+			return null;
+		}
+
+		return new CompiledExpression(copyOf(compiler.instructions, compiler.size), copyOf(compiler.operands, compiler.size), compiler.maxDepth, degrees);
+	}
+
+	// NOTE: Arrays.copyOf is not available on old Android versions
+	@Nonnull
+	private static int[] copyOf(@Nonnull int[] array, int length) {
+		final int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+		return result;
+	}
+
+	@Nonnull
+	private static double[] copyOf(@Nonnull double[] array, int length) {
+		final double[] result = new double[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+		return result;
+	}
+
+	/**
+	 * Method evaluates expression for <var>count</var> points: i-th point is (xs[i], y) if <var>xs</var> is not null
+	 * or (x, ys[i]) otherwise. Value of i-th point is written to out[offset + i].
+	 */
+	void eval(@Nullable double[] xs, double x, @Nullable double[] ys, double y, int count, @Nonnull double[] out, int offset) {
+		final double[][] stack = new double[stackSize][count];
+
+		int top = -1;
+		for (int i = 0; i < instructions.length; i++) {
+			final int instruction = instructions[i];
+			switch (instruction) {
+				case CONSTANT:
+					Arrays.fill(stack[++top], operands[i]);
+					break;
+				case X:
+					load(xs, x, stack[++top], count);
+					break;
+				case Y:
+					load(ys, y, stack[++top], count);
+					break;
+				case ADD:
+				case SUBTRACT:
+				case MULTIPLY:
+				case DIVIDE:
+				case POWER:
+					top--;
+					evalBinary(instruction, stack[top], stack[top + 1], count);
+					break;
+				default:
+					evalUnary(instruction, stack[top], count);
+					break;
+			}
+		}
+
+		System.arraycopy(stack[0], 0, out, offset, count);
+	}
+
+	private static void load(@Nullable double[] values, double value, @Nonnull double[] out, int count) {
+		if (values != null) {
+			System.arraycopy(values, 0, out, 0, count);
+		} else {
+			Arrays.fill(out, value);
+		}
+	}
+
+	// result is stored in a
+	private static void evalBinary(int instruction, @Nonnull double[] a, @Nonnull double[] b, int count) {
+		switch (instruction) {
+			case ADD:
+				for (int i = 0; i < count; i++) {
+					a[i] += b[i];
+				}
+				break;
+			case SUBTRACT:
+				for (int i = 0; i < count; i++) {
+					a[i] -= b[i];
+				}
+				break;
+			case MULTIPLY:
+				for (int i = 0; i < count; i++) {
+					a[i] *= b[i];
+				}
+				break;
+			case DIVIDE:
+				for (int i = 0; i < count; i++) {
+					a[i] /= b[i];
+				}
+				break;
+			case POWER:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.pow(a[i], b[i]);
+				}
+				break;
+		}
+	}
+
+	private void evalUnary(int instruction, @Nonnull double[] a, int count) {
+		switch (instruction) {
+			case NEGATE:
+				for (int i = 0; i < count; i++) {
+					a[i] = -a[i];
+				}
+				break;
+			case SIN:
+				toRadians(a, count);
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.sin(a[i]);
+				}
+				break;
+			case COS:
+				toRadians(a, count);
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.cos(a[i]);
+				}
+				break;
+			case TAN:
+				toRadians(a, count);
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.tan(a[i]);
+				}
+				break;
+			case ASIN:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.asin(a[i]);
+				}
+				fromRadians(a, count);
+				break;
+			case ACOS:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.acos(a[i]);
+				}
+				fromRadians(a, count);
+				break;
+			case ATAN:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.atan(a[i]);
+				}
+				fromRadians(a, count);
+				break;
+			case SINH:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.sinh(a[i]);
+				}
+				break;
+			case COSH:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.cosh(a[i]);
+				}
+				break;
+			case TANH:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.tanh(a[i]);
+				}
+				break;
+			case LN:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.log(a[i]);
+				}
+				break;
+			case LG:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.log10(a[i]);
+				}
+				break;
+			case EXP:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.exp(a[i]);
+				}
+				break;
+			case SQRT:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.sqrt(a[i]);
+				}
+				break;
+			case ABS:
+				for (int i = 0; i < count; i++) {
+					a[i] = Math.abs(a[i]);
+				}
+				break;
+			default:
+				// all unary instructions are handled above
+				throw new AssertionError(instruction);
+		}
+	}
+
+	private void toRadians(@Nonnull double[] a, int count) {
+		if (degrees) {
+			for (int i = 0; i < count; i++) {
+				a[i] *= DEGREES_TO_RADIANS;
+			}
+		}
+	}
+
+	private void fromRadians(@Nonnull double[] a, int count) {
+		if (degrees) {
+			for (int i = 0; i < count; i++) {
+				a[i] *= RADIANS_TO_DEGREES;
+			}
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           COMPILER
+	*
+	**********************************************************************
+	*/
+
+	private static final class Compiler {
+
+		@Nonnull
+		private final String expression;
+
+		@Nullable
+		private final String xName;
+
+		@Nullable
+		private final String yName;
+
+		private int position = 0;
+
+		@Nonnull
+		private int[] instructions = new int[16];
+
+		@Nonnull
+		private double[] operands = new double[16];
+
+		private int size = 0;
+
+		private int depth = 0;
+
+		private int maxDepth = 0;
+
+		private Compiler(@Nonnull String expression, @Nullable String xName, @Nullable String yName) {
+			this.expression = expression;
+			this.xName = xName;
+			this.yName = yName;
+		}
+
+		/**
+		 * sum = ['-'] product (('+' | '-') product)*
+		 */
+		private void compileSum() throws UnsupportedExpressionException {
+			final boolean negate = skip('-');
+			compileProduct();
+			if (negate) {
+				emit(NEGATE, 0);
+			}
+
+			while (position < expression.length()) {
+				final char operation = expression.charAt(position);
+				if (operation != '+' && operation != '-') {
+					break;
+				}
+				position++;
+
+				compileProduct();
+				emit(operation == '+' ? ADD : SUBTRACT, 0);
+			}
+		}
+
+		/**
+		 * product = power (('*' | '×' | '∙' | '/') power)*
+		 */
+		private void compileProduct() throws UnsupportedExpressionException {
+			compilePower();
+
+			while (position < expression.length()) {
+				final char operation = expression.charAt(position);
+				if (operation != '*' && operation != '×' && operation != '∙' && operation != '/') {
+					break;
+				}
+				position++;
+
+				compilePower();
+				emit(operation == '/' ? DIVIDE : MULTIPLY, 0);
+			}
+		}
+
+		/**
+		 * power = primary ['^' ['-'] primary]
+		 */
+		private void compilePower() throws UnsupportedExpressionException {
+			compilePrimary();
+
+			if (skip('^')) {
+				final boolean negate = skip('-');
+				compilePrimary();
+				if (negate) {
+					emit(NEGATE, 0);
+				}
+				emit(POWER, 0);
+
+				if (position < expression.length() && expression.charAt(position) == '^') {
+					// a^b^c: associativity is left to jscl
+					throw unsupported;
+				}
+			}
+		}
+
+		/**
+		 * primary = number | '(' sum ')' | function '(' sum ')' | variable | constant
+		 */
+		private void compilePrimary() throws UnsupportedExpressionException {
+			if (position >= expression.length()) {
+				throw unsupported;
+			}
+
+			final char ch = expression.charAt(position);
+			if (isDigit(ch) || ch == '.') {
+				compileNumber();
+			} else if (ch == '(') {
+				position++;
+				compileGroup();
+			} else {
+				final int start = position;
+				if (ch == '√' || ch == 'π') {
+					position++;
+				} else if (Character.isLetter(ch)) {
+					position++;
+					while (position < expression.length() && isNamePart(expression.charAt(position))) {
+						position++;
+					}
+				} else {
+					throw unsupported;
+				}
+
+				final String name = expression.substring(start, position);
+				if (skip('(')) {
+					final int instruction = getFunctionInstruction(name);
+					compileGroup();
+					emit(instruction, 0);
+				} else if (name.equals(xName)) {
+					emit(X, 0);
+				} else if (name.equals(yName)) {
+					emit(Y, 0);
+				} else if (name.equals("π")) {
+					emit(CONSTANT, Math.PI);
+				} else if (name.equals("e")) {
+					emit(CONSTANT, Math.E);
+				} else {
+					throw unsupported;
+				}
+			}
+		}
+
+		private void compileGroup() throws UnsupportedExpressionException {
+			compileSum();
+			if (!skip(')')) {
+				throw unsupported;
+			}
+		}
+
+		private void compileNumber() throws UnsupportedExpressionException {
+			final int start = position;
+			while (position < expression.length() && (isDigit(expression.charAt(position)) || expression.charAt(position) == '.')) {
+				position++;
+			}
+
+			if (skip('E')) {
+				skip('-');
+				while (position < expression.length() && isDigit(expression.charAt(position))) {
+					position++;
+				}
+			}
+
+			try {
+				emit(CONSTANT, Double.parseDouble(expression.substring(start, position)));
+			} catch (NumberFormatException e) {
+				throw unsupported;
+			}
+		}
+
+		private static int getFunctionInstruction(@Nonnull String name) throws UnsupportedExpressionException {
+			for (int i = 0; i < FUNCTIONS.length; i++) {
+				if (FUNCTIONS[i].equals(name)) {
+					return FUNCTION_INSTRUCTIONS[i];
+				}
+			}
+			throw unsupported;
+		}
+
+		private void emit(int instruction, double operand) {
+			if (size == instructions.length) {
+				instructions = copyOf(instructions, 2 * size);
+				operands = copyOf(operands, 2 * size);
+			}
+			instructions[size] = instruction;
+			operands[size] = operand;
+			size++;
+
+			switch (instruction) {
+				case CONSTANT:
+				case X:
+				case Y:
+					depth++;
+					maxDepth = Math.max(maxDepth, depth);
+					break;
+				case ADD:
+				case SUBTRACT:
+				case MULTIPLY:
+				case DIVIDE:
+				case POWER:
+					depth--;
+					break;
+			}
+		}
+
+		private boolean skip(char ch) {
+			if (position < expression.length() && expression.charAt(position) == ch) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		private static boolean isDigit(char ch) {
+			return ch >= '0' && ch <= '9';
+		}
+
+		private static boolean isNamePart(char ch) {
+			return Character.isLetterOrDigit(ch) || ch == '_';
+		}
+	}
+
+	private static final class UnsupportedExpressionException extends Exception {
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+}
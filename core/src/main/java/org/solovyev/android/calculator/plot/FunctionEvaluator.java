@@ -22,6 +22,8 @@
 
 package org.solovyev.android.calculator.plot;
 
+import javax.annotation.Nonnull;
+
 /**
  * User: serso
  * Date: 1/18/13
@@ -35,4 +37,14 @@ interface FunctionEvaluator {
 	double eval(double x);
 
 	double eval(double x, double y);
+
+	/**
+	 * Batch variant of {@link #eval(double)}: out[i] = eval(xs[i])
+	 */
+	void eval(@Nonnull double[] xs, @Nonnull double[] out);
+
+	/**
+	 * Batch variant of {@link #eval(double, double)} over the grid: out[i * ys.length + j] = eval(xs[i], ys[j])
+	 */
+	void eval(@Nonnull double[] xs, @Nonnull double[] ys, @Nonnull double[] out);
 }
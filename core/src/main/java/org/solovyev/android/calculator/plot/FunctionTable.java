@@ -0,0 +1,266 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.plot;
+
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+import jscl.math.Generic;
+import jscl.math.function.Constant;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.CalculatorUtils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Table of the values of the function of one variable over the range [from, to] with the fixed step.
+ * <p/>
+ * Rows are produced lazily: table is split into chunks which are evaluated in parallel (each chunk is evaluated in one
+ * batch, see {@link XyFunction#eval(double[], double[])}) while already evaluated chunks are passed to the consumer in
+ * order. Only a limited number of chunks is kept in memory at any time => table of any size is streamed in constant
+ * memory.
+ */
+public final class FunctionTable {
+
+	public static final int CHUNK_SIZE_DEFAULT = 1024;
+
+	// number of chunks evaluated or waiting for the consumer at the same time
+	private static final int MAX_CHUNKS_IN_PROGRESS = 2 * Runtime.getRuntime().availableProcessors();
+
+	@Nonnull
+	private final XyFunction function;
+
+	private final double from;
+
+	private final double step;
+
+	private final long rowsCount;
+
+	private final int chunkSize;
+
+	private FunctionTable(@Nonnull XyFunction function, double from, double step, long rowsCount, int chunkSize) {
+		this.function = function;
+		this.from = from;
+		this.step = step;
+		this.rowsCount = rowsCount;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param expression expression of the function, its only variable is found by
+	 *                   {@link CalculatorUtils#getNotSystemConstants(Generic)}
+	 * @param from       first value of the variable
+	 * @param to         last value of the variable (inclusive)
+	 * @param step       step of the variable
+	 * @return table of the real values of the function
+	 * @throws IllegalArgumentException if range or step is not valid or if expression has more than one variable
+	 */
+	@Nonnull
+	public static FunctionTable newInstance(@Nonnull Generic expression, double from, double to, double step) {
+		final List<Constant> variables = new ArrayList<Constant>(CalculatorUtils.getNotSystemConstants(expression));
+		if (variables.size() > 1) {
+			throw new IllegalArgumentException("Function of more than one variable can't be tabulated: " + expression);
+		}
+
+		return newInstance(expression, variables.isEmpty() ? null : variables.get(0), from, to, step, CHUNK_SIZE_DEFAULT);
+	}
+
+	@Nonnull
+	public static FunctionTable newInstance(@Nonnull Generic expression,
+											@Nullable Constant variable,
+											double from,
+											double to,
+											double step,
+											int chunkSize) {
+		if (Double.isNaN(from) || Double.isInfinite(from) || Double.isNaN(to) || Double.isInfinite(to) || from > to) {
+			throw new IllegalArgumentException("Range is not valid: [" + from + ", " + to + "]");
+		}
+
+		if (!(step > 0) || Double.isInfinite(step)) {
+			throw new IllegalArgumentException("Step must be positive: " + step);
+		}
+
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+
+		// NOTE: small tolerance for the last row: [0, 1] with step 0.1 has 11 rows
+		final double rows = Math.floor((to - from) / step + 1E-9) + 1;
+		if (rows >= Long.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many rows: " + rows);
+		}
+
+		return new FunctionTable(new XyFunction(expression, variable, null, false), from, step, (long) rows, chunkSize);
+	}
+
+	@Nonnull
+	public XyFunction getFunction() {
+		return function;
+	}
+
+	public long getRowsCount() {
+		return rowsCount;
+	}
+
+	/**
+	 * @return value of the variable in the <var>row</var> (computed from the row number => errors are not accumulated)
+	 */
+	public double getX(long row) {
+		return from + row * step;
+	}
+
+	/**
+	 * Method passes all rows of the table in order to <var>consumer</var> (in the calling thread), chunks of the table
+	 * are evaluated on <var>executor</var>
+	 */
+	public void stream(@Nonnull Executor executor, @Nonnull RowConsumer consumer) throws IOException, InterruptedException {
+		final LinkedList<Future<Chunk>> chunks = new LinkedList<Future<Chunk>>();
+
+		long nextChunkStart = 0;
+		try {
+			while (nextChunkStart < rowsCount || !chunks.isEmpty()) {
+				while (nextChunkStart < rowsCount && chunks.size() < MAX_CHUNKS_IN_PROGRESS) {
+					final long start = nextChunkStart;
+					final int size = (int) Math.min(chunkSize, rowsCount - start);
+					final ListenableFutureTask<Chunk> task = ListenableFutureTask.create(new Callable<Chunk>() {
+						@Override
+						public Chunk call() {
+							return evalChunk(start, size);
+						}
+					});
+					chunks.addLast(task);
+					executor.execute(task);
+					nextChunkStart += size;
+				}
+
+				final Chunk chunk = getChunk(chunks.removeFirst());
+				for (int i = 0; i < chunk.size; i++) {
+					consumer.onRow(chunk.start + i, chunk.xs[i], chunk.ys[i]);
+				}
+			}
+		} finally {
+			// consumer might fail => nobody needs the rest of the table
+			for (Future<Chunk> chunk : chunks) {
+				chunk.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Method writes the table as CSV: header (variable and function) followed by one line per row
+	 */
+	public void writeCsv(@Nonnull Executor executor, @Nonnull final Writer writer) throws IOException, InterruptedException {
+		writer.write(toCsvValue(function.getXVariableName() == null ? "x" : function.getXVariableName()));
+		writer.write(',');
+		writer.write(toCsvValue(function.getExpressionString()));
+		writer.write('\n');
+
+		stream(executor, new RowConsumer() {
+			@Override
+			public void onRow(long row, double x, double y) throws IOException {
+				writer.write(Double.toString(x));
+				writer.write(',');
+				writer.write(Double.toString(y));
+				writer.write('\n');
+			}
+		});
+
+		writer.flush();
+	}
+
+	@Nonnull
+	private static String toCsvValue(@Nonnull String value) {
+		if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+			return '"' + value.replace("\"", "\"\"") + '"';
+		} else {
+			return value;
+		}
+	}
+
+	@Nonnull
+	private Chunk evalChunk(long start, int size) {
+		final Chunk chunk = new Chunk(start, size);
+		for (int i = 0; i < size; i++) {
+			chunk.xs[i] = getX(start + i);
+		}
+
+		if (function.getArity() == 0) {
+			Arrays.fill(chunk.ys, function.eval());
+		} else {
+			function.eval(chunk.xs, chunk.ys);
+		}
+		return chunk;
+	}
+
+	@Nonnull
+	private static Chunk getChunk(@Nonnull Future<Chunk> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	public static interface RowConsumer {
+
+		void onRow(long row, double x, double y) throws IOException;
+	}
+
+	private static final class Chunk {
+
+		private final long start;
+
+		private final int size;
+
+		@Nonnull
+		private final double[] xs;
+
+		@Nonnull
+		private final double[] ys;
+
+		private Chunk(long start, int size) {
+			this.start = start;
+			this.size = size;
+			this.xs = new double[size];
+			this.ys = new double[size];
+		}
+	}
+}
@@ -1,258 +1,391 @@
-/*
- * Copyright 2013 serso aka se.solovyev
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *    http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- *
- * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
- * Contact details
- *
- * Email: se.solovyev@gmail.com
- * Site:  http://se.solovyev.org
- */
-
-package org.solovyev.android.calculator.plot;
-
-import jscl.math.Generic;
-import jscl.math.function.Constant;
-
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-
-import org.solovyev.common.text.Strings;
-
-public class XyFunction implements FunctionEvaluator {
-
-	/*
-	**********************************************************************
-	*
-	*                           FIELDS
-	*
-	**********************************************************************
-	*/
-
-	@Nonnull
-	private final String id;
-
-	@Nonnull
-	private Generic expression;
-
-	@Nonnull
-	private String expressionString;
-
-	@Nullable
-	private Constant xVariable;
-
-	@Nullable
-	private String xVariableName;
-
-	@Nullable
-	private Constant yVariable;
-
-	private boolean imag;
-
-	@Nullable
-	private String yVariableName;
-
-	private int arity;
-
-	@Nonnull
-	private final FunctionEvaluator evaluator;
-
-	public XyFunction(@Nonnull Generic expression,
-					  @Nullable Constant xVariable,
-					  @Nullable Constant yVariable,
-					  boolean imag) {
-		this.expression = expression;
-		this.xVariable = xVariable;
-		this.yVariable = yVariable;
-		this.imag = imag;
-
-		if (imag) {
-			this.expressionString = "Im(" + expression.toString() + ")";
-			this.evaluator = new ImaginaryEvaluator(this);
-		} else {
-			this.expressionString = expression.toString();
-			this.evaluator = new RealEvaluator(this);
-		}
-		this.xVariableName = xVariable == null ? null : xVariable.getName();
-		this.yVariableName = yVariable == null ? null : yVariable.getName();
-
-		this.arity = 2;
-		if (this.yVariableName == null) {
-			this.arity--;
-		}
-		if (this.xVariableName == null) {
-			this.arity--;
-		}
-
-		this.id = this.expressionString + "_" + Strings.getNotEmpty(this.xVariableName, "") + "_" + Strings.getNotEmpty(this.yVariableName, "");
-
-	}
-
-	public boolean isImag() {
-		return imag;
-	}
-
-	@Override
-	public int getArity() {
-		return arity;
-	}
-
-	@Override
-	public double eval() {
-		return evaluator.eval();
-	}
-
-	@Override
-	public double eval(double x) {
-		return evaluator.eval(x);
-	}
-
-	@Override
-	public double eval(double x, double y) {
-		return evaluator.eval(x, y);
-	}
-
-	@Nonnull
-	public Generic getExpression() {
-		return expression;
-	}
-
-	@Nullable
-	public Constant getXVariable() {
-		return xVariable;
-	}
-
-	@Nullable
-	public Constant getYVariable() {
-		return yVariable;
-	}
-
-	@Nonnull
-	public String getExpressionString() {
-		return expressionString;
-	}
-
-	@Nonnull
-	public String getId() {
-		return id;
-	}
-
-	@Nullable
-	public String getXVariableName() {
-		return xVariableName;
-	}
-
-	@Nullable
-	public String getYVariableName() {
-		return yVariableName;
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (!(o instanceof XyFunction)) return false;
-
-		final XyFunction that = (XyFunction) o;
-
-		if (!id.equals(that.id)) return false;
-
-		return true;
-	}
-
-	@Override
-	public int hashCode() {
-		return id.hashCode();
-	}
-
-	/*
-	**********************************************************************
-	*
-	*                           STATIC
-	*
-	**********************************************************************
-	*/
-
-	private static abstract class AbstractEvaluator implements FunctionEvaluator {
-
-		@Nonnull
-		protected final XyFunction xyFunction;
-
-		@Nullable
-		private Double constant = null;
-
-		public AbstractEvaluator(@Nonnull XyFunction xyFunction) {
-			this.xyFunction = xyFunction;
-		}
-
-		@Override
-		public final double eval() {
-			if (constant == null) {
-				constant = eval0();
-			}
-			return constant;
-		}
-
-		protected abstract double eval0();
-
-		@Override
-		public final int getArity() {
-			return xyFunction.getArity();
-		}
-
-	}
-
-	private static class RealEvaluator extends AbstractEvaluator {
-
-		private RealEvaluator(@Nonnull XyFunction xyFunction) {
-			super(xyFunction);
-		}
-
-		@Override
-		public double eval0() {
-			return PlotUtils.calculatorExpression(xyFunction.expression).realPart();
-		}
-
-		@Override
-		public double eval(double x) {
-			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x).realPart();
-		}
-
-		@Override
-		public double eval(double x, double y) {
-			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x, xyFunction.yVariable, y).realPart();
-		}
-	}
-
-	private static class ImaginaryEvaluator extends AbstractEvaluator {
-
-		private ImaginaryEvaluator(@Nonnull XyFunction xyFunction) {
-			super(xyFunction);
-		}
-
-		@Override
-		public double eval0() {
-			return PlotUtils.calculatorExpression(xyFunction.expression).imaginaryPart();
-		}
-
-		@Override
-		public double eval(double x) {
-			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x).imaginaryPart();
-		}
-
-		@Override
-		public double eval(double x, double y) {
-			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x, xyFunction.yVariable, y).imaginaryPart();
-		}
-	}
-}
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.plot;
+
+import jscl.AngleUnit;
+import jscl.math.Generic;
+import jscl.math.function.Constant;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.solovyev.android.calculator.Locator;
+import org.solovyev.common.text.Strings;
+
+public class XyFunction implements FunctionEvaluator {
+
+	/*
+	**********************************************************************
+	*
+	*                           FIELDS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private final String id;
+
+	@Nonnull
+	private Generic expression;
+
+	@Nonnull
+	private String expressionString;
+
+	@Nullable
+	private Constant xVariable;
+
+	@Nullable
+	private String xVariableName;
+
+	@Nullable
+	private Constant yVariable;
+
+	private boolean imag;
+
+	@Nullable
+	private String yVariableName;
+
+	private int arity;
+
+	@Nonnull
+	private final FunctionEvaluator evaluator;
+
+	public XyFunction(@Nonnull Generic expression,
+					  @Nullable Constant xVariable,
+					  @Nullable Constant yVariable,
+					  boolean imag) {
+		this.expression = expression;
+		this.xVariable = xVariable;
+		this.yVariable = yVariable;
+		this.imag = imag;
+
+		if (imag) {
+			this.expressionString = "Im(" + expression.toString() + ")";
+			this.evaluator = new ImaginaryEvaluator(this);
+		} else {
+			this.expressionString = expression.toString();
+			this.evaluator = new RealEvaluator(this);
+		}
+		this.xVariableName = xVariable == null ? null : xVariable.getName();
+		this.yVariableName = yVariable == null ? null : yVariable.getName();
+
+		this.arity = 2;
+		if (this.yVariableName == null) {
+			this.arity--;
+		}
+		if (this.xVariableName == null) {
+			this.arity--;
+		}
+
+		this.id = this.expressionString + "_" + Strings.getNotEmpty(this.xVariableName, "") + "_" + Strings.getNotEmpty(this.yVariableName, "");
+
+	}
+
+	public boolean isImag() {
+		return imag;
+	}
+
+	@Override
+	public int getArity() {
+		return arity;
+	}
+
+	@Override
+	public double eval() {
+		return evaluator.eval();
+	}
+
+	@Override
+	public double eval(double x) {
+		return evaluator.eval(x);
+	}
+
+	@Override
+	public double eval(double x, double y) {
+		return evaluator.eval(x, y);
+	}
+
+	@Override
+	public void eval(@Nonnull double[] xs, @Nonnull double[] out) {
+		evaluator.eval(xs, out);
+	}
+
+	@Override
+	public void eval(@Nonnull double[] xs, @Nonnull double[] ys, @Nonnull double[] out) {
+		evaluator.eval(xs, ys, out);
+	}
+
+	@Nonnull
+	public Generic getExpression() {
+		return expression;
+	}
+
+	@Nullable
+	public Constant getXVariable() {
+		return xVariable;
+	}
+
+	@Nullable
+	public Constant getYVariable() {
+		return yVariable;
+	}
+
+	@Nonnull
+	public String getExpressionString() {
+		return expressionString;
+	}
+
+	@Nonnull
+	public String getId() {
+		return id;
+	}
+
+	@Nullable
+	public String getXVariableName() {
+		return xVariableName;
+	}
+
+	@Nullable
+	public String getYVariableName() {
+		return yVariableName;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof XyFunction)) return false;
+
+		final XyFunction that = (XyFunction) o;
+
+		if (!id.equals(that.id)) return false;
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return id.hashCode();
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           STATIC
+	*
+	**********************************************************************
+	*/
+
+	private static abstract class AbstractEvaluator implements FunctionEvaluator {
+
+		@Nonnull
+		protected final XyFunction xyFunction;
+
+		@Nullable
+		private Double constant = null;
+
+		public AbstractEvaluator(@Nonnull XyFunction xyFunction) {
+			this.xyFunction = xyFunction;
+		}
+
+		@Override
+		public final double eval() {
+			if (constant == null) {
+				constant = eval0();
+			}
+			return constant;
+		}
+
+		protected abstract double eval0();
+
+		@Override
+		public final int getArity() {
+			return xyFunction.getArity();
+		}
+
+		@Override
+		public void eval(@Nonnull double[] xs, @Nonnull double[] out) {
+			for (int i = 0; i < xs.length; i++) {
+				out[i] = eval(xs[i]);
+			}
+		}
+
+		@Override
+		public void eval(@Nonnull double[] xs, @Nonnull double[] ys, @Nonnull double[] out) {
+			for (int i = 0; i < xs.length; i++) {
+				for (int j = 0; j < ys.length; j++) {
+					out[i * ys.length + j] = eval(xs[i], ys[j]);
+				}
+			}
+		}
+	}
+
+	private static class RealEvaluator extends AbstractEvaluator {
+
+		// points on which compiled expression is compared with jscl (from both small and big values as function might be
+		// defined only on some part of the axis)
+		private static final double[] SAMPLES = {-2.3, -0.7, 0.3, 1.9, 7.1, -53.9, 0.9, 13.3, 97.7};
+
+		// guarded by this: compiled expression (null if expression can't be compiled) and angle units it was compiled for
+		@Nullable
+		private CompiledExpression compiled;
+
+		@Nullable
+		private AngleUnit compiledAngleUnits;
+
+		private RealEvaluator(@Nonnull XyFunction xyFunction) {
+			super(xyFunction);
+		}
+
+		@Override
+		public void eval(@Nonnull double[] xs, @Nonnull double[] out) {
+			final CompiledExpression compiled = getArity() == 1 ? getCompiledExpression() : null;
+			if (compiled != null) {
+				compiled.eval(xs, 0, null, 0, xs.length, out, 0);
+
+				// points where compiled expression fails are evaluated by jscl
+				for (int i = 0; i < xs.length; i++) {
+					if (isNotFinite(out[i])) {
+						out[i] = eval(xs[i]);
+					}
+				}
+			} else {
+				super.eval(xs, out);
+			}
+		}
+
+		@Override
+		public void eval(@Nonnull double[] xs, @Nonnull double[] ys, @Nonnull double[] out) {
+			final CompiledExpression compiled = getArity() == 2 ? getCompiledExpression() : null;
+			if (compiled != null) {
+				for (int i = 0; i < xs.length; i++) {
+					compiled.eval(null, xs[i], ys, 0, ys.length, out, i * ys.length);
+				}
+
+				// points where compiled expression fails are evaluated by jscl
+				for (int i = 0; i < xs.length; i++) {
+					for (int j = 0; j < ys.length; j++) {
+						final int k = i * ys.length + j;
+						if (isNotFinite(out[k])) {
+							out[k] = eval(xs[i], ys[j]);
+						}
+					}
+				}
+			} else {
+				super.eval(xs, ys, out);
+			}
+		}
+
+		@Nullable
+		private synchronized CompiledExpression getCompiledExpression() {
+			final AngleUnit angleUnits = Locator.getInstance().getEngine().getAngleUnits();
+			if (angleUnits != compiledAngleUnits) {
+				compiledAngleUnits = angleUnits;
+				compiled = compile(angleUnits);
+			}
+			return compiled;
+		}
+
+		@Nullable
+		private CompiledExpression compile(@Nonnull AngleUnit angleUnits) {
+			if (angleUnits != AngleUnit.deg && angleUnits != AngleUnit.rad) {
+				return null;
+			}
+
+			if (xyFunction.xVariableName == null) {
+				return null;
+			}
+
+			final CompiledExpression result = CompiledExpression.compile(xyFunction.expressionString, xyFunction.xVariableName, xyFunction.yVariableName, angleUnits == AngleUnit.deg);
+			if (result != null && isSameAsJscl(result)) {
+				return result;
+			} else {
+				return null;
+			}
+		}
+
+		/**
+		 * Expression printed by jscl is compiled by simplified grammar => results are compared with jscl on some points.
+		 * Compiled expression is used only if it agrees with jscl on at least one point where it is finite (points where
+		 * it is not finite are anyway evaluated by jscl).
+		 */
+		private boolean isSameAsJscl(@Nonnull CompiledExpression compiled) {
+			final double[] values = new double[1];
+			boolean compared = false;
+			for (int i = 0; i < SAMPLES.length; i++) {
+				final double x = SAMPLES[i];
+				final double y = SAMPLES[SAMPLES.length - 1 - i];
+				compiled.eval(null, x, null, y, 1, values, 0);
+
+				if (!isNotFinite(values[0])) {
+					final double expected = getArity() == 2 ? eval(x, y) : eval(x);
+					if (!(Math.abs(values[0] - expected) <= 1E-9 * Math.max(1, Math.abs(expected)))) {
+						return false;
+					}
+					compared = true;
+				}
+			}
+			return compared;
+		}
+
+		private static boolean isNotFinite(double value) {
+			return Double.isNaN(value) || Double.isInfinite(value);
+		}
+
+		@Override
+		public double eval0() {
+			return PlotUtils.calculatorExpression(xyFunction.expression).realPart();
+		}
+
+		@Override
+		public double eval(double x) {
+			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x).realPart();
+		}
+
+		@Override
+		public double eval(double x, double y) {
+			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x, xyFunction.yVariable, y).realPart();
+		}
+	}
+
+	private static class ImaginaryEvaluator extends AbstractEvaluator {
+
+		private ImaginaryEvaluator(@Nonnull XyFunction xyFunction) {
+			super(xyFunction);
+		}
+
+		@Override
+		public double eval0() {
+			return PlotUtils.calculatorExpression(xyFunction.expression).imaginaryPart();
+		}
+
+		@Override
+		public double eval(double x) {
+			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x).imaginaryPart();
+		}
+
+		@Override
+		public double eval(double x, double y) {
+			return PlotUtils.calculatorExpression(xyFunction.expression, xyFunction.xVariable, x, xyFunction.yVariable, y).imaginaryPart();
+		}
+	}
+}
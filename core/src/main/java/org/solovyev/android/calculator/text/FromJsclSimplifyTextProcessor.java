@@ -22,18 +22,21 @@
 
 package org.solovyev.android.calculator.text;
 
+import jscl.NumeralBase;
 import jscl.math.Generic;
+import jscl.math.function.Function;
+import jscl.math.function.IConstant;
+import jscl.math.operator.Operator;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.solovyev.android.calculator.CalculatorEngine;
 import org.solovyev.android.calculator.CalculatorParseException;
 import org.solovyev.android.calculator.Locator;
+import org.solovyev.android.calculator.MathRegistrySnapshot;
 import org.solovyev.android.calculator.math.MathType;
 
-import java.util.Arrays;
-import java.util.List;
-
 /**
  * User: serso
  * Date: 10/20/11
@@ -56,55 +59,39 @@ public class FromJsclSimplifyTextProcessor implements TextProcessor<String, Gene
 		return removeMultiplicationSigns(s);
 	}
 
+	/**
+	 * Method copies <var>s</var> replacing each '*' with user-facing multiplication sign or removing it. Decision is made
+	 * from the tokens around '*' only (one pass, registries are consulted only for the names adjacent to '*'):
+	 * sign is omitted after closing bracket, before opening bracket and near functions and constants.
+	 */
 	@Nonnull
-	private String removeMultiplicationSigns(String s) {
-		final StringBuilder sb = new StringBuilder();
-
-		MathType.Result mathTypeBefore;
-		MathType.Result mathType = null;
-		MathType.Result mathTypeAfter = null;
-
-		for (int i = 0; i < s.length(); i++) {
-			mathTypeBefore = mathType;
-			if (mathTypeAfter == null) {
-				mathType = MathType.getType(s, i, false);
-			} else {
-				mathType = mathTypeAfter;
-			}
-
-			char ch = s.charAt(i);
-			if (ch == '*') {
-				if (i + 1 < s.length()) {
-					mathTypeAfter = MathType.getType(s, i + 1, false);
-				} else {
-					mathTypeAfter = null;
-				}
+	private String removeMultiplicationSigns(@Nonnull String s) {
+		int next = s.indexOf('*');
+		if (next < 0) {
+			return s;
+		}
 
-				if (needMultiplicationSign(mathTypeBefore == null ? null : mathTypeBefore.getMathType(), mathTypeAfter == null ? null : mathTypeAfter.getMathType())) {
-					sb.append(Locator.getInstance().getEngine().getMultiplicationSign());
-				}
+		final Tokens tokens = new Tokens(s);
+		final StringBuilder sb = new StringBuilder(s.length());
 
-			} else {
-				if (mathType.getMathType() == MathType.constant || mathType.getMathType() == MathType.function || mathType.getMathType() == MathType.operator) {
-					sb.append(mathType.getMatch());
-					i += mathType.getMatch().length() - 1;
-				} else {
-					sb.append(ch);
-				}
-				mathTypeAfter = null;
+		int copied = 0;
+		while (next >= 0) {
+			sb.append(s, copied, next);
+			if (needMultiplicationSign(tokens.getTypeBefore(next), tokens.getTypeAfter(next))) {
+				sb.append(tokens.getMultiplicationSign());
 			}
-
+			copied = next + 1;
+			next = s.indexOf('*', copied);
 		}
+		sb.append(s, copied, s.length());
 
 		return sb.toString();
 	}
 
-	private final List<MathType> mathTypes = Arrays.asList(MathType.function, MathType.constant);
-
 	private boolean needMultiplicationSign(@Nullable MathType mathTypeBefore, @Nullable MathType mathTypeAfter) {
 		if (mathTypeBefore == null || mathTypeAfter == null) {
 			return true;
-		} else if (mathTypes.contains(mathTypeBefore) || mathTypes.contains(mathTypeAfter)) {
+		} else if (isFunctionOrConstant(mathTypeBefore) || isFunctionOrConstant(mathTypeAfter)) {
 			return false;
 		} else if (mathTypeBefore == MathType.close_group_symbol) {
 			return false;
@@ -115,4 +102,184 @@ public class FromJsclSimplifyTextProcessor implements TextProcessor<String, Gene
 		return true;
 	}
 
+	private static boolean isFunctionOrConstant(@Nonnull MathType mathType) {
+		return mathType == MathType.function || mathType == MathType.constant;
+	}
+
+	/**
+	 * Classifies tokens adjacent to '*' in jscl output: brackets, numbers and names (maximal runs of non-structural
+	 * characters). Engine state is read lazily, i.e. only if there is a name to classify.
+	 */
+	private static final class Tokens {
+
+		@Nonnull
+		private final String s;
+
+		@Nullable
+		private CalculatorEngine engine;
+
+		@Nullable
+		private MathRegistrySnapshot<IConstant> vars;
+
+		@Nullable
+		private MathRegistrySnapshot<Function> functions;
+
+		@Nullable
+		private MathRegistrySnapshot<Operator> operators;
+
+		private Tokens(@Nonnull String s) {
+			this.s = s;
+		}
+
+		@Nonnull
+		private CalculatorEngine getEngine() {
+			if (engine == null) {
+				engine = Locator.getInstance().getEngine();
+			}
+			return engine;
+		}
+
+		@Nonnull
+		private String getMultiplicationSign() {
+			return getEngine().getMultiplicationSign();
+		}
+
+		/**
+		 * @return type of the token which ends right before <var>position</var>
+		 */
+		@Nullable
+		private MathType getTypeBefore(int position) {
+			if (position == 0) {
+				return null;
+			}
+
+			final char ch = s.charAt(position - 1);
+			if (isCloseBracket(ch)) {
+				return MathType.close_group_symbol;
+			} else if (isOpenBracket(ch)) {
+				return MathType.open_group_symbol;
+			} else if (isStructural(ch)) {
+				return MathType.text;
+			}
+
+			int start = position - 1;
+			while (start > 0 && !isStructural(s.charAt(start - 1))) {
+				start--;
+			}
+			return getNameType(start, position);
+		}
+
+		/**
+		 * @return type of the token which starts right after <var>position</var>
+		 */
+		@Nullable
+		private MathType getTypeAfter(int position) {
+			if (position == s.length() - 1) {
+				return null;
+			}
+
+			final char ch = s.charAt(position + 1);
+			if (isCloseBracket(ch)) {
+				return MathType.close_group_symbol;
+			} else if (isOpenBracket(ch)) {
+				return MathType.open_group_symbol;
+			} else if (isStructural(ch)) {
+				return MathType.text;
+			}
+
+			int end = position + 2;
+			while (end < s.length() && !isStructural(s.charAt(end))) {
+				end++;
+			}
+			return getNameType(position + 1, end);
+		}
+
+		@Nonnull
+		private MathType getNameType(int start, int end) {
+			final char first = s.charAt(start);
+			if (Character.isDigit(first) || first == '.') {
+				return MathType.digit;
+			}
+
+			final String name = s.substring(start, end);
+			if (getFunctions().contains(name)) {
+				return MathType.function;
+			} else if (getOperators().contains(name)) {
+				return MathType.operator;
+			} else if (getVars().contains(name)) {
+				return MathType.constant;
+			} else if (getEngine().getNumeralBase() == NumeralBase.hex && isHexNumber(name)) {
+				return MathType.digit;
+			} else {
+				return MathType.text;
+			}
+		}
+
+		@Nonnull
+		private MathRegistrySnapshot<IConstant> getVars() {
+			if (vars == null) {
+				vars = getEngine().getVarsRegistry().getSnapshot();
+			}
+			return vars;
+		}
+
+		@Nonnull
+		private MathRegistrySnapshot<Function> getFunctions() {
+			if (functions == null) {
+				functions = getEngine().getFunctionsRegistry().getSnapshot();
+			}
+			return functions;
+		}
+
+		@Nonnull
+		private MathRegistrySnapshot<Operator> getOperators() {
+			if (operators == null) {
+				operators = getEngine().getOperatorsRegistry().getSnapshot();
+			}
+			return operators;
+		}
+
+		private static boolean isHexNumber(@Nonnull String name) {
+			for (int i = 0; i < name.length(); i++) {
+				if (Character.digit(name.charAt(i), 16) < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isOpenBracket(char ch) {
+			return ch == '(' || ch == '[' || ch == '{';
+		}
+
+		private static boolean isCloseBracket(char ch) {
+			return ch == ')' || ch == ']' || ch == '}';
+		}
+
+		/**
+		 * @return true if <var>ch</var> can't be a part of a number or a name
+		 */
+		private static boolean isStructural(char ch) {
+			switch (ch) {
+				case '+':
+				case '-':
+				case '*':
+				case '/':
+				case '^':
+				case '(':
+				case ')':
+				case '[':
+				case ']':
+				case '{':
+				case '}':
+				case ',':
+				case '=':
+				case '!':
+				case '%':
+					return true;
+				default:
+					return Character.isWhitespace(ch);
+			}
+		}
+	}
 }
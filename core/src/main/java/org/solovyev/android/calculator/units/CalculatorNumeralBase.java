@@ -31,8 +31,6 @@ import org.solovyev.common.units.UnitConverter;
 import org.solovyev.common.units.UnitImpl;
 import org.solovyev.common.units.UnitType;
 
-import java.math.BigInteger;
-
 /**
  * User: Solovyev_S
  * Date: 24.09.12
@@ -41,19 +39,22 @@ import java.math.BigInteger;
 public enum CalculatorNumeralBase implements UnitType<String> {
 
 
-	bin(NumeralBase.bin),
+	bin(NumeralBase.bin, 2),
 
-	oct(NumeralBase.oct),
+	oct(NumeralBase.oct, 8),
 
-	dec(NumeralBase.dec),
+	dec(NumeralBase.dec, 10),
 
-	hex(NumeralBase.hex);
+	hex(NumeralBase.hex, 16);
 
 	@Nonnull
 	private final NumeralBase numeralBase;
 
-	private CalculatorNumeralBase(@Nonnull NumeralBase numeralBase) {
+	private final int radix;
+
+	private CalculatorNumeralBase(@Nonnull NumeralBase numeralBase, int radix) {
 		this.numeralBase = numeralBase;
+		this.radix = radix;
 	}
 
 	@Nonnull
@@ -97,13 +98,11 @@ public enum CalculatorNumeralBase implements UnitType<String> {
 				throw new IllegalArgumentException("Types are not supported!");
 			}
 
-			final CalculatorNumeralBase fromTypeAndroid = (CalculatorNumeralBase) from.getUnitType();
-			final NumeralBase fromNumeralBase = fromTypeAndroid.numeralBase;
-			final NumeralBase toNumeralBase = ((CalculatorNumeralBase) toType).numeralBase;
+			final int fromRadix = ((CalculatorNumeralBase) from.getUnitType()).radix;
+			final int toRadix = ((CalculatorNumeralBase) toType).radix;
 			final String fromValue = (String) from.getValue();
 
-			final BigInteger decBigInteger = fromNumeralBase.toBigInteger(fromValue);
-			return UnitImpl.newInstance(toNumeralBase.toString(decBigInteger), toType);
+			return UnitImpl.newInstance(NumeralBaseConverter.convert(fromValue, fromRadix, toRadix), toType);
 		}
 	}
 
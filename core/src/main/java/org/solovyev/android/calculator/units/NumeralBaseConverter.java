@@ -0,0 +1,499 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.units;
+
+import javax.annotation.Nonnull;
+
+import org.solovyev.android.calculator.math.MathType;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversion of the numbers between numeral bases of any length.
+ * <p/>
+ * Conversion between power-of-two bases (bin, oct, hex) is done by regrouping bits of the digits (linear time). Other
+ * conversions use divide-and-conquer algorithms: number is split in halves by the powers of the radix, so the cost is
+ * determined by the cost of the multiplication/division of big integers instead of being quadratic in number of digits.
+ * <p/>
+ * Supported format: [-]digits[.digits], grouping separators are ignored. Fractional part is converted exactly if the
+ * fraction is finite in the target numeral base, otherwise it is rounded to (at least) the same precision as the
+ * fractional part of the source but not less than {@link #MIN_FRACTION_PRECISION} decimal digits.
+ */
+public final class NumeralBaseConverter {
+
+	// max number of digits processed without big integers in any radix <= 16 (16^15 < 2^63)
+	private static final int MAX_SIMPLE_DIGITS = 15;
+
+	private static final int MAX_SIMPLE_BITS = 62;
+
+	// precision (in decimal digits) of non-terminating fractions: not less than max precision of the shown results
+	static final int MIN_FRACTION_PRECISION = 16;
+
+	private static final char DOT = '.';
+
+	private static final char MINUS = '-';
+
+	private static final char UNICODE_MINUS = '−';
+
+	private NumeralBaseConverter() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * @param value     number in numeral base with <var>fromRadix</var>
+	 * @param fromRadix radix of <var>value</var>
+	 * @param toRadix   radix of the result
+	 * @return number in numeral base with <var>toRadix</var> (upper case digits)
+	 * @throws NumberFormatException if <var>value</var> is not a number in the source numeral base
+	 */
+	@Nonnull
+	public static String convert(@Nonnull CharSequence value, int fromRadix, int toRadix) throws NumberFormatException {
+		checkRadix(fromRadix);
+		checkRadix(toRadix);
+
+		final Number number = Number.parse(value, fromRadix);
+
+		final StringBuilder result = new StringBuilder(value.length() * 4 + 2);
+		if (number.negative) {
+			result.append(MINUS);
+		}
+
+		final int fromBits = getBitsPerDigit(fromRadix);
+		final int toBits = getBitsPerDigit(toRadix);
+		if (fromBits > 0 && toBits > 0) {
+			appendDigits(result, stripLeadingZeros(regroupInteger(number.integerPart, fromBits, toBits)));
+			final int[] fractionalPart = stripTrailingZeros(regroupFraction(number.fractionalPart, fromBits, toBits));
+			if (fractionalPart.length > 0) {
+				result.append(DOT);
+				appendDigits(result, fractionalPart);
+			}
+		} else {
+			final Powers powers = new Powers();
+			appendBigInteger(result, toBigInteger(number.integerPart, fromRadix, powers), toRadix, -1, powers);
+			appendFraction(result, number.fractionalPart, fromRadix, toRadix, powers);
+		}
+
+		if (number.negative && isZero(result, 1)) {
+			// "-0" => "0"
+			result.deleteCharAt(0);
+		}
+
+		return result.toString();
+	}
+
+	private static void checkRadix(int radix) {
+		if (radix < 2 || radix > 16) {
+			throw new IllegalArgumentException("Radix " + radix + " is not supported!");
+		}
+	}
+
+	/**
+	 * @return number of bits in one digit if <var>radix</var> is a power of two, 0 otherwise
+	 */
+	private static int getBitsPerDigit(int radix) {
+		return Integer.bitCount(radix) == 1 ? Integer.numberOfTrailingZeros(radix) : 0;
+	}
+
+	private static boolean isZero(@Nonnull CharSequence s, int from) {
+		for (int i = from; i < s.length(); i++) {
+			final char ch = s.charAt(i);
+			if (ch != '0' && ch != DOT) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           POWER-OF-TWO BASES
+	*
+	**********************************************************************
+	*/
+
+	/**
+	 * @param digits   integer digits (most significant first), each having <var>fromBits</var> bits
+	 * @return the same integer as digits with <var>toBits</var> bits each (most significant first, might have leading zeros)
+	 */
+	@Nonnull
+	private static int[] regroupInteger(@Nonnull int[] digits, int fromBits, int toBits) {
+		final int[] result = new int[(digits.length * fromBits + toBits - 1) / toBits];
+		final int mask = (1 << toBits) - 1;
+
+		int j = result.length;
+		int acc = 0;
+		int accBits = 0;
+		for (int i = digits.length - 1; i >= 0; i--) {
+			acc |= digits[i] << accBits;
+			accBits += fromBits;
+			while (accBits >= toBits) {
+				result[--j] = acc & mask;
+				acc >>>= toBits;
+				accBits -= toBits;
+			}
+		}
+		if (accBits > 0) {
+			result[--j] = acc;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param digits   fractional digits (most significant first), each having <var>fromBits</var> bits
+	 * @return the same fraction as digits with <var>toBits</var> bits each (most significant first, might have trailing zeros)
+	 */
+	@Nonnull
+	private static int[] regroupFraction(@Nonnull int[] digits, int fromBits, int toBits) {
+		final int[] result = new int[(digits.length * fromBits + toBits - 1) / toBits];
+		final int mask = (1 << toBits) - 1;
+
+		int j = 0;
+		int acc = 0;
+		int accBits = 0;
+		for (int digit : digits) {
+			acc = (acc << fromBits) | digit;
+			accBits += fromBits;
+			while (accBits >= toBits) {
+				accBits -= toBits;
+				result[j++] = (acc >>> accBits) & mask;
+			}
+			acc &= (1 << accBits) - 1;
+		}
+		if (accBits > 0) {
+			result[j] = (acc << (toBits - accBits)) & mask;
+		}
+
+		return result;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           OTHER BASES
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private static BigInteger toBigInteger(@Nonnull int[] digits, int radix, @Nonnull Powers powers) {
+		final int bits = getBitsPerDigit(radix);
+		if (bits > 0) {
+			// big-endian bytes => linear time
+			final int[] bytes = regroupInteger(digits, bits, 8);
+			final byte[] magnitude = new byte[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				magnitude[i] = (byte) bytes[i];
+			}
+			return new BigInteger(1, magnitude);
+		} else {
+			return toBigInteger(digits, 0, digits.length, radix, powers);
+		}
+	}
+
+	@Nonnull
+	private static BigInteger toBigInteger(@Nonnull int[] digits, int from, int to, int radix, @Nonnull Powers powers) {
+		final int length = to - from;
+		if (length <= MAX_SIMPLE_DIGITS) {
+			long result = 0;
+			for (int i = from; i < to; i++) {
+				result = result * radix + digits[i];
+			}
+			return BigInteger.valueOf(result);
+		} else {
+			// value = high * radix^lowLength + low
+			final int lowLength = length / 2;
+			final BigInteger high = toBigInteger(digits, from, to - lowLength, radix, powers);
+			final BigInteger low = toBigInteger(digits, to - lowLength, to, radix, powers);
+			return high.multiply(powers.get(radix, lowLength)).add(low);
+		}
+	}
+
+	/**
+	 * Method appends non-negative <var>value</var> in numeral base with <var>radix</var>
+	 *
+	 * @param length number of digits to be appended (result is padded with leading zeros), -1 for no padding
+	 */
+	private static void appendBigInteger(@Nonnull StringBuilder out, @Nonnull BigInteger value, int radix, int length, @Nonnull Powers powers) {
+		final int bits = getBitsPerDigit(radix);
+		if (bits > 0) {
+			// linear time: through the bytes of the magnitude
+			final byte[] magnitude = value.toByteArray();
+			final int[] bytes = new int[magnitude.length];
+			for (int i = 0; i < magnitude.length; i++) {
+				bytes[i] = magnitude[i] & 0xFF;
+			}
+			int[] digits = regroupInteger(bytes, 8, bits);
+			digits = length < 0 ? stripLeadingZeros(digits) : stripLeadingZeros(digits, digits.length - length);
+			appendZeros(out, length - digits.length);
+			appendDigits(out, digits);
+		} else {
+			appendBigIntegerRecursively(out, value, radix, length, powers);
+		}
+	}
+
+	private static void appendBigIntegerRecursively(@Nonnull StringBuilder out, @Nonnull BigInteger value, int radix, int length, @Nonnull Powers powers) {
+		if (value.bitLength() <= MAX_SIMPLE_BITS) {
+			final String digits = Long.toString(value.longValue(), radix).toUpperCase();
+			appendZeros(out, length - digits.length());
+			out.append(digits);
+		} else {
+			// estimated number of digits (might be greater than actual by 1)
+			final int digits = (int) Math.ceil(value.bitLength() * Math.log(2) / Math.log(radix));
+			final int lowLength = digits / 2;
+
+			final BigInteger[] highAndLow = value.divideAndRemainder(powers.get(radix, lowLength));
+			appendBigIntegerRecursively(out, highAndLow[0], radix, length < 0 ? -1 : length - lowLength, powers);
+			appendBigIntegerRecursively(out, highAndLow[1], radix, lowLength, powers);
+		}
+	}
+
+	/**
+	 * Fraction F / fromRadix^m is converted to round(F * toRadix^n / fromRadix^m) / toRadix^n where n is the length
+	 * of the exact representation if it exists and max(m * log(fromRadix), MIN_FRACTION_PRECISION * log(10)) / log(toRadix)
+	 * otherwise. As toRadix^-n <= fromRadix^-m the fraction is never rounded up to 1.
+	 */
+	private static void appendFraction(@Nonnull StringBuilder out, @Nonnull int[] digits, int fromRadix, int toRadix, @Nonnull Powers powers) {
+		final int m = digits.length;
+		if (m == 0) {
+			return;
+		}
+
+		final int exactDigitsPerDigit = getExactDigitsPerDigit(fromRadix, toRadix);
+		final int n;
+		if (exactDigitsPerDigit > 0) {
+			n = m * exactDigitsPerDigit;
+		} else {
+			n = (int) Math.ceil(Math.max(m * Math.log(fromRadix), MIN_FRACTION_PRECISION * Math.log(10)) / Math.log(toRadix));
+		}
+
+		final BigInteger numerator = toBigInteger(digits, fromRadix, powers).multiply(powers.get(toRadix, n));
+		final BigInteger denominator = powers.get(fromRadix, m);
+		final BigInteger[] quotientAndRemainder = numerator.divideAndRemainder(denominator);
+		BigInteger fraction = quotientAndRemainder[0];
+		if (quotientAndRemainder[1].shiftLeft(1).compareTo(denominator) >= 0) {
+			// round half up (remainder is always 0 for exact representation)
+			fraction = fraction.add(BigInteger.ONE);
+		}
+
+		final StringBuilder fractionalPart = new StringBuilder(n);
+		appendBigInteger(fractionalPart, fraction, toRadix, n, powers);
+
+		int length = fractionalPart.length();
+		while (length > 0 && fractionalPart.charAt(length - 1) == '0') {
+			length--;
+		}
+		if (length > 0) {
+			out.append(DOT);
+			out.append(fractionalPart, 0, length);
+		}
+	}
+
+	/**
+	 * @return minimal k such that toRadix^k is divisible by fromRadix (=> one source digit of the fraction takes at
+	 * most k target digits), 0 if there is no such k (fraction might be infinite in target numeral base)
+	 */
+	private static int getExactDigitsPerDigit(int fromRadix, int toRadix) {
+		long power = toRadix;
+		// fromRadix <= 16 = 2^4 => k <= 4
+		for (int k = 1; k <= 4; k++) {
+			if (power % fromRadix == 0) {
+				return k;
+			}
+			power *= toRadix;
+		}
+		return 0;
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           DIGITS
+	*
+	**********************************************************************
+	*/
+
+	@Nonnull
+	private static int[] stripLeadingZeros(@Nonnull int[] digits) {
+		return stripLeadingZeros(digits, digits.length - 1);
+	}
+
+	/**
+	 * @param max maximum number of zeros to be removed
+	 */
+	@Nonnull
+	private static int[] stripLeadingZeros(@Nonnull int[] digits, int max) {
+		int from = 0;
+		while (from < max && digits[from] == 0) {
+			from++;
+		}
+		if (from == 0) {
+			return digits;
+		} else {
+			final int[] result = new int[digits.length - from];
+			System.arraycopy(digits, from, result, 0, result.length);
+			return result;
+		}
+	}
+
+	@Nonnull
+	private static int[] stripTrailingZeros(@Nonnull int[] digits) {
+		int to = digits.length;
+		while (to > 0 && digits[to - 1] == 0) {
+			to--;
+		}
+		if (to == digits.length) {
+			return digits;
+		} else {
+			final int[] result = new int[to];
+			System.arraycopy(digits, 0, result, 0, to);
+			return result;
+		}
+	}
+
+	private static void appendDigits(@Nonnull StringBuilder out, @Nonnull int[] digits) {
+		if (digits.length == 0) {
+			out.append('0');
+		}
+		for (int digit : digits) {
+			out.append(Character.toUpperCase(Character.forDigit(digit, 16)));
+		}
+	}
+
+	private static void appendZeros(@Nonnull StringBuilder out, int count) {
+		for (int i = 0; i < count; i++) {
+			out.append('0');
+		}
+	}
+
+	/**
+	 * Cache of the powers of radixes used during one conversion
+	 */
+	private static final class Powers {
+
+		@Nonnull
+		private final Map<Long, BigInteger> powers = new HashMap<Long, BigInteger>();
+
+		@Nonnull
+		BigInteger get(int radix, int exponent) {
+			final Long key = ((long) radix << 32) | exponent;
+			BigInteger result = powers.get(key);
+			if (result == null) {
+				if (exponent <= 1) {
+					result = BigInteger.valueOf(radix).pow(exponent);
+				} else {
+					// radix^e = (radix^(e/2))^2 * radix^(e%2) => halves are cached and reused by the recursive algorithms
+					final BigInteger half = get(radix, exponent / 2);
+					result = half.multiply(half);
+					if (exponent % 2 != 0) {
+						result = result.multiply(BigInteger.valueOf(radix));
+					}
+				}
+				powers.put(key, result);
+			}
+			return result;
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           PARSING
+	*
+	**********************************************************************
+	*/
+
+	private static final class Number {
+
+		private final boolean negative;
+
+		@Nonnull
+		private final int[] integerPart;
+
+		@Nonnull
+		private final int[] fractionalPart;
+
+		private Number(boolean negative, @Nonnull int[] integerPart, @Nonnull int[] fractionalPart) {
+			this.negative = negative;
+			this.integerPart = integerPart;
+			this.fractionalPart = fractionalPart;
+		}
+
+		@Nonnull
+		private static Number parse(@Nonnull CharSequence value, int radix) throws NumberFormatException {
+			final List<String> groupingSeparators = MathType.grouping_separator.getTokens();
+
+			final int length = value.length();
+			int i = 0;
+			while (i < length && Character.isWhitespace(value.charAt(i))) {
+				i++;
+			}
+
+			boolean negative = false;
+			if (i < length && (value.charAt(i) == MINUS || value.charAt(i) == UNICODE_MINUS)) {
+				negative = true;
+				i++;
+			}
+
+			final int[] integerPart = new int[length - i];
+			int integerDigits = 0;
+			final int[] fractionalPart = new int[length - i];
+			int fractionalDigits = 0;
+
+			boolean fraction = false;
+			for (; i < length; i++) {
+				final char ch = value.charAt(i);
+				final int digit = Character.digit(ch, radix);
+				if (digit >= 0) {
+					if (fraction) {
+						fractionalPart[fractionalDigits++] = digit;
+					} else {
+						integerPart[integerDigits++] = digit;
+					}
+				} else if (ch == DOT && !fraction) {
+					fraction = true;
+				} else if (!Character.isWhitespace(ch) && !groupingSeparators.contains(String.valueOf(ch))) {
+					throw new NumberFormatException("Unexpected character '" + ch + "' in " + value);
+				}
+			}
+
+			if (integerDigits == 0 && fractionalDigits == 0) {
+				throw new NumberFormatException("No digits in " + value);
+			}
+
+			return new Number(negative, copyOf(integerPart, integerDigits), copyOf(fractionalPart, fractionalDigits));
+		}
+
+		@Nonnull
+		private static int[] copyOf(@Nonnull int[] digits, int length) {
+			final int[] result = new int[length];
+			System.arraycopy(digits, 0, result, 0, length);
+			return result;
+		}
+	}
+}
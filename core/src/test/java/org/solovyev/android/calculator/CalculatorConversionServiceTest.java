@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import jscl.NumeralBase;
+import jscl.math.Expression;
+import jscl.math.Generic;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class CalculatorConversionServiceTest extends AbstractCalculatorTest {
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@Test
+	public void testIsConversionPossible() throws Exception {
+		final CalculatorConversionService service = new CalculatorConversionService();
+
+		Assert.assertTrue(service.isConversionPossible(Expression.valueOf("255"), NumeralBase.dec, NumeralBase.hex));
+		Assert.assertTrue(service.isConversionPossible(Expression.valueOf("1.5"), NumeralBase.dec, NumeralBase.dec));
+		Assert.assertTrue(service.isConversionPossible(Expression.valueOf("1.5"), NumeralBase.dec, NumeralBase.hex));
+		Assert.assertFalse(service.isConversionPossible(Expression.valueOf("x"), NumeralBase.dec, NumeralBase.hex));
+		// second call is answered from the cache
+		Assert.assertFalse(service.isConversionPossible(Expression.valueOf("x"), NumeralBase.dec, NumeralBase.hex));
+	}
+
+	@Test
+	public void testSameConversionsAreDeduplicated() throws Exception {
+		final CalculatorConversionService service = new CalculatorConversionService();
+
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		final Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+
+		final Generic value = Expression.valueOf("255");
+		final ListenableFuture<String> first = service.convert(value, NumeralBase.dec, NumeralBase.hex, executor);
+		final ListenableFuture<String> second = service.convert(value, NumeralBase.dec, NumeralBase.hex, executor);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, tasks.size());
+
+		tasks.get(0).run();
+		Assert.assertEquals("FF", first.get());
+
+		// finished conversion is not shared anymore but result is taken from the cache
+		final ListenableFuture<String> third = service.convert(value, NumeralBase.dec, NumeralBase.hex, executor);
+		Assert.assertNotSame(first, third);
+		tasks.get(1).run();
+		Assert.assertEquals("FF", third.get());
+	}
+}
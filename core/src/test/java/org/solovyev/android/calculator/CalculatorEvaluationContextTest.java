@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import jscl.AngleUnit;
+import jscl.NumeralBase;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.solovyev.common.msg.MessageType;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CalculatorEvaluationContextTest {
+
+	private static final CalculatorEngineSettings SETTINGS = CalculatorEngineSettings.newInstance(AngleUnit.deg, NumeralBase.dec, "×", 5, true, false, ' ', 5);
+
+	@Test
+	public void testMessagesAreNotSharedBetweenContexts() throws Exception {
+		final ThreadLocalMessageRegistry registry = new ThreadLocalMessageRegistry();
+
+		final CalculatorEvaluationContext first = new CalculatorEvaluationContext(SETTINGS, registry);
+		final CalculatorEvaluationContext second = new CalculatorEvaluationContext(SETTINGS, registry);
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger otherThreadMessages = new AtomicInteger(-1);
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				second.attach();
+				try {
+					registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_001, MessageType.error));
+					registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_002, MessageType.error));
+				} finally {
+					second.detach();
+				}
+				otherThreadMessages.set(second.drainMessages().size());
+				latch.countDown();
+			}
+		});
+
+		first.attach();
+		try {
+			thread.start();
+			registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_003, MessageType.error));
+			Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+		} finally {
+			first.detach();
+		}
+
+		Assert.assertEquals(1, first.drainMessages().size());
+		Assert.assertEquals(2, otherThreadMessages.get());
+
+		// not attached => message is dropped
+		registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_001, MessageType.error));
+		Assert.assertFalse(registry.hasMessage());
+	}
+
+	@Test
+	public void testNestedContextRestoresPrevious() throws Exception {
+		final ThreadLocalMessageRegistry registry = new ThreadLocalMessageRegistry();
+
+		final CalculatorEvaluationContext outer = new CalculatorEvaluationContext(SETTINGS, registry);
+		final CalculatorEvaluationContext inner = new CalculatorEvaluationContext(SETTINGS, registry);
+
+		outer.attach();
+		inner.attach();
+		registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_001, MessageType.error));
+		inner.detach();
+		registry.addMessage(new CalculatorMessage(CalculatorMessages.msg_002, MessageType.error));
+		outer.detach();
+
+		Assert.assertEquals(1, inner.drainMessages().size());
+		Assert.assertEquals(1, outer.drainMessages().size());
+	}
+
+	@Test
+	public void testSettingsAreCopiedOnWrite() throws Exception {
+		final CalculatorEngineSettings rad = SETTINGS.withAngleUnits(AngleUnit.rad);
+		Assert.assertEquals(AngleUnit.deg, SETTINGS.getAngleUnits());
+		Assert.assertEquals(AngleUnit.rad, rad.getAngleUnits());
+		Assert.assertEquals(SETTINGS.getNumeralBase(), rad.getNumeralBase());
+	}
+}
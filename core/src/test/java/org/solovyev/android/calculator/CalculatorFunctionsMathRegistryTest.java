@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import jscl.math.function.Function;
+
+import javax.annotation.Nonnull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.solovyev.android.calculator.function.FunctionBuilderAdapter;
+import org.solovyev.android.calculator.model.AFunction;
+
+import java.util.Arrays;
+
+public class CalculatorFunctionsMathRegistryTest extends AbstractCalculatorTest {
+
+	@BeforeClass
+	public static void staticSetUp() throws Exception {
+		CalculatorTestUtils.staticSetUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		// registry is shared by all tests
+		final CalculatorMathRegistry<Function> registry = getRegistry();
+		final Function function = registry.get("csef");
+		if (function != null) {
+			registry.remove(function);
+		}
+	}
+
+	@Test
+	public void testChangedFunctionIsRecompiled() throws Exception {
+		final CalculatorMathRegistry<Function> registry = getRegistry();
+
+		registry.add(newFunction("x^2+1"));
+		CalculatorTestUtils.assertEval("10", "csef(3)");
+
+		registry.add(newFunction("x^3+1"));
+		CalculatorTestUtils.assertEval("28", "csef(3)");
+
+		registry.remove(registry.get("csef"));
+		registry.add(newFunction("x^3+1"));
+		CalculatorTestUtils.assertEval("28", "csef(3)");
+	}
+
+	@Test
+	public void testNotChangedFunctionIsNotRecompiled() throws Exception {
+		final CalculatorMathRegistry<Function> registry = getRegistry();
+
+		final Function function = registry.add(newFunction("x^2+1"));
+		final long version = registry.getSnapshot().getVersion();
+
+		Assert.assertSame(function, registry.add(newFunction("x^2+1")));
+		Assert.assertEquals(version, registry.getSnapshot().getVersion());
+		CalculatorTestUtils.assertEval("10", "csef(3)");
+
+		// system functions are not recompiled on reload
+		registry.load();
+		final long loadedVersion = registry.getSnapshot().getVersion();
+		registry.load();
+		Assert.assertEquals(loadedVersion, registry.getSnapshot().getVersion());
+		CalculatorTestUtils.assertEval("3", "log(2, 8)");
+	}
+
+	@Nonnull
+	private static CalculatorMathRegistry<Function> getRegistry() {
+		return Locator.getInstance().getEngine().getFunctionsRegistry();
+	}
+
+	@Nonnull
+	private static FunctionBuilderAdapter newFunction(@Nonnull String body) {
+		return new FunctionBuilderAdapter(new AFunction.Builder("csef", body, Arrays.asList("x")));
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.math.function.IConstant;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.solovyev.android.calculator.model.Var;
+import org.solovyev.common.JBuilder;
+import org.solovyev.common.math.MathRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class CalculatorVarsRegistryTest {
+
+	@Nonnull
+	private final List<IConstant> entities = new ArrayList<IConstant>();
+
+	@Nonnull
+	private final BlockingQueue<List<Var>> saved = new LinkedBlockingQueue<List<Var>>();
+
+	// names of entities for which persistence entities have been created
+	@Nonnull
+	private final List<String> transformed = Collections.synchronizedList(new ArrayList<String>());
+
+	private CalculatorVarsRegistry registry;
+
+	@Before
+	public void setUp() throws Exception {
+		final MathRegistry<IConstant> mathRegistry = Mockito.mock(MathRegistry.class);
+		Mockito.when(mathRegistry.getEntities()).thenReturn(entities);
+		Mockito.when(mathRegistry.getSystemEntities()).thenReturn(Collections.<IConstant>emptyList());
+		Mockito.when(mathRegistry.getNames()).thenReturn(Collections.<String>emptyList());
+		Mockito.when(mathRegistry.add(Mockito.any(JBuilder.class))).thenAnswer(new Answer<IConstant>() {
+			@Override
+			public IConstant answer(InvocationOnMock invocation) throws Throwable {
+				final IConstant result = ((JBuilder<IConstant>) invocation.getArguments()[0]).create();
+				entities.add(result);
+				return result;
+			}
+		});
+
+		registry = new CalculatorVarsRegistry(mathRegistry, new MathEntityDao<Var>() {
+			@Override
+			public void save(@Nonnull MathEntityPersistenceContainer<Var> container) {
+				saved.add(new ArrayList<Var>(container.getEntities()));
+			}
+
+			@Nullable
+			@Override
+			public MathEntityPersistenceContainer<Var> load() {
+				return null;
+			}
+
+			@Nullable
+			@Override
+			public String getDescription(@Nonnull String descriptionId) {
+				return null;
+			}
+		}) {
+			@Override
+			protected Var transform(@Nonnull IConstant entity) {
+				transformed.add(entity.getName());
+				return super.transform(entity);
+			}
+		};
+	}
+
+	@Test
+	public void testChangesAreWrittenTogether() throws Exception {
+		registry.add(new Var.Builder("a", 1d));
+		registry.save();
+		registry.add(new Var.Builder("b", 2d));
+		registry.save();
+		registry.add(new Var.Builder("c", 3d));
+		registry.save();
+
+		final List<Var> vars = saved.poll(CalculatorTestUtils.TIMEOUT, TimeUnit.SECONDS);
+		Assert.assertNotNull(vars);
+		Assert.assertEquals(3, vars.size());
+
+		// nothing changed => nothing written
+		registry.save();
+		registry.flush();
+		Assert.assertNull(saved.poll(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFlushWritesImmediately() throws Exception {
+		registry.add(new Var.Builder("a", 1d));
+		registry.save();
+		registry.flush();
+
+		// written before save delay
+		final List<Var> vars = saved.poll(100, TimeUnit.MILLISECONDS);
+		Assert.assertNotNull(vars);
+		Assert.assertEquals(1, vars.size());
+	}
+
+	@Test
+	public void testNotChangedEntitiesAreReused() throws Exception {
+		registry.add(new Var.Builder("a", 1d));
+		registry.add(new Var.Builder("b", 2d));
+		registry.flush();
+
+		Assert.assertNotNull(saved.poll(CalculatorTestUtils.TIMEOUT, TimeUnit.SECONDS));
+		Assert.assertEquals(Arrays.asList("a", "b"), transformed);
+		transformed.clear();
+
+		registry.add(new Var.Builder("c", 3d));
+		registry.flush();
+
+		final List<Var> second = saved.poll(CalculatorTestUtils.TIMEOUT, TimeUnit.SECONDS);
+		Assert.assertNotNull(second);
+		Assert.assertEquals(3, second.size());
+		// only added entity is transformed
+		Assert.assertEquals(Arrays.asList("c"), transformed);
+	}
+
+	@Test
+	public void testPendingChangesAreWrittenBeforeReload() throws Exception {
+		registry.load();
+		registry.add(new Var.Builder("a", 1d));
+		registry.save();
+
+		// reload must not drop the change
+		registry.load();
+
+		final List<Var> vars = saved.poll();
+		Assert.assertNotNull(vars);
+		Assert.assertTrue(containsVar(vars, "a"));
+	}
+
+	private static boolean containsVar(@Nonnull List<Var> vars, @Nonnull String name) {
+		for (Var var : vars) {
+			if (var.getName().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.math.Generic;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.solovyev.android.calculator.CommonSubexpressionEliminatorTest.addChainOfVariables;
+import static org.solovyev.android.calculator.CommonSubexpressionEliminatorTest.getEngine;
+import static org.solovyev.android.calculator.CommonSubexpressionEliminatorTest.removeVars;
+
+/**
+ * Compares evaluation with and without elimination of common subexpressions.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class CommonSubexpressionEliminatorBenchmark extends AbstractCalculatorTest {
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		removeVars("csev0", "csev1", "csev2", "csev3", "csev4", "csev5", "csev6");
+	}
+
+	@Test
+	public void testEvaluation() throws Exception {
+		addChainOfVariables();
+
+		final PreparedExpression expression = Locator.getInstance().getCalculator().prepareExpression("csev6+1");
+		final CalculatorMathEngine mathEngine = getEngine().getMathEngine();
+
+		// warm up
+		for (int i = 0; i < 3; i++) {
+			CommonSubexpressionEliminator.evaluate(expression, mathEngine, getEngine().getOperatorsRegistry().getSnapshot());
+			mathEngine.evaluateGeneric(expression.getExpression());
+		}
+
+		final int count = 10;
+		long start = System.nanoTime();
+		Generic eliminated = null;
+		for (int i = 0; i < count; i++) {
+			eliminated = CommonSubexpressionEliminator.evaluate(expression, mathEngine, getEngine().getOperatorsRegistry().getSnapshot());
+		}
+		final long eliminatedTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			mathEngine.evaluateGeneric(expression.getExpression());
+		}
+		final long inlinedTime = System.nanoTime() - start;
+
+		Assert.assertNotNull(eliminated);
+
+		System.out.println("Evaluation of expression with " + expression.length() + " characters " + count + " times: with elimination " + eliminatedTime / 1000000 + " ms, without " + inlinedTime / 1000000 + " ms");
+	}
+}
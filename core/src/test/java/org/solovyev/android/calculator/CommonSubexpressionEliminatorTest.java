@@ -0,0 +1,200 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator;
+
+import jscl.math.Generic;
+import jscl.math.function.IConstant;
+import jscl.text.ParseException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.calculator.model.Var;
+
+import java.util.ArrayList;
+
+public class CommonSubexpressionEliminatorTest extends AbstractCalculatorTest {
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		// registry is shared by all tests
+		removeVars("csea", "cseb", "csec", "csev0", "csev1", "csev2", "csev3", "csev4", "csev5", "csev6");
+	}
+
+	@Test
+	public void testRepeatedSubexpressionIsEvaluatedOnce() throws Exception {
+		final CountingMathEngine mathEngine = new CountingMathEngine();
+
+		final String result = eliminate("(2+3)*(2+3)+(2+3)", mathEngine);
+		Assert.assertNotNull(result);
+		Assert.assertEquals(1, mathEngine.count);
+		Assert.assertFalse(result, result.contains("2+3"));
+		assertSameValue("(2+3)*(2+3)+(2+3)", result);
+
+		// inner subexpressions are evaluated first and only once
+		mathEngine.count = 0;
+		final String nested = "((1.5+2)*(1.5+2))/((1.5+2)*(1.5+2))+((1.5+2)*(1.5+2))";
+		final String nestedResult = eliminate(nested, mathEngine);
+		Assert.assertNotNull(nestedResult);
+		Assert.assertEquals(2, mathEngine.count);
+		assertSameValue(nested, nestedResult);
+	}
+
+	@Test
+	public void testNothingToEliminate() throws Exception {
+		final CountingMathEngine mathEngine = new CountingMathEngine();
+
+		Assert.assertNull(eliminate("2+3", mathEngine));
+		Assert.assertNull(eliminate("(2+3)*(2+4)", mathEngine));
+		// plain numbers and function arguments lists are not eliminated
+		Assert.assertNull(eliminate("(2)*(2)+sin(30)+sin(30)", mathEngine));
+		Assert.assertNull(eliminate("max(1+2, 3)+max(1+2, 3)", mathEngine));
+		// subexpressions are not evaluated at all
+		Assert.assertEquals(0, mathEngine.count);
+	}
+
+	@Test
+	public void testUndefinedVariables() throws Exception {
+		final ArrayList<IConstant> undefinedVars = new ArrayList<IConstant>();
+		undefinedVars.add(new Var.Builder("t", (String) null).create());
+
+		final PreparedExpression expression = new PreparedExpression("(t+1)*(t+1)", undefinedVars);
+		Assert.assertNull(CommonSubexpressionEliminator.eliminate(expression, new CountingMathEngine(), getEngine().getOperatorsRegistry().getSnapshot()));
+	}
+
+	@Test
+	public void testVariables() throws Exception {
+		getEngine().getVarsRegistry().add(new Var.Builder("csea", "2+3"));
+		getEngine().getVarsRegistry().add(new Var.Builder("cseb", "csea*csea+csea"));
+		getEngine().getVarsRegistry().add(new Var.Builder("csec", "cseb/csea-cseb"));
+
+		CalculatorTestUtils.assertEval("30", "cseb");
+		CalculatorTestUtils.assertEval("60", "cseb+cseb");
+		CalculatorTestUtils.assertEval("-24", "csec");
+		CalculatorTestUtils.assertEval("576", "csec^2");
+		CalculatorTestUtils.assertEval("3.5", "csea+csea/csea-csea/2");
+	}
+
+	@Test
+	public void testLongChainOfVariables() throws Exception {
+		addChainOfVariables();
+
+		final PreparedExpression expression = Locator.getInstance().getCalculator().prepareExpression("csev6+1");
+		final CalculatorMathEngine mathEngine = getEngine().getMathEngine();
+
+		final Generic eliminated = CommonSubexpressionEliminator.evaluate(expression, mathEngine, getEngine().getOperatorsRegistry().getSnapshot());
+		Assert.assertNotNull(eliminated);
+		Assert.assertEquals(mathEngine.evaluateGeneric(expression.getExpression()).toString(), eliminated.toString());
+	}
+
+	/**
+	 * Adds variables csev0..csev6 where each next variable uses previous one 3 times
+	 */
+	static void addChainOfVariables() {
+		getEngine().getVarsRegistry().add(new Var.Builder("csev0", "1.1+sin(2)"));
+		for (int i = 1; i <= 6; i++) {
+			final String previous = "csev" + (i - 1);
+			getEngine().getVarsRegistry().add(new Var.Builder("csev" + i, previous + "*" + previous + "/" + previous));
+		}
+	}
+
+	static void removeVars(@Nonnull String... names) {
+		final CalculatorMathRegistry<IConstant> registry = getEngine().getVarsRegistry();
+		for (String name : names) {
+			final IConstant var = registry.get(name);
+			if (var != null) {
+				registry.remove(var);
+			}
+		}
+	}
+
+	private static void assertSameValue(@Nonnull String expected, @Nonnull String actual) throws ParseException {
+		final CalculatorMathEngine mathEngine = getEngine().getMathEngine();
+		Assert.assertEquals(mathEngine.evaluateGeneric(expected).toString(), mathEngine.evaluateGeneric(actual).toString());
+	}
+
+	@Nonnull
+	static CalculatorEngine getEngine() {
+		return Locator.getInstance().getEngine();
+	}
+
+	@Nullable
+	private static String eliminate(@Nonnull String expression, @Nonnull CalculatorMathEngine mathEngine) throws ParseException {
+		return CommonSubexpressionEliminator.eliminate(new PreparedExpression(expression, new ArrayList<IConstant>()), mathEngine, getEngine().getOperatorsRegistry().getSnapshot());
+	}
+
+	private static final class CountingMathEngine implements CalculatorMathEngine {
+
+		@Nonnull
+		private final CalculatorMathEngine mathEngine = getEngine().getMathEngine();
+
+		private int count = 0;
+
+		@Nonnull
+		@Override
+		public String evaluate(@Nonnull String expression) throws ParseException {
+			count++;
+			return mathEngine.evaluate(expression);
+		}
+
+		@Nonnull
+		@Override
+		public String simplify(@Nonnull String expression) throws ParseException {
+			return mathEngine.simplify(expression);
+		}
+
+		@Nonnull
+		@Override
+		public String elementary(@Nonnull String expression) throws ParseException {
+			return mathEngine.elementary(expression);
+		}
+
+		@Nonnull
+		@Override
+		public Generic evaluateGeneric(@Nonnull String expression) throws ParseException {
+			count++;
+			return mathEngine.evaluateGeneric(expression);
+		}
+
+		@Nonnull
+		@Override
+		public Generic simplifyGeneric(@Nonnull String expression) throws ParseException {
+			return mathEngine.simplifyGeneric(expression);
+		}
+
+		@Nonnull
+		@Override
+		public Generic elementaryGeneric(@Nonnull String expression) throws ParseException {
+			return mathEngine.elementaryGeneric(expression);
+		}
+	}
+}
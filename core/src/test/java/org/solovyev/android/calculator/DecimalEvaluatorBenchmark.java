@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.AngleUnit;
+import jscl.NumeralBase;
+
+import org.junit.Test;
+
+import java.math.MathContext;
+
+/**
+ * Compares decimal arithmetic with double arithmetic of {@link SimpleNumericEvaluator}.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class DecimalEvaluatorBenchmark {
+
+	@Test
+	public void testEvaluation() throws Exception {
+		final MathContext mc = MathContext.DECIMAL128;
+		final String expression = "(1+2×3.5)/7-16^2+1234.5678×(9.99-0.01)";
+		final CalculatorEngineSettings settings = CalculatorEngineSettings.newInstance(AngleUnit.deg, NumeralBase.dec, "×", 5, true, false, ' ', 5);
+
+		// warm up
+		for (int i = 0; i < 1000; i++) {
+			DecimalEvaluator.evaluate(expression, mc, DecimalEvaluator.MAX_COST_DEFAULT);
+			SimpleNumericEvaluator.evaluate(expression, settings);
+		}
+
+		final int count = 10000;
+		long cost = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			cost += DecimalEvaluator.evaluate(expression, mc, DecimalEvaluator.MAX_COST_DEFAULT).getCost();
+		}
+		final long decimalTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			SimpleNumericEvaluator.evaluate(expression, settings);
+		}
+		final long doubleTime = System.nanoTime() - start;
+
+		System.out.println("Evaluation of " + expression + " " + count + " times: decimal " + decimalTime / 1000000 + " ms (cost " + cost / count + "), double " + doubleTime / 1000000 + " ms");
+	}
+}
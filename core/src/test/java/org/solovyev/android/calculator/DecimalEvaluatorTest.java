@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.MathContext;
+
+public class DecimalEvaluatorTest {
+
+	private static final MathContext MC = MathContext.DECIMAL128;
+
+	@Test
+	public void testExactArithmetic() throws Exception {
+		Assert.assertEquals("0.3", evaluate("0.1+0.2"));
+		Assert.assertEquals("0.3", evaluate("0.1×3"));
+		Assert.assertEquals("1.1", evaluate("3.3/3"));
+		Assert.assertEquals("-12.5", evaluate("-(2.5×5)"));
+		Assert.assertEquals("10 000 000 000 000 000 000 000", evaluate("10^22-0"));
+		Assert.assertEquals("1.21", evaluate("1.1^2"));
+		Assert.assertEquals("0.25", evaluate("2^-2"));
+		Assert.assertEquals("1 000 001", evaluate("1 000 000+1"));
+		Assert.assertEquals("0", evaluate("0.1-0.1"));
+		Assert.assertEquals("12 345 678 901 234 567 890.12", evaluate("12345678901234567890+0.12"));
+	}
+
+	@Test
+	public void testPrecision() throws Exception {
+		Assert.assertEquals("0.3333333333", evaluate("1/3", new MathContext(10), DecimalEvaluator.MAX_COST_DEFAULT));
+		Assert.assertEquals("1.414213562373095048801688724209698", evaluate("√(2)"));
+		Assert.assertEquals("1.4142135623730950488016887242096980785696718753769", evaluate("√(2)", new MathContext(50), DecimalEvaluator.MAX_COST_DEFAULT));
+		Assert.assertEquals("3", evaluate("√(9)"));
+	}
+
+	@Test
+	public void testUnsupportedExpressions() throws Exception {
+		for (String expression : new String[]{"", "sin(30)", "2^0.5", "√(-1)", "x+1", "2π", "(1+2", "1.", "5!"}) {
+			Assert.assertNull(expression, DecimalEvaluator.evaluate(expression, MC, DecimalEvaluator.MAX_COST_DEFAULT));
+		}
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testDivisionByZero() throws Exception {
+		DecimalEvaluator.evaluate("1/(2-2)", MC, DecimalEvaluator.MAX_COST_DEFAULT);
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		final DecimalEvaluator.Result result = DecimalEvaluator.evaluate("1.5×2+3", MC, DecimalEvaluator.MAX_COST_DEFAULT);
+		Assert.assertNotNull(result);
+		// 3 numbers and 2 operations
+		Assert.assertEquals(5, result.getOperations());
+		Assert.assertTrue(result.getCost() > 0);
+
+		Assert.assertNull(DecimalEvaluator.evaluate("1.5×2+3", MC, result.getCost() - 1));
+		Assert.assertNotNull(DecimalEvaluator.evaluate("1.5×2+3", MC, result.getCost()));
+	}
+
+	@Test
+	public void testMagnitude() throws Exception {
+		Assert.assertEquals(DecimalEvaluator.MAX_MAGNITUDE, evaluate("10^" + (DecimalEvaluator.MAX_MAGNITUDE - 1), MC, DecimalEvaluator.MAX_COST_DEFAULT).replace(" ", "").length());
+
+		// results which can't be shown in plain notation are not evaluated
+		for (String expression : new String[]{"10^" + DecimalEvaluator.MAX_MAGNITUDE, "0.1^" + (DecimalEvaluator.MAX_MAGNITUDE + 1), "10^999999999", "10^2147483647", "10^99999999999", "10^500×10^500"}) {
+			Assert.assertNull(expression, DecimalEvaluator.evaluate(expression, MC, DecimalEvaluator.MAX_COST_DEFAULT));
+		}
+	}
+
+	@Nonnull
+	private static String evaluate(@Nonnull String expression) {
+		return evaluate(expression, MC, DecimalEvaluator.MAX_COST_DEFAULT);
+	}
+
+	@Nonnull
+	private static String evaluate(@Nonnull String expression, @Nonnull MathContext mc, long maxCost) {
+		final DecimalEvaluator.Result result = DecimalEvaluator.evaluate(expression, mc, maxCost);
+		Assert.assertNotNull(expression, result);
+		return result.format(' ');
+	}
+}
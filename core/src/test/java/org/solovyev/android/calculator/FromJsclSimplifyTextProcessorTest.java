@@ -89,5 +89,28 @@ public class FromJsclSimplifyTextProcessorTest extends AbstractCalculatorTest {
 		Assert.assertEquals("20x", tp.process("20x"));
 		Assert.assertEquals("2×0x3", tp.process("2*0x3"));
 		Assert.assertEquals("2×0x:3", tp.process("2*0x:3"));
+		Assert.assertEquals("2.5×3", tp.process("2.5*3"));
+		Assert.assertEquals("2.5t", tp.process("2.5*t"));
+		Assert.assertEquals("sin(t)2", tp.process("sin(t)*2"));
+		Assert.assertEquals("2(t+1)", tp.process("2*(t+1)"));
+	}
+
+	@Test
+	public void testLargeResult() throws Exception {
+		final FromJsclSimplifyTextProcessor tp = new FromJsclSimplifyTextProcessor();
+
+		final int count = 20000;
+		final StringBuilder jscl = new StringBuilder();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				jscl.append('+');
+				expected.append('+');
+			}
+			jscl.append(i).append("*t*sin(t)*(t+1)^2*").append(i);
+			expected.append(i).append("tsin(t)(t+1)^2×").append(i);
+		}
+
+		Assert.assertEquals(expected.toString(), tp.process(jscl.toString()));
 	}
 }
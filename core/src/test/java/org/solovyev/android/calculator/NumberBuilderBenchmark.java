@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.JsclMathEngine;
+import jscl.MathEngine;
+import jscl.NumeralBase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.solovyev.android.calculator.NumberBuilderTest.formatNumberJscl;
+import static org.solovyev.android.calculator.NumberBuilderTest.newNumbers;
+
+/**
+ * Compares validation and formatting of long numbers by {@link NumberBuilder} and by jscl.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class NumberBuilderBenchmark {
+
+	@BeforeClass
+	public static void staticSetUp() throws Exception {
+		CalculatorTestUtils.staticSetUp();
+	}
+
+	@Test
+	public void testFormatting() throws Exception {
+		final MathEngine engine = JsclMathEngine.getInstance();
+		final char groupingSeparator = Locator.getInstance().getEngine().getSettings().getGroupingSeparator();
+		final List<String> numbers = newNumbers(NumeralBase.dec, new Random(42), 200, 2000);
+
+		final StringBuilder out = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			// warm up
+			for (String number : numbers) {
+				formatNumberJscl(number, NumeralBase.dec, engine);
+				out.setLength(0);
+				NumberBuilder.appendFormattedNumber(out, number, NumeralBase.dec, groupingSeparator);
+			}
+		}
+
+		long start = System.nanoTime();
+		for (String number : numbers) {
+			formatNumberJscl(number, NumeralBase.dec, engine);
+		}
+		final long jsclTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (String number : numbers) {
+			if (NumberBuilder.isValid(number, NumeralBase.dec)) {
+				out.setLength(0);
+				NumberBuilder.appendFormattedNumber(out, number, NumeralBase.dec, groupingSeparator);
+			}
+		}
+		final long time = System.nanoTime() - start;
+
+		System.out.println("Validation and formatting of " + numbers.size() + " long numbers: jscl " + jsclTime / 1000 + " us, number builder " + time / 1000 + " us");
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.JsclMathEngine;
+import jscl.MathContext;
+import jscl.MathEngine;
+import jscl.NumeralBase;
+import jscl.math.numeric.Real;
+import jscl.text.DoubleParser;
+import jscl.text.JsclIntegerParser;
+import jscl.text.MutableInt;
+import jscl.text.ParseException;
+import jscl.text.Parser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.solovyev.android.calculator.math.MathType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class NumberBuilderTest {
+
+	@BeforeClass
+	public static void staticSetUp() throws Exception {
+		CalculatorTestUtils.staticSetUp();
+	}
+
+	@Test
+	public void testTrimNumber() throws Exception {
+		final StringBuilder out = new StringBuilder();
+		NumberBuilder.trimNumber("1 000'000.5E+3", out);
+		Assert.assertEquals("1000000.5E3", out.toString());
+	}
+
+	@Test
+	public void testSameAsJscl() throws Exception {
+		final MathEngine engine = JsclMathEngine.getInstance();
+		final char groupingSeparator = Locator.getInstance().getEngine().getSettings().getGroupingSeparator();
+
+		final Random random = new Random(42);
+		final StringBuilder actual = new StringBuilder();
+		for (NumeralBase nb : NumeralBase.values()) {
+			for (String number : newNumbers(nb, random, 1000, 30)) {
+				final String expected = formatNumberJscl(number, nb, engine);
+				Assert.assertEquals(number, expected != null, NumberBuilder.isValid(number, nb));
+				if (expected != null) {
+					actual.setLength(0);
+					NumberBuilder.appendFormattedNumber(actual, number, nb, groupingSeparator);
+					Assert.assertEquals(expected, actual.toString());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return trimmed numbers like the ones collected by number builder: [digits][.digits][E[-]digits] (some of them
+	 * are invalid)
+	 */
+	@Nonnull
+	static List<String> newNumbers(@Nonnull NumeralBase nb, @Nonnull Random random, int count, int maxLength) {
+		final List<Character> digits = nb.getAcceptableCharacters();
+
+		final List<String> result = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			final StringBuilder number = new StringBuilder();
+			appendDigits(number, digits, random, random.nextInt(maxLength));
+			if (nb == NumeralBase.dec && random.nextBoolean()) {
+				number.append('.');
+				appendDigits(number, digits, random, random.nextInt(maxLength));
+			}
+			if (nb != NumeralBase.hex && random.nextInt(4) == 0) {
+				number.append(MathType.POWER_10);
+				if (random.nextBoolean()) {
+					number.append('-');
+				}
+				appendDigits(number, digits, random, 1 + random.nextInt(3));
+			}
+			result.add(number.toString());
+		}
+		return result;
+	}
+
+	private static void appendDigits(@Nonnull StringBuilder number, @Nonnull List<Character> digits, @Nonnull Random random, int count) {
+		for (int i = 0; i < count; i++) {
+			number.append(digits.get(random.nextInt(digits.size())));
+		}
+	}
+
+	/*
+	**********************************************************************
+	*
+	*                           JSCL BASED IMPLEMENTATION (reference)
+	*
+	**********************************************************************
+	*/
+
+	@Nullable
+	static String formatNumberJscl(@Nonnull String number, @Nonnull NumeralBase nb, @Nonnull MathEngine engine) {
+		try {
+			toDouble(number, nb, engine);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+		final String result;
+
+		final int indexOfDot = number.indexOf('.');
+		if (indexOfDot < 0) {
+			final int indexOfE = nb == NumeralBase.hex ? -1 : number.indexOf(MathType.POWER_10);
+			if (indexOfE < 0) {
+				result = engine.addGroupingSeparators(nb, number);
+			} else {
+				final String partBeforeE = indexOfE != 0 ? engine.addGroupingSeparators(nb, number.substring(0, indexOfE)) : "";
+				result = partBeforeE + number.substring(indexOfE);
+			}
+		} else {
+			final String integerPart = indexOfDot != 0 ? engine.addGroupingSeparators(nb, number.substring(0, indexOfDot)) : "";
+			result = integerPart + number.substring(indexOfDot);
+		}
+
+		return result;
+	}
+
+	private static double toDouble(@Nonnull String s, @Nonnull NumeralBase nb, @Nonnull MathContext mc) throws NumberFormatException {
+		final NumeralBase defaultNb = mc.getNumeralBase();
+		try {
+			mc.setNumeralBase(nb);
+
+			try {
+				return JsclIntegerParser.parser.parse(Parser.Parameters.newInstance(s, new MutableInt(0), mc), null).content().doubleValue();
+			} catch (ParseException e) {
+				try {
+					return ((Real) DoubleParser.parser.parse(Parser.Parameters.newInstance(s, new MutableInt(0), mc), null).content()).doubleValue();
+				} catch (ParseException e1) {
+					throw new NumberFormatException();
+				}
+			}
+		} finally {
+			mc.setNumeralBase(defaultNb);
+		}
+	}
+}
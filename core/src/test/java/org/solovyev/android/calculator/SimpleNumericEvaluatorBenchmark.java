@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.solovyev.android.calculator.SimpleNumericEvaluatorTest.evaluateJscl;
+
+/**
+ * Compares evaluation of plain arithmetic by {@link SimpleNumericEvaluator} and by jscl.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class SimpleNumericEvaluatorBenchmark extends AbstractCalculatorTest {
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@Test
+	public void testEvaluation() throws Exception {
+		final String expression = "(1+2×3.5)/sin(30)-√(16)^2+ln(10)";
+		final CalculatorEngineSettings settings = Locator.getInstance().getEngine().getSettings();
+
+		// warm up
+		for (int i = 0; i < 100; i++) {
+			SimpleNumericEvaluator.evaluate(expression, settings).toString();
+			evaluateJscl(expression);
+		}
+
+		final int count = 1000;
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			SimpleNumericEvaluator.evaluate(expression, settings).toString();
+		}
+		final long time = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			evaluateJscl(expression);
+		}
+		final long jsclTime = System.nanoTime() - start;
+
+		System.out.println("Evaluation of " + expression + " " + count + " times: fast path " + time / 1000000 + " ms, jscl " + jsclTime / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator;
+
+import jscl.AngleUnit;
+import jscl.NumeralBase;
+import jscl.math.Generic;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+
+import java.util.Random;
+
+public class SimpleNumericEvaluatorTest extends AbstractCalculatorTest {
+
+	private static final String[] CORPUS = {
+			"2+3×4",
+			"2+3*4",
+			"2+3∙4",
+			"(2+3)×4",
+			"[2+3]×{4-1}",
+			"-2+3",
+			"-(2-5)",
+			"1 000 000+1",
+			"1'000×2",
+			"10/4",
+			"6/3",
+			"1/3",
+			"1/3×3",
+			"2/3+1/3",
+			"0.1+0.2",
+			"1.5×4",
+			"3.000",
+			"2^10",
+			"2^52",
+			"2^0.5",
+			"2^(1/2)",
+			"2^(0-3)",
+			"(-2)^3",
+			"(-2.5)^2",
+			"12345×6789",
+			"999999999×999999",
+			"123456789.123456789",
+			"0.000001234",
+			"sin(30)",
+			"cos(60)",
+			"tan(45)",
+			// results of double arithmetic near zeros and poles in degrees
+			"cos(90)",
+			"sin(180)",
+			"tan(90)",
+			"sin(1)",
+			"asin(0.5)",
+			"acos(0.5)",
+			"atan(1)",
+			"ln(10)",
+			"lg(1000)",
+			"lg(2)",
+			"exp(1)",
+			"√(2)",
+			"√(16)",
+			"sin(30)^2+cos(30)^2",
+			"ln(2)×(1+2/3)",
+			"1/(1+exp(0-2))",
+	};
+
+	private static final String[] UNSUPPORTED = {
+			"",
+			"2^100",
+			"99999999999999999999+1",
+			"1/0",
+			"√(-1)",
+			"ln(0-1)",
+			"2π",
+			"2(3)",
+			"5!",
+			"10%",
+			"x+1",
+			"1E5",
+			".5",
+			"2^3^2",
+			"2^-3",
+			"-2^2",
+			"sin(0)-sin(0)",
+			"(1+2",
+			"unknown(1)",
+	};
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		final CalculatorEngine engine = Locator.getInstance().getEngine();
+		engine.setAngleUnits(AngleUnit.deg);
+		engine.setNumeralBase(NumeralBase.dec);
+		engine.setRoundResult(true);
+	}
+
+	@Test
+	public void testSameOutputAsJscl() throws Exception {
+		final CalculatorEngine engine = Locator.getInstance().getEngine();
+		for (AngleUnit angleUnits : new AngleUnit[]{AngleUnit.deg, AngleUnit.rad}) {
+			engine.setAngleUnits(angleUnits);
+			for (String expression : CORPUS) {
+				final String actual = evaluateFast(expression);
+				Assert.assertNotNull(expression, actual);
+				Assert.assertEquals(expression, evaluateJscl(expression), actual);
+			}
+		}
+	}
+
+	@Test
+	public void testRandomExpressions() throws Exception {
+		final Random random = new Random(42);
+		int evaluated = 0;
+		for (int i = 0; i < 5000; i++) {
+			final String expression = newExpression(random, 3);
+			final String actual = evaluateFast(expression);
+			if (actual != null) {
+				Assert.assertEquals(expression, evaluateJscl(expression), actual);
+				evaluated++;
+			}
+		}
+		Assert.assertTrue(evaluated > 1000);
+	}
+
+	@Test
+	public void testUnsupportedExpressions() throws Exception {
+		for (String expression : UNSUPPORTED) {
+			Assert.assertNull(expression, evaluateFast(expression));
+		}
+
+		final CalculatorEngine engine = Locator.getInstance().getEngine();
+
+		engine.setNumeralBase(NumeralBase.hex);
+		Assert.assertNull(evaluateFast("2+3"));
+		engine.setNumeralBase(NumeralBase.dec);
+
+		engine.setRoundResult(false);
+		Assert.assertNull(evaluateFast("2+3"));
+		engine.setRoundResult(true);
+
+		engine.setAngleUnits(AngleUnit.grad);
+		Assert.assertNull(evaluateFast("2+3"));
+	}
+
+	@Test
+	public void testEvaluation() throws Exception {
+		CalculatorTestUtils.assertEval("14", "2+3×4");
+		CalculatorTestUtils.assertEval("0.5", "sin(30)");
+		CalculatorTestUtils.assertEval("1 024", "2^10");
+	}
+
+	@Nullable
+	private static String evaluateFast(@Nonnull String expression) throws Exception {
+		final Generic result = SimpleNumericEvaluator.evaluate(expression, Locator.getInstance().getEngine().getSettings());
+		return result == null ? null : JsclOperation.numeric.getFromProcessor().process(result);
+	}
+
+	@Nonnull
+	static String evaluateJscl(@Nonnull String expression) throws Exception {
+		final CalculatorEngine engine = Locator.getInstance().getEngine();
+		final String jsclExpression = Locator.getInstance().getCalculator().prepareExpression(expression).toString();
+		final Generic result = JsclOperation.numeric.evaluateGeneric(jsclExpression, engine.getMathEngine());
+		return JsclOperation.numeric.getFromProcessor().process(result);
+	}
+
+	@Nonnull
+	private static String newExpression(@Nonnull Random random, int depth) {
+		switch (depth == 0 ? 0 : random.nextInt(5)) {
+			case 0:
+				if (random.nextBoolean()) {
+					return String.valueOf(random.nextInt(1000));
+				} else {
+					return String.valueOf(random.nextInt(100)) + "." + String.valueOf(1 + random.nextInt(99));
+				}
+			case 1:
+				return "(" + newExpression(random, depth - 1) + ")";
+			case 2:
+				final String[] functions = {"sin", "cos", "tan", "ln", "lg", "√", "atan"};
+				return functions[random.nextInt(functions.length)] + "(" + newExpression(random, depth - 1) + ")";
+			case 3:
+				return newExpression(random, depth - 1) + "^" + String.valueOf(random.nextInt(4));
+			default:
+				final String[] operations = {"+", "-", "×", "/"};
+				return newExpression(random, depth - 1) + operations[random.nextInt(operations.length)] + newExpression(random, depth - 1);
+		}
+	}
+}
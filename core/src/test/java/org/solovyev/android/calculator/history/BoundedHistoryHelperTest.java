@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.solovyev.android.calculator.CalculatorDisplayViewStateImpl;
+import org.solovyev.android.calculator.CalculatorEditorViewStateImpl;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+import org.solovyev.common.history.HistoryAction;
+
+import java.util.List;
+
+public class BoundedHistoryHelperTest {
+
+	@Test
+	public void testUndoRedo() throws Exception {
+		final BoundedHistoryHelper history = new BoundedHistoryHelper(10, Long.MAX_VALUE);
+		Assert.assertTrue(history.isEmpty());
+		Assert.assertNull(history.getLastHistoryState());
+
+		final CalculatorHistoryState first = newState("1");
+		final CalculatorHistoryState second = newState("2");
+		final CalculatorHistoryState third = newState("3");
+		history.addState(first);
+		history.addState(second);
+		history.addState(third);
+
+		Assert.assertFalse(history.isRedoAvailable());
+		Assert.assertSame(second, history.undo(third));
+		Assert.assertSame(first, history.doAction(HistoryAction.undo, second));
+		Assert.assertFalse(history.isUndoAvailable());
+		Assert.assertSame(second, history.redo(first));
+
+		// new state removes redo states
+		final CalculatorHistoryState fourth = newState("4");
+		history.addState(fourth);
+		Assert.assertFalse(history.isActionAvailable(HistoryAction.redo));
+
+		final List<CalculatorHistoryState> states = history.getStates();
+		Assert.assertEquals(3, states.size());
+		Assert.assertSame(first, states.get(0));
+		Assert.assertSame(second, states.get(1));
+		Assert.assertSame(fourth, states.get(2));
+	}
+
+	@Test
+	public void testOldestStatesAreDropped() throws Exception {
+		final BoundedHistoryHelper history = new BoundedHistoryHelper(5, Long.MAX_VALUE);
+		for (int i = 0; i < 12; i++) {
+			history.addState(newState(String.valueOf(i)));
+		}
+
+		final List<CalculatorHistoryState> states = history.getStates();
+		Assert.assertEquals(5, states.size());
+		Assert.assertEquals("7", states.get(0).getEditorState().getText());
+		Assert.assertEquals("11", states.get(4).getEditorState().getText());
+		Assert.assertEquals("11", history.getLastHistoryState().getEditorState().getText());
+	}
+
+	@Test
+	public void testMemoryBudget() throws Exception {
+		final BoundedHistoryHelper history = new BoundedHistoryHelper(1000, 16 * 1024);
+
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			text.append(i % 10);
+			history.addState(newState(text.toString()));
+			Assert.assertTrue(history.getBytes() <= 16 * 1024);
+		}
+
+		Assert.assertTrue(history.getStates().size() < 500);
+		Assert.assertTrue(history.isUndoAvailable());
+
+		history.clear();
+		Assert.assertEquals(0, history.getBytes());
+	}
+
+	@Test
+	public void testEqualTextsAreShared() throws Exception {
+		final BoundedHistoryHelper history = new BoundedHistoryHelper(10, Long.MAX_VALUE);
+
+		final CalculatorHistoryState first = newState(new String("2+2"));
+		final CalculatorHistoryState second = newState(new String("2+2"));
+		history.addState(first);
+		final long bytes = history.getBytes();
+		history.addState(second);
+
+		Assert.assertSame(first.getEditorState().getText(), second.getEditorState().getText());
+		Assert.assertTrue(history.getBytes() - bytes < bytes);
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState newState(@Nonnull String text) {
+		return CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance(text, text.length()), CalculatorDisplayViewStateImpl.newValidState(JsclOperation.numeric, null, "4", 1));
+	}
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.calculator.CalculatorDisplayViewStateImpl;
+import org.solovyev.android.calculator.CalculatorEditorViewStateImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CalculatorHistoryLogTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("history", ".log");
+		Assert.assertTrue(file.delete());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+		new CalculatorHistoryLog(file).getUnsupportedFile().delete();
+	}
+
+	@Test
+	public void testAppendRemoveAndReload() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		Assert.assertTrue(log.load().isEmpty());
+
+		final CalculatorHistoryState first = newState("1+1");
+		final CalculatorHistoryState second = newState("2+2");
+		final CalculatorHistoryState third = newState("3+3");
+		log.append(first);
+		log.append(second);
+		log.append(third);
+
+		second.setComment("comment");
+		log.saveModified();
+		log.remove(first);
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(2, states.size());
+		Assert.assertEquals("2+2", states.get(0).getEditorState().getText());
+		Assert.assertEquals("comment", states.get(0).getComment());
+		Assert.assertEquals(second.getTime(), states.get(0).getTime());
+		Assert.assertEquals("3+3", states.get(1).getEditorState().getText());
+		Assert.assertNull(states.get(1).getComment());
+	}
+
+	@Test
+	public void testIncompleteRecordIsDiscarded() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		log.load();
+		log.append(newState("1+1"));
+		log.append(newState("2+2"));
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		} finally {
+			raf.close();
+		}
+
+		final CalculatorHistoryLog reloaded = new CalculatorHistoryLog(file);
+		Assert.assertEquals(1, reloaded.load().size());
+
+		// log is still writable after truncation
+		reloaded.append(newState("3+3"));
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(2, states.size());
+		Assert.assertEquals("3+3", states.get(1).getEditorState().getText());
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		log.load();
+
+		final CalculatorHistoryState state = newState("1+1");
+		log.append(state);
+		for (int i = 0; i < 1000; i++) {
+			final CalculatorHistoryState removed = newState(String.valueOf(i));
+			log.append(removed);
+			log.remove(removed);
+		}
+
+		// 1000 removed states must not stay in the file
+		Assert.assertTrue(file.length() < 10000);
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(1, states.size());
+		Assert.assertEquals("1+1", states.get(0).getEditorState().getText());
+	}
+
+	@Test
+	public void testStatesAreLoadedLazily() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		log.load();
+		for (int i = 0; i < 120; i++) {
+			log.append(newState(String.valueOf(i)));
+		}
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(120, states.size());
+		Assert.assertEquals("119", states.get(119).getEditorState().getText());
+		Assert.assertEquals("0", states.get(0).getEditorState().getText());
+		Assert.assertEquals("70", states.get(70).getEditorState().getText());
+		Assert.assertSame(states.get(70), states.get(70));
+	}
+
+	@Test
+	public void testUnsupportedFileIsMovedAside() throws Exception {
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("garbage, not a history log".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		Assert.assertTrue(log.load().isEmpty());
+		Assert.assertTrue(log.getUnsupportedFile().exists());
+
+		// log must be usable after unsupported file
+		log.append(newState("1+1"));
+		log.saveModified();
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(1, states.size());
+		Assert.assertEquals("1+1", states.get(0).getEditorState().getText());
+	}
+
+	@Test
+	public void testUndecodableStateIsMovedAside() throws Exception {
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			// valid header
+			out.writeInt(0x43484C47);
+			out.writeInt(1);
+			// add record with broken payload
+			out.writeInt(5 + 3);
+			out.writeByte(1);
+			out.writeInt(0);
+			out.write(new byte[]{1, 2, 3});
+		} finally {
+			out.close();
+		}
+
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		Assert.assertTrue(log.load().isEmpty());
+		Assert.assertTrue(log.getUnsupportedFile().exists());
+
+		log.append(newState("1+1"));
+		Assert.assertEquals(1, new CalculatorHistoryLog(file).load().size());
+	}
+
+	@Test
+	public void testAppendAllAndExport() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		log.load();
+
+		final CalculatorHistoryState first = newState("first");
+		log.append(first);
+		final List<CalculatorHistoryState> imported = new ArrayList<CalculatorHistoryState>();
+		for (int i = 0; i < 120; i++) {
+			imported.add(newState(String.valueOf(i)));
+		}
+		log.appendAll(imported);
+		first.setComment("comment");
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		log.export(HistoryStreams.newBinaryWriter(out));
+
+		final HistoryStreams.StateReader reader = HistoryStreams.newBinaryReader(new ByteArrayInputStream(out.toByteArray()));
+		final List<CalculatorHistoryState> exported = new ArrayList<CalculatorHistoryState>();
+		for (CalculatorHistoryState state = reader.read(); state != null; state = reader.read()) {
+			exported.add(state);
+		}
+		Assert.assertEquals(121, exported.size());
+		// not saved changes of decoded states are exported too
+		Assert.assertEquals("comment", exported.get(0).getComment());
+		Assert.assertEquals("0", exported.get(1).getEditorState().getText());
+		Assert.assertEquals("119", exported.get(120).getEditorState().getText());
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(121, states.size());
+		Assert.assertEquals("first", states.get(0).getEditorState().getText());
+		Assert.assertEquals("70", states.get(71).getEditorState().getText());
+	}
+
+	@Test
+	public void testEqualPayloadsAreWrittenOnce() throws Exception {
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		log.load();
+		for (int i = 0; i < 100; i++) {
+			final CalculatorHistoryState state = newState("sin(30°)+cos(60°)+ln(e^2)");
+			state.setTime(i);
+			log.append(state);
+		}
+		final CalculatorHistoryState commented = newState("sin(30°)+cos(60°)+ln(e^2)");
+		commented.setComment("comment");
+		log.append(commented);
+
+		// one payload + 101 references (length + type + id + time + payload id + comment)
+		Assert.assertTrue(file.length() < 101 * 25 + 100);
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(101, states.size());
+		Assert.assertEquals(99, states.get(99).getTime());
+		Assert.assertEquals("comment", states.get(100).getComment());
+		Assert.assertEquals("sin(30°)+cos(60°)+ln(e^2)", states.get(0).getEditorState().getText());
+		// states of the same payload share its parts
+		Assert.assertSame(states.get(0).getEditorState(), states.get(100).getEditorState());
+		Assert.assertSame(states.get(0).getDisplayState(), states.get(100).getDisplayState());
+	}
+
+	@Test
+	public void testFirstVersionIsUpgraded() throws Exception {
+		final CalculatorHistoryState oldState = newState("1+1");
+		oldState.setComment("comment");
+		final byte[] payload = HistoryStateCodec.toBytes(oldState);
+
+		final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(0x43484C47);
+			out.writeInt(1);
+			// add record with whole state
+			out.writeInt(5 + payload.length);
+			out.writeByte(1);
+			out.writeInt(0);
+			out.write(payload);
+		} finally {
+			out.close();
+		}
+
+		final CalculatorHistoryLog log = new CalculatorHistoryLog(file);
+		final List<CalculatorHistoryState> oldStates = log.load();
+		Assert.assertEquals(1, oldStates.size());
+		Assert.assertEquals("comment", oldStates.get(0).getComment());
+
+		log.append(newState("2+2"));
+
+		final DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readInt();
+			Assert.assertEquals(2, in.readInt());
+		} finally {
+			in.close();
+		}
+
+		final List<CalculatorHistoryState> states = new CalculatorHistoryLog(file).load();
+		Assert.assertEquals(2, states.size());
+		Assert.assertEquals("1+1", states.get(0).getEditorState().getText());
+		Assert.assertEquals("comment", states.get(0).getComment());
+		Assert.assertEquals(oldState.getTime(), states.get(0).getTime());
+		Assert.assertEquals("2+2", states.get(1).getEditorState().getText());
+	}
+
+	@Test(expected = IOException.class)
+	public void testModificationBeforeLoad() throws Exception {
+		new CalculatorHistoryLog(file).append(newState("1+1"));
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState newState(@Nonnull String text) {
+		return CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance(text, text.length()), CalculatorDisplayViewStateImpl.newDefaultInstance());
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import com.google.common.util.concurrent.Futures;
+import jscl.math.Generic;
+
+import javax.annotation.Nonnull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.solovyev.android.calculator.Calculator;
+import org.solovyev.android.calculator.CalculatorDisplayViewStateImpl;
+import org.solovyev.android.calculator.CalculatorEditorViewStateImpl;
+import org.solovyev.android.calculator.CalculatorOutput;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CalculatorStateSnapshotTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("state", ".bin");
+		Assert.assertTrue(file.delete());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testNoSnapshot() throws Exception {
+		Assert.assertNull(CalculatorStateSnapshot.read(file));
+	}
+
+	@Test
+	public void testWriteReadAndRestore() throws Exception {
+		final CalculatorHistoryState first = newState("1+1");
+		final CalculatorHistoryState second = newState("2+2");
+		final CalculatorHistoryState current = newState("3+");
+
+		final Calculator calculator = Mockito.mock(Calculator.class);
+		Mockito.when(calculator.getCurrentHistoryState()).thenReturn(current);
+		final CalculatorHistory history = Mockito.mock(CalculatorHistory.class);
+		Mockito.when(history.getStates()).thenReturn(Arrays.asList(first, second));
+
+		CalculatorStateSnapshot.capture(calculator, history).write(file);
+
+		final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.read(file);
+		Assert.assertNotNull(snapshot);
+		Assert.assertEquals(current, snapshot.getCurrentState());
+		Assert.assertEquals(Arrays.asList(first, second), snapshot.getStates());
+
+		final Calculator newCalculator = Mockito.mock(Calculator.class);
+		final CalculatorHistory newHistory = Mockito.mock(CalculatorHistory.class);
+		Mockito.when(newHistory.isEmpty()).thenReturn(true);
+		snapshot.restore(newCalculator, newHistory);
+
+		final InOrder inOrder = Mockito.inOrder(newHistory);
+		inOrder.verify(newHistory).addState(first);
+		inOrder.verify(newHistory).addState(second);
+		Mockito.verify(newCalculator).setCurrentHistoryState(current);
+	}
+
+	@Test
+	public void testEqualPayloadsAreStoredOnce() throws Exception {
+		final List<CalculatorHistoryState> states = new ArrayList<CalculatorHistoryState>();
+		for (int i = 0; i < 100; i++) {
+			final CalculatorHistoryState state = newState("sin(30°)+cos(60°)+ln(e^2)");
+			state.setTime(i);
+			states.add(state);
+		}
+
+		final Calculator calculator = Mockito.mock(Calculator.class);
+		Mockito.when(calculator.getCurrentHistoryState()).thenReturn(newState("sin(30°)+cos(60°)+ln(e^2)"));
+		final CalculatorHistory history = Mockito.mock(CalculatorHistory.class);
+		Mockito.when(history.getStates()).thenReturn(states);
+
+		CalculatorStateSnapshot.capture(calculator, history).write(file);
+		// one payload + 101 references (time + comment + index)
+		Assert.assertTrue(file.length() < 101 * 16 + 100);
+
+		final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.read(file);
+		Assert.assertNotNull(snapshot);
+		Assert.assertEquals(states, snapshot.getStates());
+		Assert.assertEquals(99, snapshot.getStates().get(99).getTime());
+		Assert.assertSame(snapshot.getCurrentState().getEditorState(), snapshot.getStates().get(0).getEditorState());
+		Assert.assertSame(snapshot.getStates().get(0).getDisplayState(), snapshot.getStates().get(99).getDisplayState());
+	}
+
+	@Test
+	public void testErrorIsRestored() throws Exception {
+		final CalculatorHistoryState current = CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance("1/", 2), CalculatorDisplayViewStateImpl.newErrorState(JsclOperation.numeric, "error"));
+
+		final Calculator calculator = Mockito.mock(Calculator.class);
+		Mockito.when(calculator.getCurrentHistoryState()).thenReturn(current);
+		CalculatorStateSnapshot.capture(calculator, Mockito.mock(CalculatorHistory.class)).write(file);
+
+		final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.read(file);
+		Assert.assertNotNull(snapshot);
+		Assert.assertFalse(snapshot.getCurrentState().getDisplayState().isValid());
+		Assert.assertEquals("error", snapshot.getCurrentState().getDisplayState().getErrorMessage());
+
+		final Calculator newCalculator = Mockito.mock(Calculator.class);
+		snapshot.restore(newCalculator, Mockito.mock(CalculatorHistory.class));
+		// nothing to evaluate
+		Mockito.verify(newCalculator, Mockito.never()).evaluateAsync(Mockito.any(JsclOperation.class), Mockito.anyString());
+	}
+
+	@Test
+	public void testResultIsEvaluatedOnRestore() throws Exception {
+		final CalculatorHistoryState current = CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance("2+2", 3), CalculatorDisplayViewStateImpl.newValidState(JsclOperation.numeric, null, "4", 1));
+
+		final Calculator calculator = Mockito.mock(Calculator.class);
+		Mockito.when(calculator.getCurrentHistoryState()).thenReturn(current);
+		CalculatorStateSnapshot.capture(calculator, Mockito.mock(CalculatorHistory.class)).write(file);
+
+		final CalculatorStateSnapshot snapshot = CalculatorStateSnapshot.read(file);
+		Assert.assertNotNull(snapshot);
+
+		final Generic result = Mockito.mock(Generic.class);
+		final CalculatorOutput output = Mockito.mock(CalculatorOutput.class);
+		Mockito.when(output.getResult()).thenReturn(result);
+
+		final Calculator newCalculator = Mockito.mock(Calculator.class);
+		Mockito.when(newCalculator.getCurrentHistoryState()).thenReturn(current);
+		Mockito.when(newCalculator.evaluateAsync(JsclOperation.numeric, "2+2")).thenReturn(Futures.immediateFuture(output));
+		snapshot.restore(newCalculator, Mockito.mock(CalculatorHistory.class));
+
+		final ArgumentCaptor<CalculatorHistoryState> restored = ArgumentCaptor.forClass(CalculatorHistoryState.class);
+		Mockito.verify(newCalculator, Mockito.times(2)).setCurrentHistoryState(restored.capture());
+		Assert.assertNull(restored.getAllValues().get(0).getDisplayState().getGenericResult());
+		Assert.assertEquals(current, restored.getAllValues().get(1));
+		Assert.assertSame(result, restored.getAllValues().get(1).getDisplayState().getGenericResult());
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState newState(@Nonnull String text) {
+		return CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance(text, text.length()), CalculatorDisplayViewStateImpl.newDefaultInstance());
+	}
+}
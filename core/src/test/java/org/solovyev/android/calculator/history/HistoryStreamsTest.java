@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.solovyev.android.calculator.CalculatorDisplayViewStateImpl;
+import org.solovyev.android.calculator.CalculatorEditorViewStateImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HistoryStreamsTest {
+
+	@Test
+	public void testXml() throws Exception {
+		final List<CalculatorHistoryState> states = newStates(20);
+
+		final StringWriter writer = new StringWriter();
+		HistoryStreams.writeXml(states, writer);
+
+		assertStates(states, read(HistoryStreams.newXmlReader(new StringReader(writer.toString()))));
+
+		// streamed XML must be readable in old way
+		final List<CalculatorHistoryState> actual = new ArrayList<CalculatorHistoryState>();
+		HistoryUtils.fromXml(writer.toString(), actual);
+		assertStates(states, actual);
+	}
+
+	@Test
+	public void testShouldReadOldXml() throws Exception {
+		final List<CalculatorHistoryState> states = newStates(5);
+		for (CalculatorHistoryState state : states) {
+			state.setSaved(true);
+		}
+
+		final String xml = HistoryUtils.toXml(states);
+		assertStates(states, read(HistoryStreams.newXmlReader(new StringReader(xml))));
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		final List<CalculatorHistoryState> states = newStates(20);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HistoryStreams.writeBinary(states, out);
+
+		final HistoryStreams.StateReader reader = HistoryStreams.newBinaryReader(new ByteArrayInputStream(out.toByteArray()));
+		assertStates(states, read(reader));
+		Assert.assertNull(reader.read());
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		final StringWriter writer = new StringWriter();
+		HistoryStreams.writeXml(new ArrayList<CalculatorHistoryState>(), writer);
+		Assert.assertNull(HistoryStreams.newXmlReader(new StringReader(writer.toString())).read());
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HistoryStreams.writeBinary(new ArrayList<CalculatorHistoryState>(), out);
+		Assert.assertNull(HistoryStreams.newBinaryReader(new ByteArrayInputStream(out.toByteArray())).read());
+	}
+
+	@Nonnull
+	private static List<CalculatorHistoryState> read(@Nonnull HistoryStreams.StateReader reader) throws Exception {
+		final List<CalculatorHistoryState> result = new ArrayList<CalculatorHistoryState>();
+		for (CalculatorHistoryState state = reader.read(); state != null; state = reader.read()) {
+			result.add(state);
+		}
+		return result;
+	}
+
+	@Nonnull
+	private static List<CalculatorHistoryState> newStates(int count) {
+		final List<CalculatorHistoryState> result = new ArrayList<CalculatorHistoryState>();
+		for (int i = 0; i < count; i++) {
+			final String text = i + "+<" + i + ">";
+			final CalculatorHistoryState state = CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance(text, text.length()), CalculatorDisplayViewStateImpl.newDefaultInstance());
+			state.setTime(i);
+			if (i % 2 == 0) {
+				state.setComment("comment " + i);
+			}
+			result.add(state);
+		}
+		return result;
+	}
+
+	private static void assertStates(@Nonnull List<CalculatorHistoryState> expected, @Nonnull List<CalculatorHistoryState> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final CalculatorHistoryState e = expected.get(i);
+			final CalculatorHistoryState a = actual.get(i);
+			Assert.assertEquals(e.getEditorState(), a.getEditorState());
+			Assert.assertEquals(e.getDisplayState(), a.getDisplayState());
+			Assert.assertEquals(e.getTime(), a.getTime());
+			Assert.assertEquals(e.getComment(), a.getComment());
+		}
+	}
+}
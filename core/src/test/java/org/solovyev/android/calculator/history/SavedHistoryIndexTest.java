@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.history;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.solovyev.android.calculator.CalculatorDisplayViewStateImpl;
+import org.solovyev.android.calculator.CalculatorEditorViewStateImpl;
+import org.solovyev.android.calculator.jscl.JsclOperation;
+
+import java.util.List;
+
+public class SavedHistoryIndexTest {
+
+	@Test
+	public void testWordSearch() throws Exception {
+		final SavedHistoryIndex index = new SavedHistoryIndex();
+
+		final CalculatorHistoryState sin = newState("sin(30)+2.5", "3");
+		final CalculatorHistoryState cos = newState("cos(30)", "0.866");
+		final CalculatorHistoryState sqrt = newState("√(9)*sin(30)", "1.5");
+		index.add(sin);
+		index.add(cos);
+		index.add(sqrt);
+
+		assertStates(index.find("SIN"), sin, sqrt);
+		assertStates(index.find("30 co"), cos);
+		assertStates(index.find("2.5"), sin);
+		assertStates(index.find("0.86"), cos);
+		assertStates(index.find("tan"));
+		assertStates(index.find(""), sin, cos, sqrt);
+
+		index.remove(sin);
+		assertStates(index.find("sin"), sqrt);
+
+		index.clear();
+		assertStates(index.find("sin"));
+	}
+
+	@Test
+	public void testRangeSearch() throws Exception {
+		final SavedHistoryIndex index = new SavedHistoryIndex();
+
+		final CalculatorHistoryState first = newState("1+2", "3");
+		final CalculatorHistoryState second = newState("1000+1000", "2 000");
+		final CalculatorHistoryState third = newState("x", "x");
+		final CalculatorHistoryState fourth = newState("0-5", "-5");
+		index.add(first);
+		index.add(second);
+		index.add(third);
+		index.add(fourth);
+
+		assertStates(index.find(0, 10), first);
+		assertStates(index.find(-10, 2000), first, second, fourth);
+		assertStates(index.find(10, 0));
+
+		index.remove(second);
+		assertStates(index.find(1000, 3000));
+	}
+
+	private static void assertStates(@Nonnull List<CalculatorHistoryState> actual, @Nonnull CalculatorHistoryState... expected) {
+		Assert.assertEquals(expected.length, actual.size());
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertSame(expected[i], actual.get(i));
+		}
+	}
+
+	@Nonnull
+	private static CalculatorHistoryState newState(@Nonnull String expression, @Nonnull String result) {
+		return CalculatorHistoryState.newInstance(CalculatorEditorViewStateImpl.newInstance(expression, 0), CalculatorDisplayViewStateImpl.newValidState(JsclOperation.numeric, null, result, 0));
+	}
+}
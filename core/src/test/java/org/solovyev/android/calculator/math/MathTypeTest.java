@@ -22,11 +22,20 @@
 
 package org.solovyev.android.calculator.math;
 
+import jscl.math.function.IConstant;
+
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.solovyev.android.calculator.AbstractCalculatorTest;
+import org.solovyev.android.calculator.CalculatorMathRegistry;
 import org.solovyev.android.calculator.CalculatorTestUtils;
+import org.solovyev.android.calculator.Locator;
+import org.solovyev.android.calculator.model.Var;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.solovyev.android.calculator.math.MathType.postfix_function;
@@ -65,6 +74,57 @@ public class MathTypeTest extends AbstractCalculatorTest {
 		assertEquals("atanh", MathType.getType("atanh", 0, false).getMatch());
 	}
 
+	@Test
+	public void testHexMode() throws Exception {
+		assertEquals(MathType.power_10, MathType.getType("1E2", 1, false).getMathType());
+		assertEquals(MathType.digit, MathType.getType("1E2", 1, true).getMathType());
+		assertEquals(MathType.digit, MathType.getType("A", 0, true).getMathType());
+		assertEquals(MathType.function, MathType.getType("acos(1)", 0, true).getMathType());
+	}
+
+	@Test
+	public void testTokensAreUpdatedAfterRegistryChange() throws Exception {
+		assertEquals(MathType.text, MathType.getType("zzz", 0, false).getMathType());
+
+		final CalculatorMathRegistry<IConstant> varsRegistry = Locator.getInstance().getEngine().getVarsRegistry();
+		final IConstant var = varsRegistry.add(new Var.Builder("zzz", 1d));
+		try {
+			final MathType.Result result = MathType.getType("zzz+1", 0, false);
+			assertEquals(MathType.constant, result.getMathType());
+			assertEquals("zzz", result.getMatch());
+		} finally {
+			// registry is shared by all tests
+			varsRegistry.remove(var);
+		}
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		final int threads = 4;
+		final CountDownLatch latch = new CountDownLatch(threads);
+		final AtomicInteger errors = new AtomicInteger();
+		for (int i = 0; i < threads; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 1000; j++) {
+							if (MathType.getType("2×sin(π)", 1, false).getMathType() != MathType.binary_operation
+									|| MathType.getType("2×sin(π)", 2, false).getMathType() != MathType.function
+									|| MathType.getType("2×sin(π)", 6, false).getMathType() != MathType.constant) {
+								errors.incrementAndGet();
+							}
+						}
+					} finally {
+						latch.countDown();
+					}
+				}
+			}).start();
+		}
+		Assert.assertTrue(latch.await(CalculatorTestUtils.TIMEOUT, TimeUnit.SECONDS));
+		assertEquals(0, errors.get());
+	}
+
 	@Test
 	public void testPostfixFunctionsProcessing() throws Exception {
 		assertEquals(postfix_function, MathType.getType("5!", 1, false).getMathType());
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.model;
+
+import javax.annotation.Nonnull;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.calculator.BinaryMathEntityDao;
+import org.solovyev.android.calculator.MathEntityDao;
+import org.solovyev.android.calculator.MathEntityPersistenceContainer;
+import org.solovyev.android.calculator.MathPersistenceEntity;
+import org.solovyev.android.calculator.model.BinaryMathEntityDaoTest.XmlMathEntityDao;
+
+import java.io.File;
+
+import static org.solovyev.android.calculator.model.BinaryMathEntityDaoTest.newFunctions;
+import static org.solovyev.android.calculator.model.BinaryMathEntityDaoTest.newVars;
+
+/**
+ * Compares save/load times of binary and XML storage of math entities.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class BinaryMathEntityDaoBenchmark {
+
+	private static final int BENCHMARK_SIZE = 2000;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("entities", ".bin");
+		Assert.assertTrue(file.delete());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		final Vars vars = newVars(BENCHMARK_SIZE);
+		final Functions functions = newFunctions(BENCHMARK_SIZE);
+
+		final XmlMathEntityDao<Var> xmlVarsDao = new XmlMathEntityDao<Var>(Vars.class);
+		final XmlMathEntityDao<AFunction> xmlFunctionsDao = new XmlMathEntityDao<AFunction>(Functions.class);
+		final BinaryMathEntityDao<Var> binaryVarsDao = new BinaryMathEntityDao<Var>(file, VarCodec.instance, xmlVarsDao);
+		final File functionsFile = new File(file.getPath() + ".functions");
+		final BinaryMathEntityDao<AFunction> binaryFunctionsDao = new BinaryMathEntityDao<AFunction>(functionsFile, FunctionCodec.instance, xmlFunctionsDao);
+		try {
+			// warm up
+			for (int i = 0; i < 3; i++) {
+				saveAndLoad(xmlVarsDao, vars);
+				saveAndLoad(binaryVarsDao, vars);
+				saveAndLoad(xmlFunctionsDao, functions);
+				saveAndLoad(binaryFunctionsDao, functions);
+			}
+
+			printTimes("Vars (xml)", xmlVarsDao, vars);
+			printTimes("Vars (binary)", binaryVarsDao, vars);
+			printTimes("Functions (xml)", xmlFunctionsDao, functions);
+			printTimes("Functions (binary)", binaryFunctionsDao, functions);
+		} finally {
+			functionsFile.delete();
+		}
+	}
+
+	private static <T extends MathPersistenceEntity> void printTimes(@Nonnull String name,
+																	 @Nonnull MathEntityDao<T> dao,
+																	 @Nonnull MathEntityPersistenceContainer<T> container) {
+		long start = System.nanoTime();
+		dao.save(container);
+		final long saveTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final MathEntityPersistenceContainer<T> loaded = dao.load();
+		final long loadTime = System.nanoTime() - start;
+
+		Assert.assertNotNull(loaded);
+		Assert.assertEquals(container.getEntities().size(), loaded.getEntities().size());
+		System.out.println(name + ", " + container.getEntities().size() + " entities: save " + saveTime / 1000000 + " ms, load " + loadTime / 1000000 + " ms");
+	}
+
+	private static <T extends MathPersistenceEntity> void saveAndLoad(@Nonnull MathEntityDao<T> dao,
+																	  @Nonnull MathEntityPersistenceContainer<T> container) {
+		dao.save(container);
+		Assert.assertNotNull(dao.load());
+	}
+}
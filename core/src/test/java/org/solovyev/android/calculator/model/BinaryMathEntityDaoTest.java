@@ -0,0 +1,244 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.model;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.simpleframework.xml.Serializer;
+import org.simpleframework.xml.core.Persister;
+import org.solovyev.android.calculator.BinaryMathEntityDao;
+import org.solovyev.android.calculator.MathEntityDao;
+import org.solovyev.android.calculator.MathEntityPersistenceContainer;
+import org.solovyev.android.calculator.MathPersistenceEntity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+public class BinaryMathEntityDaoTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("entities", ".bin");
+		Assert.assertTrue(file.delete());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testVarsRoundTrip() throws Exception {
+		final BinaryMathEntityDao<Var> dao = new BinaryMathEntityDao<Var>(file, VarCodec.instance, new XmlMathEntityDao<Var>(Vars.class));
+
+		final Vars vars = newVars(10);
+		vars.getEntities().add(new Var.Builder("undefined", (String) null).create());
+		dao.save(vars);
+
+		final MathEntityPersistenceContainer<Var> actual = dao.load();
+		Assert.assertNotNull(actual);
+		assertVarsEqual(vars.getEntities(), actual.getEntities());
+	}
+
+	@Test
+	public void testFunctionsRoundTrip() throws Exception {
+		final BinaryMathEntityDao<AFunction> dao = new BinaryMathEntityDao<AFunction>(file, FunctionCodec.instance, new XmlMathEntityDao<AFunction>(Functions.class));
+
+		final Functions functions = newFunctions(10);
+		dao.save(functions);
+
+		final MathEntityPersistenceContainer<AFunction> actual = dao.load();
+		Assert.assertNotNull(actual);
+		assertFunctionsEqual(functions.getEntities(), actual.getEntities());
+	}
+
+	@Test
+	public void testShouldMigrateFromLegacyDao() throws Exception {
+		final XmlMathEntityDao<Var> legacyDao = new XmlMathEntityDao<Var>(Vars.class);
+		final Vars vars = newVars(5);
+		legacyDao.save(vars);
+
+		final MathEntityPersistenceContainer<Var> migrated = new BinaryMathEntityDao<Var>(file, VarCodec.instance, legacyDao).load();
+		Assert.assertNotNull(migrated);
+		assertVarsEqual(vars.getEntities(), migrated.getEntities());
+		Assert.assertTrue(file.exists());
+
+		// legacy storage is not used anymore
+		legacyDao.save(new Vars());
+		final MathEntityPersistenceContainer<Var> actual = new BinaryMathEntityDao<Var>(file, VarCodec.instance, legacyDao).load();
+		Assert.assertNotNull(actual);
+		assertVarsEqual(vars.getEntities(), actual.getEntities());
+	}
+
+	@Test
+	public void testNothingToMigrate() throws Exception {
+		final BinaryMathEntityDao<Var> dao = new BinaryMathEntityDao<Var>(file, VarCodec.instance, new XmlMathEntityDao<Var>(Vars.class));
+		Assert.assertNull(dao.load());
+		Assert.assertFalse(file.exists());
+	}
+
+	@Test
+	public void testUnreadableFileIsNotOverwritten() throws Exception {
+		final XmlMathEntityDao<Var> legacyDao = new XmlMathEntityDao<Var>(Vars.class);
+		final Vars legacyVars = newVars(3);
+		legacyDao.save(legacyVars);
+
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("garbage, not entities".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+
+		final BinaryMathEntityDao<Var> dao = new BinaryMathEntityDao<Var>(file, VarCodec.instance, legacyDao);
+		final MathEntityPersistenceContainer<Var> actual = dao.load();
+		Assert.assertNotNull(actual);
+		assertVarsEqual(legacyVars.getEntities(), actual.getEntities());
+
+		final File unreadableFile = dao.getUnreadableFile();
+		try {
+			Assert.assertEquals("garbage, not entities".length(), unreadableFile.length());
+
+			// saving works again
+			final Vars vars = newVars(5);
+			dao.save(vars);
+			final MathEntityPersistenceContainer<Var> saved = dao.load();
+			Assert.assertNotNull(saved);
+			assertVarsEqual(vars.getEntities(), saved.getEntities());
+		} finally {
+			unreadableFile.delete();
+		}
+	}
+
+	@Nonnull
+	static Vars newVars(int count) {
+		final Vars result = new Vars();
+		for (int i = 0; i < count; i++) {
+			final Var.Builder builder = new Var.Builder("var_" + i, String.valueOf(i * 1.5d));
+			builder.setDescription(i % 2 == 0 ? "Variable №" + i : null);
+			builder.setSystem(i % 3 == 0);
+			result.getEntities().add(builder.create());
+		}
+		return result;
+	}
+
+	@Nonnull
+	static Functions newFunctions(int count) {
+		final Functions result = new Functions();
+		for (int i = 0; i < count; i++) {
+			final AFunction function = new AFunction();
+			function.setName("f_" + i);
+			function.setContent("x^" + i + "+sin(y)*" + i);
+			function.setParameterNames(Arrays.asList("x", "y"));
+			function.setDescription(i % 2 == 0 ? "Function №" + i : "");
+			function.setSystem(i % 3 == 0);
+			result.getEntities().add(function);
+		}
+		return result;
+	}
+
+	private static void assertVarsEqual(@Nonnull List<Var> expected, @Nonnull List<Var> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final Var e = expected.get(i);
+			final Var a = actual.get(i);
+			Assert.assertEquals(e.getName(), a.getName());
+			Assert.assertEquals(e.getValue(), a.getValue());
+			Assert.assertEquals(e.getDescription(), a.getDescription());
+			Assert.assertEquals(e.isSystem(), a.isSystem());
+		}
+	}
+
+	private static void assertFunctionsEqual(@Nonnull List<AFunction> expected, @Nonnull List<AFunction> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final AFunction e = expected.get(i);
+			final AFunction a = actual.get(i);
+			Assert.assertEquals(e.getName(), a.getName());
+			Assert.assertEquals(e.getContent(), a.getContent());
+			Assert.assertEquals(e.getParameterNames(), a.getParameterNames());
+			Assert.assertEquals(e.getDescription(), a.getDescription());
+			Assert.assertEquals(e.isSystem(), a.isSystem());
+		}
+	}
+
+	/**
+	 * Same format as in AndroidMathEntityDao but XML is kept in memory instead of shared preferences
+	 */
+	static final class XmlMathEntityDao<T extends MathPersistenceEntity> implements MathEntityDao<T> {
+
+		@Nonnull
+		private final Class<? extends MathEntityPersistenceContainer<T>> persistenceContainerClass;
+
+		@Nullable
+		private String xml;
+
+		XmlMathEntityDao(@Nonnull Class<? extends MathEntityPersistenceContainer<T>> persistenceContainerClass) {
+			this.persistenceContainerClass = persistenceContainerClass;
+		}
+
+		@Override
+		public void save(@Nonnull MathEntityPersistenceContainer<T> container) {
+			final StringWriter sw = new StringWriter();
+			final Serializer serializer = new Persister();
+			try {
+				serializer.write(container, sw);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			xml = sw.toString();
+		}
+
+		@Nullable
+		@Override
+		public MathEntityPersistenceContainer<T> load() {
+			if (xml == null) {
+				return null;
+			}
+
+			final Serializer serializer = new Persister();
+			try {
+				return serializer.read(persistenceContainerClass, xml);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Nullable
+		@Override
+		public String getDescription(@Nonnull String descriptionId) {
+			return null;
+		}
+	}
+}
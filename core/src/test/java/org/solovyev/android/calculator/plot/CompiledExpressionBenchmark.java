@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.plot;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures batch evaluation of compiled expression.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class CompiledExpressionBenchmark {
+
+	@Test
+	public void testBatchEvaluation() throws Exception {
+		final String expression = "sin(x)^2+x^3/7-ln(x^2+1)";
+		final CompiledExpression compiled = CompiledExpression.compile(expression, "x", null, false);
+		Assert.assertNotNull(compiled);
+
+		final int count = 100000;
+		final double[] xs = new double[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = -50 + 100. * i / count;
+		}
+		final double[] values = new double[count];
+
+		// warm up
+		for (int i = 0; i < 10; i++) {
+			compiled.eval(xs, 0, null, 0, count, values, 0);
+		}
+
+		final long start = System.nanoTime();
+		compiled.eval(xs, 0, null, 0, count, values, 0);
+		final long time = System.nanoTime() - start;
+
+		System.out.println("Batch evaluation of " + expression + " on " + count + " points: " + time / 1000 + " μs");
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.plot;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledExpressionTest {
+
+	private static final double[] XS = {-3.5, -1, -0.25, 0, 0.5, 2, 10.75};
+
+	@Test
+	public void testArithmetic() throws Exception {
+		assertValues("x", new Function() {
+			@Override
+			public double eval(double x) {
+				return x;
+			}
+		});
+		assertValues("x^2+2*x+1", new Function() {
+			@Override
+			public double eval(double x) {
+				return x * x + 2 * x + 1;
+			}
+		});
+		assertValues("-x^2-x/4+1.5", new Function() {
+			@Override
+			public double eval(double x) {
+				return -(x * x) - x / 4 + 1.5;
+			}
+		});
+		assertValues("(x-1)*(x+1)/(x^2+1)", new Function() {
+			@Override
+			public double eval(double x) {
+				return (x - 1) * (x + 1) / (x * x + 1);
+			}
+		});
+		assertValues("2^-x+e^x+π", new Function() {
+			@Override
+			public double eval(double x) {
+				return Math.pow(2, -x) + Math.exp(x) + Math.PI;
+			}
+		});
+		assertValues("1.5E-3*x", new Function() {
+			@Override
+			public double eval(double x) {
+				return 1.5E-3 * x;
+			}
+		});
+	}
+
+	@Test
+	public void testFunctions() throws Exception {
+		assertValues("sin(x)+cos(2*x)-tan(x/3)", new Function() {
+			@Override
+			public double eval(double x) {
+				return Math.sin(x) + Math.cos(2 * x) - Math.tan(x / 3);
+			}
+		});
+		assertValues("√(abs(x))+ln(x^2+1)+lg(x^2+1)", new Function() {
+			@Override
+			public double eval(double x) {
+				return Math.sqrt(Math.abs(x)) + Math.log(x * x + 1) + Math.log10(x * x + 1);
+			}
+		});
+		assertValues("atan(x)+sinh(x)/cosh(x)-tanh(x)", new Function() {
+			@Override
+			public double eval(double x) {
+				return Math.atan(x) + Math.sinh(x) / Math.cosh(x) - Math.tanh(x);
+			}
+		});
+
+		// NaN where real function is not defined
+		final CompiledExpression compiled = CompiledExpression.compile("√(x)", "x", null, false);
+		Assert.assertNotNull(compiled);
+		final double[] values = new double[XS.length];
+		compiled.eval(XS, 0, null, 0, XS.length, values, 0);
+		Assert.assertTrue(Double.isNaN(values[0]));
+	}
+
+	@Test
+	public void testDegrees() throws Exception {
+		final CompiledExpression compiled = CompiledExpression.compile("sin(x)+asin(1)", "x", null, true);
+		Assert.assertNotNull(compiled);
+
+		final double[] values = new double[2];
+		compiled.eval(new double[]{30, 90}, 0, null, 0, 2, values, 0);
+		Assert.assertEquals(90.5, values[0], 1E-12);
+		Assert.assertEquals(91, values[1], 1E-12);
+	}
+
+	@Test
+	public void testTwoVariables() throws Exception {
+		final CompiledExpression compiled = CompiledExpression.compile("x^2-3*x*y+y", "x", "y", false);
+		Assert.assertNotNull(compiled);
+
+		final double[] ys = {-1, 0, 2.5};
+		final double[] values = new double[XS.length * ys.length];
+		for (int i = 0; i < XS.length; i++) {
+			compiled.eval(null, XS[i], ys, 0, ys.length, values, i * ys.length);
+		}
+
+		for (int i = 0; i < XS.length; i++) {
+			for (int j = 0; j < ys.length; j++) {
+				final double x = XS[i];
+				final double y = ys[j];
+				Assert.assertEquals(x * x - 3 * x * y + y, values[i * ys.length + j], 1E-12);
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupportedExpressions() throws Exception {
+		for (String expression : new String[]{"", "x+", "x^2^3", "t+1", "i*x", "f(x)", "x!", "(x+1", "x+1)", "∂(x, x)", "sin(x, 2)"}) {
+			Assert.assertNull(expression, CompiledExpression.compile(expression, "x", null, false));
+		}
+	}
+
+	private static void assertValues(@Nonnull String expression, @Nonnull Function expected) {
+		final CompiledExpression compiled = CompiledExpression.compile(expression, "x", null, false);
+		Assert.assertNotNull(expression, compiled);
+
+		final double[] values = new double[XS.length + 1];
+		compiled.eval(XS, 0, null, 0, XS.length, values, 1);
+		for (int i = 0; i < XS.length; i++) {
+			final double value = expected.eval(XS[i]);
+			Assert.assertEquals(expression + " for x = " + XS[i], value, values[i + 1], Math.abs(value) * 1E-12);
+		}
+	}
+
+	private interface Function {
+		double eval(double x);
+	}
+}
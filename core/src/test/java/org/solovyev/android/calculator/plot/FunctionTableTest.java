@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.calculator.plot;
+
+import jscl.math.Expression;
+import jscl.math.Generic;
+import jscl.math.function.Constant;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.solovyev.android.calculator.AbstractCalculatorTest;
+import org.solovyev.android.calculator.CalculatorUtils;
+import org.solovyev.android.calculator.Locator;
+import org.solovyev.android.calculator.model.Var;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FunctionTableTest extends AbstractCalculatorTest {
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		super.setUp();
+		Locator.getInstance().getEngine().getVarsRegistry().add(new Var.Builder("t", (String) null));
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testRows() throws Exception {
+		final FunctionTable table = FunctionTable.newInstance(Expression.valueOf("t^2+1"), 0, 1, 0.1);
+		Assert.assertEquals(11, table.getRowsCount());
+		Assert.assertEquals(0.5, table.getX(5), 0);
+
+		final StringWriter out = new StringWriter();
+		FunctionTable.newInstance(Expression.valueOf("t*2"), -1, 1, 1).writeCsv(executor, out);
+		final String csv = out.toString();
+		Assert.assertTrue(csv, csv.startsWith("t,"));
+		Assert.assertTrue(csv, csv.endsWith("\n-1.0,-2.0\n0.0,0.0\n1.0,2.0\n"));
+	}
+
+	@Test
+	public void testRowsAreStreamedInOrder() throws Exception {
+		final Generic expression = Expression.valueOf("t^2");
+		final Constant variable = CalculatorUtils.getNotSystemConstants(expression).iterator().next();
+		final FunctionTable table = FunctionTable.newInstance(expression, variable, 0, 9999, 1, 100);
+		Assert.assertEquals(10000, table.getRowsCount());
+
+		table.stream(executor, new FunctionTable.RowConsumer() {
+
+			private long expectedRow = 0;
+
+			@Override
+			public void onRow(long row, double x, double y) {
+				Assert.assertEquals(expectedRow++, row);
+				Assert.assertEquals(row, x, 0);
+				Assert.assertEquals(x * x, y, 1E-6);
+			}
+		});
+	}
+
+	@Test
+	public void testConsumerFailure() throws Exception {
+		final FunctionTable table = FunctionTable.newInstance(Expression.valueOf("t"), 0, 100000, 1);
+		try {
+			table.stream(executor, new FunctionTable.RowConsumer() {
+				@Override
+				public void onRow(long row, double x, double y) throws IOException {
+					if (row == 10) {
+						throw new IOException();
+					}
+				}
+			});
+			Assert.fail();
+		} catch (IOException e) {
+			// ok
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidStep() throws Exception {
+		FunctionTable.newInstance(Expression.valueOf("t"), 0, 1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() throws Exception {
+		FunctionTable.newInstance(Expression.valueOf("t"), 1, 0, 0.1);
+	}
+}
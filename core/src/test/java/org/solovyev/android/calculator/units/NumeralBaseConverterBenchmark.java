@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.units;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.solovyev.android.calculator.units.NumeralBaseConverterTest.newNumber;
+
+/**
+ * Compares conversion of long numbers by {@link NumeralBaseConverter} and by {@link BigInteger}.
+ * Not run with unit tests, use benchmark profile.
+ */
+public class NumeralBaseConverterBenchmark {
+
+	@Test
+	public void testConversion() throws Exception {
+		final Random random = new Random(42);
+		final String dec = "1" + newNumber(random, 10, 10000);
+		final String hex = "1" + newNumber(random, 16, 10000);
+
+		// warm up
+		for (int i = 0; i < 3; i++) {
+			NumeralBaseConverter.convert(dec, 10, 16);
+			NumeralBaseConverter.convert(hex, 16, 10);
+			new BigInteger(dec, 10).toString(16);
+			new BigInteger(hex, 16).toString(10);
+		}
+
+		long start = System.nanoTime();
+		final String decToHex = NumeralBaseConverter.convert(dec, 10, 16);
+		final String hexToDec = NumeralBaseConverter.convert(hex, 16, 10);
+		final long time = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		final String expectedDecToHex = new BigInteger(dec, 10).toString(16).toUpperCase();
+		final String expectedHexToDec = new BigInteger(hex, 16).toString(10);
+		final long bigIntegerTime = System.nanoTime() - start;
+
+		Assert.assertEquals(expectedDecToHex, decToHex);
+		Assert.assertEquals(expectedHexToDec, hexToDec);
+
+		System.out.println("Conversion of 10000-digit numbers (dec => hex, hex => dec): converter " + time / 1000000 + " ms, BigInteger " + bigIntegerTime / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.calculator.units;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class NumeralBaseConverterTest {
+
+	private static final int[] RADIXES = {2, 8, 10, 16};
+
+	@Test
+	public void testIntegers() throws Exception {
+		Assert.assertEquals("101", NumeralBaseConverter.convert("5", 10, 2));
+		Assert.assertEquals("A23", NumeralBaseConverter.convert("2595", 10, 16));
+		Assert.assertEquals("0", NumeralBaseConverter.convert("0", 10, 16));
+		Assert.assertEquals("0", NumeralBaseConverter.convert("-000", 16, 2));
+		Assert.assertEquals("-FF", NumeralBaseConverter.convert("-255", 10, 16));
+		Assert.assertEquals("-FF", NumeralBaseConverter.convert("−11 111 111", 2, 16));
+		Assert.assertEquals("1000000", NumeralBaseConverter.convert("1'000'000", 10, 10));
+		Assert.assertEquals("ff", NumeralBaseConverter.convert("377", 8, 16).toLowerCase());
+		Assert.assertEquals("255", NumeralBaseConverter.convert("ff", 16, 10));
+	}
+
+	@Test
+	public void testFractions() throws Exception {
+		Assert.assertEquals("1.8", NumeralBaseConverter.convert("1.5", 10, 16));
+		Assert.assertEquals("0.1", NumeralBaseConverter.convert(".5", 10, 2));
+		Assert.assertEquals("0.5", NumeralBaseConverter.convert("0.1", 2, 10));
+		Assert.assertEquals("0.0625", NumeralBaseConverter.convert("0.1", 16, 10));
+		Assert.assertEquals("0.001", NumeralBaseConverter.convert("0.2", 16, 2));
+		Assert.assertEquals("0.2", NumeralBaseConverter.convert("0.001", 2, 16));
+		Assert.assertEquals("0.4", NumeralBaseConverter.convert("0.1", 2, 8));
+		Assert.assertEquals("-10.101", NumeralBaseConverter.convert("-2.625", 10, 2));
+		Assert.assertEquals("3", NumeralBaseConverter.convert("3.000", 10, 10));
+	}
+
+	@Test
+	public void testNonTerminatingFractions() throws Exception {
+		// rounded to 16 decimal digits
+		Assert.assertEquals("0.00011001100110011001100110011001100110011001100110011", NumeralBaseConverter.convert("0.1", 10, 2));
+		Assert.assertEquals("0.1999999999999A", NumeralBaseConverter.convert("0.1", 10, 16));
+		Assert.assertEquals("0.3333333333333333", NumeralBaseConverter.convert("0.1", 3, 10));
+		Assert.assertEquals("0.6666666666666667", NumeralBaseConverter.convert("0.2", 3, 10));
+		// ... or to the precision of the source if it's greater
+		Assert.assertEquals("0.49999999999999999996", NumeralBaseConverter.convert("0.1111111111111111111111111111111111111111", 3, 10));
+	}
+
+	@Test
+	public void testInvalidNumbers() throws Exception {
+		for (String value : new String[]{"", "-", ".", "1.2.3", "12a", "1E5", "x"}) {
+			try {
+				NumeralBaseConverter.convert(value, 10, 16);
+				Assert.fail(value);
+			} catch (NumberFormatException e) {
+				// ok
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsBigInteger() throws Exception {
+		final Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			final BigInteger value = new BigInteger(1 + random.nextInt(2000), random);
+			for (int from : RADIXES) {
+				for (int to : RADIXES) {
+					Assert.assertEquals(value.toString(to).toUpperCase(), NumeralBaseConverter.convert(value.toString(from), from, to));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTripOfFractions() throws Exception {
+		final Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			final String value = newNumber(random, 16, 1 + random.nextInt(100)) + "." + newNumber(random, 16, 1 + random.nextInt(100)) + "1";
+			for (int radix : RADIXES) {
+				if (radix != 10) {
+					// power-of-two fractions are finite in all bases
+					final String converted = NumeralBaseConverter.convert(value, 16, radix);
+					Assert.assertEquals(value.replaceFirst("^0+(?=[0-9A-F])", ""), NumeralBaseConverter.convert(converted, radix, 16));
+				}
+			}
+			Assert.assertEquals(value.replaceFirst("^0+(?=[0-9A-F])", ""), NumeralBaseConverter.convert(NumeralBaseConverter.convert(value, 16, 10), 10, 16));
+		}
+	}
+
+	@Nonnull
+	static String newNumber(@Nonnull Random random, int radix, int length) {
+		final StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			result.append(Character.toUpperCase(Character.forDigit(random.nextInt(radix), radix)));
+		}
+		return result.toString();
+	}
+}